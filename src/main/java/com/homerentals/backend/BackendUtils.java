@@ -18,8 +18,11 @@ import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.time.format.ResolverStyle;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.Locale;
 import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class BackendUtils {
     public static final String inputsPath = "src/main/java/com/homerentals/inputs/";
@@ -31,10 +34,17 @@ public class BackendUtils {
     public static final String MESSAGE_TYPE = "type";
     public static final String MESSAGE_HEADER = "header";
     public static final String MESSAGE_BODY = "body";
+    public static final String MESSAGE_CORRELATION_ID = "correlationId";
     public static final String MESSAGE_TYPE_REQUEST = "request";
     public static final String MESSAGE_TYPE_RESPONSE = "response";
     public static final String BODY_FIELD_STATUS = "status";
     public static final String BODY_FIELD_MAP_ID = "mapId";
+    public static final String BODY_FIELD_WORKER_ID = "workerId";
+    public static final String BODY_FIELD_DEADLINE_MS = "deadlineMs";
+    public static final String BODY_FIELD_TIMEOUT_MS = "timeoutMs";
+    public static final String BODY_FIELD_PARTIAL = "partial";
+    public static final String BODY_FIELD_MISSING_WORKERS = "missingWorkers";
+    public static final String BODY_FIELD_DIRECT_GATHER = "directGather";
     public static final String BODY_FIELD_ERROR = "error";
 
     // User Sign-Up + Authentication
@@ -48,6 +58,7 @@ public class BackendUtils {
     public static final String BODY_FIELD_RENTALS = "rentals";
     public static final String BODY_FIELD_FILTERS = "filters";
     public static final String BODY_FIELD_RENTAL_ID = "rentalId";
+    public static final String BODY_FIELD_RENTAL_IDS = "rentalIds";
     public static final String BODY_FIELD_RENTAL_NAME = "rentalName";
     public static final String BODY_FIELD_RENTAL_LOCATION = "rentalLocation";
     public static final String BODY_FIELD_RENTAL_NIGHTLY_RATE = "rentalNightlyRate";
@@ -58,6 +69,13 @@ public class BackendUtils {
     public static final String BODY_FIELD_RENTAL_STRING = "rentalString";
     public static final String BODY_FIELD_RENTAL_IMAGE_URL = "rentalImageUrl";
 
+    // Sorting / pagination of search results
+    public static final String BODY_FIELD_SORT_BY = "sortBy";
+    public static final String BODY_FIELD_SORT_ORDER = "sortOrder";
+    public static final String BODY_FIELD_LIMIT = "limit";
+    public static final String BODY_FIELD_CURSOR = "cursor";
+    public static final String BODY_FIELD_NEXT_CURSOR = "nextCursor";
+
     // Check availability / booking
     public static final String BODY_FIELD_AVAILABILITY = "availability";
     public static final String BODY_FIELD_START_DATE = "startDate";
@@ -77,33 +95,191 @@ public class BackendUtils {
     // Rating
     public static final String BODY_FIELD_RATING = "rating";
 
+    // Worker registration
+    public static final String BODY_FIELD_WORKER_PORT = "workerPort";
+
+    // Reducer registration
+    public static final String BODY_FIELD_REDUCER_INDEX = "reducerIndex";
+
     // TODO use these via a config file
     public static final String SERVER_ADDRESS = "localhost";
     public static final String REDUCER_ADDRESS = "localhost";
 
     public static final int SERVER_PORT = 8080;
+    // Port of the first Reducer, Reducer i listens on REDUCER_PORT + i
     public static final int REDUCER_PORT = 4040;
+    public static final int SERVER_BACKLOG = 1024;
+
+    // Handler threads.
+    // Run with -Dhomerentals.threads=virtual to run handlers on virtual threads.
+    public static final String THREAD_MODE_PROPERTY = "homerentals.threads";
+    public static final String THREAD_MODE_PLATFORM = "platform";
+    public static final String THREAD_MODE_VIRTUAL = "virtual";
+
+    // Server front end
+    public static final int CLIENT_EXECUTOR_THREADS = 32;
+    public static final int CLIENT_EXECUTOR_QUEUE_CAPACITY = 4096;
+
+    // Server -> Worker connection pool
+    public static final int WORKER_POOL_MAX_CONNECTIONS = 4;
+    public static final int WORKER_POOL_MAX_IN_FLIGHT = 64;
+    // Longest time a call waits for room on a full pool
+    public static final long WORKER_POOL_BORROW_TIMEOUT_MS = 5_000;
+    // The Server logs the metrics of the pools this often
+    public static final long WORKER_POOL_METRICS_INTERVAL_MS = 60_000;
+    public static final long WORKER_RPC_TIMEOUT_MS = 10_000;
+
+    // Server -> Reducer
+    // Longest time a partial result of a map-reduce call can arrive after the call
+    public static final long MAP_REDUCE_TIMEOUT_MS = 30_000;
+    // Budget of a map-reduce call, clients may ask for less with "timeoutMs".
+    // The Server waits a little longer than the budget for the partial result of the Reducer.
+    public static final long MAP_REDUCE_DEADLINE_MS = 5_000;
+    public static final long MAP_REDUCE_DEADLINE_GRACE_MS = 500;
+
+    // Hedged map requests.
+    // Run the Server with -Dhomerentals.hedging=true to send a map request
+    // again to a worker that has not answered after its usual p95 latency.
+    // The hedge goes to the same worker over a new connection, so it only helps
+    // with a stuck connection or calls queued behind slower ones, not a slow worker.
+    public static final String HEDGING_PROPERTY = "homerentals.hedging";
+    public static final long HEDGE_MIN_DELAY_MS = 50;
+    public static final int HEDGE_LATENCY_SAMPLES = 256;
+
+    // Map-reduce calls that the Server gathers and reduces itself, without the Reducer.
+    // Run the Server with e.g. -Dhomerentals.gather=GET_RENTALS,GET_BOOKINGS_BY_LOCATION
+    // to pick the request types.
+    public static final String DIRECT_GATHER_PROPERTY = "homerentals.gather";
+
+    // Identical searches and reports that arrive while one is running wait for it.
+    // Run the Server with -Dhomerentals.coalescing=false to send each of them to the workers.
+    public static final String COALESCING_PROPERTY = "homerentals.coalescing";
+
+    // Columnar copy of the searchable rental fields on each Worker.
+    // Run the Workers with -Dhomerentals.columnar=true to scan it
+    // for searches that the secondary indexes do not narrow down.
+    public static final String COLUMNAR_PROPERTY = "homerentals.columnar";
+
+    // Bookings of each Worker by location and month, for GET_BOOKINGS_BY_LOCATION.
+    // Run the Workers with -Dhomerentals.bookingIndex=false to count the bookings
+    // of every rental instead, in parallel chunks on large partitions.
+    public static final String BOOKING_INDEX_PROPERTY = "homerentals.bookingIndex";
+
+    // Parallel scans of large Worker partitions.
+    // Scans of at least twice PARALLEL_SCAN_MIN_RENTALS rentals are split into chunks
+    // that run on a pool shared by all requests. Run the Workers with
+    // e.g. -Dhomerentals.scanParallelism=2 to cap the threads of one request,
+    // 1 scans on the request thread only.
+    public static final String SCAN_PARALLELISM_PROPERTY = "homerentals.scanParallelism";
+    public static final int PARALLEL_SCAN_MIN_RENTALS = 50_000;
+
+    // Search result pages
+    public static final int DEFAULT_PAGE_LIMIT = 20;
+    public static final int MAX_PAGE_LIMIT = 1000;
+
+    // GET_RENTALS results cached by the Server.
+    // Run the Server with e.g. -Dhomerentals.searchCache=0 to disable the cache.
+    public static final String SEARCH_CACHE_PROPERTY = "homerentals.searchCache";
+    public static final long SEARCH_CACHE_MAX_BYTES = 16 * 1024 * 1024;
+    public static final long SEARCH_CACHE_MAX_AGE_MS = 60_000;
+
+
+    public static boolean useVirtualThreads() {
+        return THREAD_MODE_VIRTUAL.equalsIgnoreCase(System.getProperty(THREAD_MODE_PROPERTY, THREAD_MODE_PLATFORM));
+    }
+
+    public static boolean useHedging() {
+        return Boolean.parseBoolean(System.getProperty(HEDGING_PROPERTY, "false"));
+    }
+
+    public static boolean useColumnarScan() {
+        return Boolean.parseBoolean(System.getProperty(COLUMNAR_PROPERTY, "false"));
+    }
+
+    public static boolean useBookingIndex() {
+        return Boolean.parseBoolean(System.getProperty(BOOKING_INDEX_PROPERTY, "true"));
+    }
+
+    /*
+    Threads one request may scan with, by default half of the processors,
+    so a large report leaves room for bookings and availability checks
+     */
+    public static int getScanParallelism() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Integer.getInteger(SCAN_PARALLELISM_PROPERTY, Math.max(1, processors / 2)));
+    }
+
+    public static boolean useCoalescing() {
+        return Boolean.parseBoolean(System.getProperty(COALESCING_PROPERTY, "true"));
+    }
+
+    /*
+    Estimated size of the search cache in bytes, 0 if it is disabled
+     */
+    public static long getSearchCacheMaxBytes() {
+        return Math.max(0, Long.getLong(SEARCH_CACHE_PROPERTY, SEARCH_CACHE_MAX_BYTES));
+    }
 
+    public static int getReducerPort(int reducerIndex) {
+        return REDUCER_PORT + reducerIndex;
+    }
+
+    /*
+    Reducer of a map-reduce call.
+    Workers and the Server agree on it without asking each other,
+    and consecutive mapIds go to different Reducers.
+     */
+    public static int getReducerOf(int mapId, int numOfReducers) {
+        return Math.floorMod(mapId, numOfReducers);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the property names an unknown request type
+     */
+    public static EnumSet<Requests> getDirectGatherRequests() {
+        EnumSet<Requests> requests = EnumSet.noneOf(Requests.class);
+        for (String name : System.getProperty(DIRECT_GATHER_PROPERTY, "").split(",")) {
+            if (!name.isBlank()) {
+                requests.add(Requests.valueOf(name.trim().toUpperCase()));
+            }
+        }
+        return requests;
+    }
+
+    /*
+    Starts a thread for a connection handler.
+    The thread is virtual when the virtual-thread mode is enabled.
+     */
+    public static Thread startHandlerThread(String name, Runnable handler) {
+        if (useVirtualThreads()) {
+            return Thread.ofVirtual().name(name).start(handler);
+        }
+        Thread thread = new Thread(handler, name);
+        thread.start();
+        return thread;
+    }
+
+    /*
+    Creates executor for request handlers.
+    In virtual-thread mode every task gets its own virtual thread,
+    otherwise tasks share a fixed amount of platform threads.
+     */
+    public static ExecutorService newHandlerExecutor(String name, int platformThreads) {
+        if (useVirtualThreads()) {
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+        }
+        return Executors.newFixedThreadPool(platformThreads);
+    }
 
     /*
     Creates new request
      */
-    public static JSONObject createRequest(String header, String body) {
-        JSONObject request = new JSONObject();
-        request.put(MESSAGE_TYPE, MESSAGE_TYPE_REQUEST);
-        request.put(MESSAGE_HEADER, header);
-        if (body.isEmpty()) body = "{}";
-        request.put(MESSAGE_BODY, body);
-        return request;
+    public static Message createRequest(Requests header, JSONObject body) {
+        return Message.request(header, body);
     }
 
-    public static JSONObject createResponse(String header, String body) {
-        JSONObject response = new JSONObject();
-        response.put(MESSAGE_TYPE, MESSAGE_TYPE_RESPONSE);
-        response.put(MESSAGE_HEADER, header);
-        if (body.isEmpty()) body = "{}";
-        response.put(MESSAGE_BODY, body);
-        return response;
+    public static Message createResponse(Requests header, JSONObject body) {
+        return Message.response(header, body);
     }
 
     public static JSONObject readFile(String path, boolean print) {
@@ -197,33 +373,47 @@ public class BackendUtils {
         return result;
     }
 
-    /*
-    Used in ClientHandler for NEW_RENTAL request
-    and Server.setUp()
+    /**
+     * Used in ClientHandler for NEW_RENTAL request
+     * and Server.setUp().
+     * Waits for the worker to add the rental before
+     * dropping the cached searches it changes.
+     *
+     * @return the response of the worker, null if the communication with it was unsuccessful
      */
-    protected static void executeNewRentalRequest(JSONObject body, String header) {
+    protected static Message executeNewRentalRequest(JSONObject body, Requests header) {
         // Add new rentalId to requestBody
         int rentalId;
         synchronized (Server.rentalIdSyncObj) {
             rentalId = Server.getNextRentalId();
         }
         body.put(BODY_FIELD_RENTAL_ID, rentalId);
-        JSONObject request = createRequest(header, body.toString());
+        Message request = createRequest(header, body);
 
         // Forward new request to worker that will contain this rental
         int workerId = Server.hash(rentalId);
-        Server.sendMessageToWorker(request.toString(), workerId);
+        Message response = Server.sendMessageToWorkerAndWaitForResponse(request, workerId);
+        // Searches see the rental only once the worker has added it
+        if (response != null && response.getBody().optString(BODY_FIELD_STATUS).equals("OK")) {
+            Server.searchCache.onNewRental(rentalId, body.optString(BODY_FIELD_RENTAL_LOCATION, null));
+        }
+        return response;
     }
 
     /*
     Used in ClientHandler for UPDATE_AVAILABILITY request
     and Server.setUp()
      */
-    public static String executeUpdateAvailability(String input, JSONObject body) {
+    public static Message executeUpdateAvailability(Message request) {
         // Forward request, as it is,
         // to worker that contains this rental
-        int workerId = Server.hash(body.getInt(BODY_FIELD_RENTAL_ID));
-        return Server.sendMessageToWorkerAndWaitForResponse(input, workerId);
+        int rentalId = request.getBody().getInt(BODY_FIELD_RENTAL_ID);
+        int workerId = Server.hash(rentalId);
+        Message response = Server.sendMessageToWorkerAndWaitForResponse(request, workerId);
+        if (response != null && response.getBody().optString(BODY_FIELD_STATUS).equals("OK")) {
+            Server.searchCache.onAvailabilityUpdate(rentalId);
+        }
+        return response;
     }
 
     /**
@@ -234,26 +424,25 @@ public class BackendUtils {
      * @return if the communication with the worker was unsuccessful, returns null.
      * else, returns the JSONObject of the response body
      */
-    protected static JSONObject executeNewBookingRequest(JSONObject body, String header) {
+    protected static JSONObject executeNewBookingRequest(JSONObject body, Requests header) {
         // Add new bookingId to requestBody
         String bookingId;
         synchronized (Server.bookingIdSyncObj) {
             bookingId = Server.getNextBookingId();
         }
         body.put(BODY_FIELD_BOOKING_ID, bookingId);
-        JSONObject request = createRequest(header, body.toString());
+        Message request = createRequest(header, body);
 
         // Forward new request to worker that contains this rental
         int rentalId = body.getInt(BODY_FIELD_RENTAL_ID);
         int workerId = Server.hash(rentalId);
-        String response = Server.sendMessageToWorkerAndWaitForResponse(request.toString(), workerId);
+        Message response = Server.sendMessageToWorkerAndWaitForResponse(request, workerId);
         if (response == null) {
             return null;
         }
 
         // Handle JSON response
-        JSONObject responseJson = new JSONObject(response);
-        JSONObject responseBody = new JSONObject(responseJson.getString(BackendUtils.MESSAGE_BODY));
+        JSONObject responseBody = response.getBody();
         String status = responseBody.getString(BackendUtils.BODY_FIELD_STATUS);
         if (status.equals("OK")) {
             String email = responseBody.getString(BackendUtils.BODY_FIELD_GUEST_EMAIL);
@@ -267,6 +456,7 @@ public class BackendUtils {
             LocalDate endDate = LocalDate.parse(endDateString, BackendUtils.dateFormatter);
 
             Server.addBookingToGuest(email, bookingId, rentalId, rentalName, rentalLocation, startDate, endDate);
+            Server.searchCache.onNewBooking(rentalId);
         }
         return responseBody;
     }
@@ -275,10 +465,9 @@ public class BackendUtils {
     Used by HostConsole and GuestConsole clients
     to send requests to Server
      */
-    protected static void clientToServer(DataOutputStream stream, String msg) throws IOException {
+    protected static void clientToServer(DataOutputStream stream, Message msg) throws IOException {
         try {
-            stream.writeUTF(msg);
-            stream.flush();
+            MessageCodec.write(stream, msg);
         } catch (IOException e) {
             System.err.println("\n! BackendUtils.clientToServer(): Error sending Socket Output:\n" + e);
             throw e;
@@ -289,9 +478,9 @@ public class BackendUtils {
     Used by HostConsole and GuestConsole clients
     to receive responses from Server
      */
-    protected static String serverToClient(DataInputStream stream) {
+    protected static Message serverToClient(DataInputStream stream) {
         try {
-            return stream.readUTF();
+            return MessageCodec.read(stream);
         } catch (IOException e) {
             System.err.println("\n! BackendUtils.serverToClient(): Could not read object from server input stream:\n" + e);
             return null;
@@ -299,15 +488,14 @@ public class BackendUtils {
     }
 
     protected static void handleServerResponse(DataInputStream stream, String successfulMsg, String unsuccessfulMsg) throws IOException {
-        // Receive responseString
-        String responseString = BackendUtils.serverToClient(stream);
-        if (responseString == null) {
-            System.err.println("\n! BackendUtils.handleServerResponse(): Could not receive responseString from Server.");
+        // Receive response
+        Message response = BackendUtils.serverToClient(stream);
+        if (response == null) {
+            System.err.println("\n! BackendUtils.handleServerResponse(): Could not receive response from Server.");
             return;
         }
         // Handle JSON input
-        JSONObject responseJson = new JSONObject(responseString);
-        JSONObject responseBody = new JSONObject(responseJson.getString(BackendUtils.MESSAGE_BODY));
+        JSONObject responseBody = response.getBody();
         String status = responseBody.getString(BackendUtils.BODY_FIELD_STATUS);
         if (status.equals("OK")) {
             System.out.println(successfulMsg);
@@ -325,16 +513,16 @@ public class BackendUtils {
         JSONObject filters = new JSONObject();
         JSONObject body = new JSONObject();
         body.put(BODY_FIELD_FILTERS, filters);
-        JSONObject request = createRequest(Requests.GET_RENTALS.name(), body.toString());
+        Message request = createRequest(Requests.GET_RENTALS, body);
         try {
-            clientToServer(dataOutputStream, request.toString());
+            clientToServer(dataOutputStream, request);
         } catch (IOException e) {
             System.err.println("\n! BackendUtils.getAllRentals(): Error sending Socket Output:\n" + e);
             throw e;
         }
 
         // Receive response
-        String response = serverToClient(objectInputStream);
+        Message response = serverToClient(objectInputStream);
         if (response == null) {
             System.err.println("\n! BackendUtils.getAllRentals(): Could not receive host's rentals from Server.");
             return null;
@@ -346,8 +534,7 @@ public class BackendUtils {
         } else {
             System.out.println("\n[Rentals List]\n");
         }
-        JSONObject responseJson = new JSONObject(response);
-        JSONObject responseBody = new JSONObject(responseJson.getString(BackendUtils.MESSAGE_BODY));
+        JSONObject responseBody = response.getBody();
         JSONArray rentalsJsonArray = responseBody.getJSONArray(BODY_FIELD_RENTALS);
         ArrayList<JSONObject> rentals = new ArrayList<>();
         for (int i = 0; i < rentalsJsonArray.length(); i++) {
@@ -356,10 +543,22 @@ public class BackendUtils {
             rentals.add(rental);
         }
         System.out.println("<-------- [End Of List] -------->");
+        warnIfPartial(responseBody);
 
         return rentals;
     }
 
+    /*
+    Warns the user if some workers missed
+    the deadline of a search
+     */
+    protected static void warnIfPartial(JSONObject responseBody) {
+        if (responseBody.optBoolean(BODY_FIELD_PARTIAL, false)) {
+            System.out.printf("%n[Warning: %d worker(s) did not answer in time, the list may be incomplete]%n",
+                    responseBody.optInt(BODY_FIELD_MISSING_WORKERS));
+        }
+    }
+
     protected static int chooseRentalFromList(ArrayList<JSONObject> rentals) {
         Scanner userInput = new Scanner(System.in);
 
@@ -0,0 +1,139 @@
+package com.homerentals.backend;
+
+import com.homerentals.domain.Booking;
+import com.homerentals.domain.Rental;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+Bookings of the rentals of a Worker, by location and by the
+month they start in, for GET_BOOKINGS_BY_LOCATION.
+A report only reads the months of its range: a month inside the
+range whose bookings all end inside it too adds its count, the
+months at the edges check the dates of their bookings.
+So a report costs the months it covers, not every booking
+of every rental.
+ */
+public class BookingIndex {
+    // Bookings that start in one month
+    private static final class Month {
+        private final long firstDay;
+        private long[] starts = new long[4];
+        private long[] ends = new long[4];
+        private int size = 0;
+        private long maxEnd = Long.MIN_VALUE;
+
+        private Month(long firstDay) {
+            this.firstDay = firstDay;
+        }
+
+        private void add(long start, long end) {
+            if (this.size == this.starts.length) {
+                this.starts = Arrays.copyOf(this.starts, this.size * 2);
+                this.ends = Arrays.copyOf(this.ends, this.size * 2);
+            }
+            this.starts[this.size] = start;
+            this.ends[this.size] = end;
+            this.size++;
+            this.maxEnd = Math.max(this.maxEnd, end);
+        }
+
+        private int countWithin(long startDay, long endDay) {
+            if (this.firstDay >= startDay && this.maxEnd <= endDay) {
+                return this.size;
+            }
+            int count = 0;
+            for (int i = 0; i < this.size; i++) {
+                if (this.starts[i] >= startDay && this.ends[i] <= endDay) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Location, as the rentals spell it, to the months of its bookings
+    private final HashMap<String, TreeMap<Integer, Month>> byLocation = new HashMap<>();
+    private int size = 0;
+
+    private static int monthOf(LocalDate date) {
+        return date.getYear() * 12 + date.getMonthValue() - 1;
+    }
+
+    /*
+    Locations without bookings are still part of the report
+     */
+    public void addRental(Rental rental) {
+        this.lock.writeLock().lock();
+        try {
+            this.byLocation.computeIfAbsent(rental.getLocation(), k -> new TreeMap<>());
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    public void addBooking(Rental rental, Booking booking) {
+        LocalDate startDate = booking.getStartDate();
+        this.lock.writeLock().lock();
+        try {
+            TreeMap<Integer, Month> months = this.byLocation.computeIfAbsent(rental.getLocation(), k -> new TreeMap<>());
+            months.computeIfAbsent(monthOf(startDate), k -> new Month(startDate.withDayOfMonth(1).toEpochDay()))
+                    .add(startDate.toEpochDay(), booking.getEndDate().toEpochDay());
+            this.size++;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        this.lock.readLock().lock();
+        try {
+            return this.size;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Bookings per location that start on or after startDate
+     * and end on or before endDate, the same counts as
+     * Mapper.mapBookingsToLocations() over the rentals.
+     */
+    public ArrayList<BookingsByLocation> countWithin(LocalDate startDate, LocalDate endDate) {
+        long startDay = startDate.toEpochDay();
+        long endDay = endDate.toEpochDay();
+        HashMap<String, BookingsByLocation> bookings = new HashMap<>();
+        this.lock.readLock().lock();
+        try {
+            for (Map.Entry<String, TreeMap<Integer, Month>> location : this.byLocation.entrySet()) {
+                BookingsByLocation bookingsByLocation = new BookingsByLocation(location.getKey());
+                if (!endDate.isBefore(startDate)) {
+                    for (Month month : location.getValue().subMap(monthOf(startDate), true, monthOf(endDate), true).values()) {
+                        bookingsByLocation.addBookings(month.countWithin(startDay, endDay));
+                    }
+                }
+                bookings.put(location.getKey(), bookingsByLocation);
+            }
+        } finally {
+            this.lock.readLock().unlock();
+        }
+        return new ArrayList<>(bookings.values());
+    }
+
+    @Override
+    public String toString() {
+        this.lock.readLock().lock();
+        try {
+            return String.format("BookingIndex[bookings=%d, locations=%d]", this.size, this.byLocation.size());
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+}
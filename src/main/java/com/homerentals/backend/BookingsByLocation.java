@@ -1,36 +1,48 @@
 package com.homerentals.backend;
 
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.HashSet;
 
+/*
+Amount of bookings per location.
+Every booking belongs to the rental of exactly one worker,
+so workers combine their bookings into counts and the
+Reducer only has to add the counts of a location.
+ */
 public class BookingsByLocation implements Serializable {
     private final String location;
-    private final HashSet<String> bookingIds;
+    private int numOfBookings;
 
     public BookingsByLocation(String location) {
+        this(location, 0);
+    }
+
+    public BookingsByLocation(String location, int numOfBookings) {
         this.location = location;
-        this.bookingIds = new HashSet<>();
+        this.numOfBookings = numOfBookings;
+    }
+
+    public void addBooking() {
+        this.numOfBookings++;
     }
 
-    public void addBooking(String bookingId) {
-        bookingIds.add(bookingId);
+    public void addBookings(int numOfBookings) {
+        this.numOfBookings += numOfBookings;
     }
 
-    public void addAll(ArrayList<String> bookingIds) {
-        this.bookingIds.addAll(bookingIds);
+    public void merge(BookingsByLocation other) {
+        this.numOfBookings += other.numOfBookings;
     }
 
     public String getLocation() {
         return location;
     }
 
-    public ArrayList<String> getBookingIds() {
-        return new ArrayList<>(bookingIds);
+    public int getNumOfBookings() {
+        return this.numOfBookings;
     }
 
     @Override
     public String toString() {
-        return String.format("- %s: %d%n%n", this.location, this.bookingIds.size());
+        return String.format("- %s: %d%n%n", this.location, this.numOfBookings);
     }
 }
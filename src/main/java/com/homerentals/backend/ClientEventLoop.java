@@ -0,0 +1,152 @@
+package com.homerentals.backend;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/*
+Single-threaded, Selector-based front end of the Server.
+Accepts console clients, decodes their requests without
+blocking and hands them to a bounded executor, which
+runs the ClientHandler logic.
+ */
+class ClientEventLoop implements Runnable {
+    private static final long SELECT_TIMEOUT_MS = 50;
+
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final ExecutorService clientExecutor;
+    // Sessions that could not be dispatched because the executor was full
+    private final ConcurrentLinkedQueue<ClientSession> rejected = new ConcurrentLinkedQueue<>();
+
+    ClientEventLoop(ServerSocketChannel serverChannel, int threads, int queueCapacity) throws IOException {
+        this.serverChannel = serverChannel;
+        this.serverChannel.configureBlocking(false);
+        this.selector = Selector.open();
+        this.serverChannel.register(this.selector, SelectionKey.OP_ACCEPT);
+        if (BackendUtils.useVirtualThreads()) {
+            // A virtual thread per request, blocking calls do not hold OS threads
+            this.clientExecutor = BackendUtils.newHandlerExecutor("ClientHandler", threads);
+        } else {
+            this.clientExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity));
+        }
+    }
+
+    protected void setWriteInterest(SelectionKey key, boolean interested) {
+        if (key == null || !key.isValid()) {
+            return;
+        }
+        try {
+            int ops = key.interestOps();
+            int newOps = interested ? (ops | SelectionKey.OP_WRITE) : (ops & ~SelectionKey.OP_WRITE);
+            if (ops != newOps) {
+                key.interestOps(newOps);
+                this.selector.wakeup();
+            }
+        } catch (CancelledKeyException e) {
+            // Session was closed in the meantime
+        }
+    }
+
+    private void dispatch(ClientSession session) {
+        try {
+            this.clientExecutor.execute(session::drain);
+        } catch (RejectedExecutionException e) {
+            // Retry on the next iteration of the loop
+            this.rejected.add(session);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel clientChannel = this.serverChannel.accept();
+        if (clientChannel == null) {
+            return;
+        }
+        clientChannel.configureBlocking(false);
+        clientChannel.socket().setTcpNoDelay(true);
+        ClientSession session = new ClientSession(clientChannel, this);
+        session.setKey(clientChannel.register(this.selector, SelectionKey.OP_READ, session));
+        System.out.println("\n> New client connected: " + session.getRemoteAddress());
+    }
+
+    private void read(SelectionKey key) {
+        ClientSession session = (ClientSession) key.attachment();
+        try {
+            ArrayList<Message> frames = session.readFrames();
+            if (frames == null) {
+                session.close();
+                return;
+            }
+            for (Message frame : frames) {
+                if (session.offer(frame)) {
+                    this.dispatch(session);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("\n! ClientEventLoop.read(): Error reading Client input:\n" + e);
+            session.close();
+        }
+    }
+
+    private void write(SelectionKey key) {
+        ClientSession session = (ClientSession) key.attachment();
+        try {
+            session.flush();
+        } catch (IOException e) {
+            System.err.println("\n! ClientEventLoop.write(): Error sending Client output:\n" + e);
+            session.close();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (this.serverChannel.isOpen()) {
+            try {
+                this.selector.select(SELECT_TIMEOUT_MS);
+
+                int retries = this.rejected.size();
+                for (int i = 0; i < retries; i++) {
+                    this.dispatch(this.rejected.poll());
+                }
+
+                Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    try {
+                        if (key.isAcceptable()) {
+                            this.accept();
+                            continue;
+                        }
+                        if (key.isReadable()) {
+                            this.read(key);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            this.write(key);
+                        }
+                    } catch (CancelledKeyException e) {
+                        // Session was closed by a handler thread
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("\n! ClientEventLoop.run(): Error:\n" + e);
+            }
+        }
+        this.clientExecutor.shutdown();
+    }
+}
@@ -5,361 +5,567 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.net.Socket;
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
-class ClientHandler implements Runnable {
-    private DataInputStream clientSocketIn = null;
-    private DataOutputStream clientSocketOut = null;
+class ClientHandler {
+    private final ClientSession session;
 
-    ClientHandler(Socket clientSocket) throws IOException {
+    ClientHandler(ClientSession session) {
+        this.session = session;
+    }
+
+    private void sendClientSocketOutput(Message msg) throws IOException {
         try {
-            this.clientSocketOut = new DataOutputStream(clientSocket.getOutputStream());
-            this.clientSocketIn = new DataInputStream(clientSocket.getInputStream());
+            System.out.printf("\n> Sending response : %s%n", msg);
+            this.session.send(msg);
         } catch (IOException e) {
-            System.err.println("\n! ClientHandler(): Error setting up streams:\n" + e);
+            System.err.println("\n! ClientHandler.sendClientSocketOutput(): Error sending Client Socket output:\n" + e);
             throw e;
         }
     }
 
-    private String readClientSocketInput() {
-        try {
-            return this.clientSocketIn.readUTF();
-        } catch (IOException e) {
-            System.err.println("\n! ClientHandler.readClientSocketInput(): Error reading Client Socket input:\n" + e);
-            return null;
+    /*
+    Time the client allows for a map-reduce call,
+    never more than the default budget
+     */
+    private static long getDeadlineMillis(JSONObject body) {
+        long timeout = body.optLong(BackendUtils.BODY_FIELD_TIMEOUT_MS, BackendUtils.MAP_REDUCE_DEADLINE_MS);
+        if (timeout <= 0) {
+            return BackendUtils.MAP_REDUCE_DEADLINE_MS;
         }
+        return Math.min(timeout, BackendUtils.MAP_REDUCE_DEADLINE_MS);
     }
 
-    private void sendClientSocketOutput(String msg) throws IOException {
-        try {
-            System.out.printf("\n> Sending response : %s%n", msg);
-            clientSocketOut.writeUTF(msg);
-            clientSocketOut.flush();
-        } catch (IOException e) {
-            System.err.println("\n! ClientHandler.sendClientSocketOutput(): Error sending Client Socket output:\n" + e);
-            throw e;
+    /*
+    Result of a call that no worker answered in time
+     */
+    private static MapResult createEmptyResult(Requests header, int mapId) {
+        ArrayList<RentalSummary> rentals = (header == Requests.GET_BOOKINGS_BY_LOCATION) ? null : new ArrayList<>();
+        ArrayList<BookingsByLocation> bookingsByLocation = (header == Requests.GET_BOOKINGS_BY_LOCATION) ? new ArrayList<>() : null;
+        return new MapResult(mapId, rentals, bookingsByLocation, null, MapResult.NO_WORKER, 0, Server.workers.size());
+    }
+
+    /*
+    Same key for requests that the workers answer the same way.
+    The key holds the generation of the search cache,
+    so a request never waits for a call that started
+    before a write the request should see.
+     */
+    private static String coalescingKeyOf(Requests header, JSONObject body, RentalPage page) {
+        String request;
+        switch (header) {
+            case GET_RENTALS:
+                request = SearchCache.keyOf(body, page);
+                break;
+            case GET_BOOKINGS_BY_LOCATION:
+                request = body.optString(BackendUtils.BODY_FIELD_START_DATE).trim() + "-" + body.optString(BackendUtils.BODY_FIELD_END_DATE).trim();
+                break;
+            default:
+                return null;
         }
+        return header + ":" + request + "@" + Server.searchCache.getGeneration();
     }
 
-    private MapResult performMapReduce(Requests header, JSONObject body) throws InterruptedException {
-        // Create MapReduce Request
-        int mapId;
-        synchronized (Server.mapIdSyncObj) {
-            mapId = Server.getNextMapId();
+    /*
+    Map-reduce call that clients sending the same request share
+     */
+    private MapResult performCoalescedMapReduce(Requests header, JSONObject body, RentalPage page) throws InterruptedException, ExecutionException {
+        String key = coalescingKeyOf(header, body, page);
+        if (key == null || !BackendUtils.useCoalescing()) {
+            return this.performMapReduce(header, body);
         }
-        body.put(BackendUtils.BODY_FIELD_MAP_ID, mapId);
-        JSONObject request = BackendUtils.createRequest(header.toString(), body.toString());
 
-        // Send request to all workers
-        Server.broadcastMessageToWorkers(request.toString());
+        long timeout = getDeadlineMillis(body) + BackendUtils.MAP_REDUCE_DEADLINE_GRACE_MS;
+        try {
+            return Server.inFlightMapReduces.run(key, timeout, () -> this.performMapReduce(header, body));
+        } catch (TimeoutException e) {
+            // The call this request waits for was slower than this request's deadline
+            System.err.println("\n! ClientHandler.performCoalescedMapReduce(): No result for " + key + " after " + timeout + "ms, sending empty result.\n! " + Server.inFlightMapReduces);
+            return createEmptyResult(header, MapResult.NO_WORKER);
+        }
+    }
+
+    private MapResult performMapReduce(Requests header, JSONObject body) throws InterruptedException, ExecutionException {
+        int mapId = Server.getNextMapId();
+        long deadline = getDeadlineMillis(body);
 
-        // Check Server.mapReduceResults for Reducer response
         MapResult mapResult;
-        synchronized (ReducerHandler.syncObj) {
-            while (!Server.mapReduceResults.containsKey(mapId)) {
-                ReducerHandler.syncObj.wait();
-            }
-            mapResult = Server.mapReduceResults.get(mapId);
-            Server.mapReduceResults.remove(mapId);
+        if (Server.isGatheredDirectly(header)) {
+            mapResult = this.gatherMapResults(header, body, mapId, deadline);
+        } else {
+            mapResult = this.reduceMapResults(header, body, mapId, deadline);
         }
-
-        if (mapResult == null) {
-            throw new InterruptedException();
+        if (mapResult.isPartial()) {
+            Server.mapReduceResults.recordPartial();
+            System.out.printf("\n> MapReduce #%d hit its deadline, %d worker(s) missing.%n> %s%n", mapId, mapResult.getMissingPartials(), Server.mapReduceResults);
         }
-
         return mapResult;
     }
 
-    @Override
-    public void run() {
-        // Read data sent from client
-        String input;
-        boolean running = true;
+    /*
+    Map-reduce call through the Reducer
+     */
+    private MapResult reduceMapResults(Requests header, JSONObject body, int mapId, long deadline) throws InterruptedException, ExecutionException {
+        // Register before sending,
+        // so the result cannot arrive first
+        CompletableFuture<MapResult> result = Server.mapReduceResults.register(mapId);
+
+        // Send request to all workers
         try {
-            while (running) {
-                input = this.readClientSocketInput();
-                if (input == null) {
-                    System.err.println("\n! ClientHandler.run(): Error reading Client Socket input");
-                    break;
-                }
-                System.out.println("\n> Received: " + input);
-
-                // Handle JSON input
-                JSONObject inputJson = new JSONObject(input);
-                String inputType = inputJson.getString(BackendUtils.MESSAGE_TYPE);
-                JSONObject inputBody = new JSONObject(inputJson.getString(BackendUtils.MESSAGE_BODY));
-                Requests inputHeader = Requests.valueOf(inputJson.getString(BackendUtils.MESSAGE_HEADER));
-
-                MapResult mapResult;
-                String emailString, passwordString, response, status;
-                int workerId;
-                JSONObject responseJson, responseBody, bookingInfo;
-                switch (inputHeader) {
-                    // Guest Requests
-                    case SIGN_UP:
-                        responseBody = new JSONObject();
+            Server.sendMapRequestToWorkers(header, body, mapId, deadline);
+        } catch (RuntimeException e) {
+            Server.mapReduceResults.cancel(mapId);
+            throw e;
+        }
 
-                        Email email;
-                        emailString = inputBody.getString(BackendUtils.BODY_FIELD_GUEST_EMAIL);
-                        if (!Email.isValid(emailString) || Server.getUser(emailString) != null) {
-                            // Invalid email
-                            responseBody.put(BackendUtils.BODY_FIELD_ERROR, BackendUtils.BODY_FIELD_GUEST_EMAIL);
-                            responseJson = BackendUtils.createResponse(inputHeader.name(), responseBody.toString());
-                            this.sendClientSocketOutput(responseJson.toString());
-                            break;
-                        } else {
-                            email = new Email(emailString);
-                        }
+        // Wait for Reducer response.
+        // If some workers miss the deadline, the Reducer
+        // sends what it has, so wait a little longer.
+        try {
+            MapResult reduced = Server.mapReduceResults.await(mapId, result, deadline + BackendUtils.MAP_REDUCE_DEADLINE_GRACE_MS);
+            if (reduced.getMissingPartials() >= Server.workers.size()) {
+                // Every worker failed, the reduction has no result of the right type
+                return createEmptyResult(header, mapId);
+            }
+            return reduced;
+        } catch (TimeoutException e) {
+            // No worker answered in time
+            System.err.println("\n! ClientHandler.reduceMapResults(): " + e.getMessage() + ", sending empty result.");
+            return createEmptyResult(header, mapId);
+        }
+    }
 
-                        Password password;
-                        passwordString = inputBody.getString(BackendUtils.BODY_FIELD_GUEST_PASSWORD);
-                        if (!Password.isValid(passwordString)) {
-                            // Invalid password
-                            responseBody.put(BackendUtils.BODY_FIELD_ERROR, BackendUtils.BODY_FIELD_GUEST_PASSWORD);
-                            responseJson = BackendUtils.createResponse(inputHeader.name(), responseBody.toString());
-                            this.sendClientSocketOutput(responseJson.toString());
-                            break;
-                        } else {
-                            password = new Password(passwordString);
-                        }
+    /*
+    Map-reduce call without the Reducer.
+    Workers answer with their partial results,
+    which are folded here in the order the workers answer.
+     */
+    private MapResult gatherMapResults(Requests header, JSONObject body, int mapId, long deadline) throws InterruptedException {
+        ArrayList<CompletableFuture<Message>> answers = Server.sendMapRequestToWorkers(header, body, mapId, deadline);
+        ReduceJob job = new ReduceJob(mapId, answers.size());
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadline);
+
+        CompletableFuture<Object> next = CompletableFuture.anyOf(answers.toArray(new CompletableFuture<?>[0]));
+        ArrayList<CompletableFuture<Message>> waiting = new ArrayList<>(answers);
+        while (!waiting.isEmpty()) {
+            try {
+                next.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException e) {
+                // Failed answer is handled below
+            } catch (TimeoutException e) {
+                break;
+            }
+            for (int i = waiting.size() - 1; i >= 0; i--) {
+                CompletableFuture<Message> answer = waiting.get(i);
+                if (answer.isDone()) {
+                    waiting.remove(i);
+                    this.foldAnswer(job, answer);
+                }
+            }
+            next = CompletableFuture.anyOf(waiting.toArray(new CompletableFuture<?>[0]));
+        }
+        if (!waiting.isEmpty()) {
+            System.err.printf("\n! ClientHandler.gatherMapResults(): %d worker(s) missed the deadline of MapReduce #%d.%n", waiting.size(), mapId);
+        }
 
-                        PhoneNumber phoneNumber;
-                        String phoneNumberString = inputBody.getString(BackendUtils.BODY_FIELD_GUEST_PHONE_NUMBER);
-                        if (!PhoneNumber.isValid(phoneNumberString)) {
-                            // Invalid phone number
-                            responseBody.put(BackendUtils.BODY_FIELD_ERROR, BackendUtils.BODY_FIELD_GUEST_PHONE_NUMBER);
-                            responseJson = BackendUtils.createResponse(inputHeader.name(), responseBody.toString());
-                            this.sendClientSocketOutput(responseJson.toString());
-                            break;
-                        } else {
-                            phoneNumber = new PhoneNumber(phoneNumberString);
-                        }
+        if (job.getReceivedPartials() == 0) {
+            return createEmptyResult(header, mapId);
+        }
+        return job.reduce();
+    }
 
-                        // Valid inputs
-                        String firstName = inputBody.getString(BackendUtils.BODY_FIELD_GUEST_FIRST_NAME);
-                        String lastName = inputBody.getString(BackendUtils.BODY_FIELD_GUEST_LAST_NAME);
-                        Server.addUser(email, password, firstName, lastName, phoneNumber);
+    private void foldAnswer(ReduceJob job, CompletableFuture<Message> answer) {
+        try {
+            Message response = answer.getNow(null);
+            if (response.getHeader() != Requests.MAP_RESULT) {
+                // Worker skipped the request, e.g. its deadline passed
+                System.err.println("\n! ClientHandler.foldAnswer(): No map result in " + response);
+                return;
+            }
+            job.add(MapResult.fromMessage(response));
+        } catch (CompletionException | IOException e) {
+            System.err.println("\n! ClientHandler.foldAnswer(): Failed to get map result:\n" + e);
+        }
+    }
 
-                        // Send "OK" response
-                        responseBody.put(BackendUtils.BODY_FIELD_STATUS, "OK");
-                        responseBody.put(BackendUtils.BODY_FIELD_GUEST_EMAIL, email.toString());
-                        responseBody.put(BackendUtils.BODY_FIELD_GUEST_PHONE_NUMBER, phoneNumber.getPhoneNumber());
-                        responseBody.put(BackendUtils.BODY_FIELD_GUEST_FIRST_NAME, firstName);
-                        responseJson = BackendUtils.createResponse(inputHeader.name(), responseBody.toString());
-                        this.sendClientSocketOutput(responseJson.toString());
-                        break;
+    /*
+    Lets the client know that some workers
+    did not answer in time
+     */
+    private static void flagPartialResult(JSONObject responseBody, MapResult mapResult) {
+        if (mapResult.isPartial()) {
+            responseBody.put(BackendUtils.BODY_FIELD_PARTIAL, true);
+            responseBody.put(BackendUtils.BODY_FIELD_MISSING_WORKERS, mapResult.getMissingPartials());
+        }
+    }
 
-                    case CHECK_CREDENTIALS:
-                        emailString = inputBody.getString(BackendUtils.BODY_FIELD_GUEST_EMAIL);
-                        passwordString = inputBody.getString(BackendUtils.BODY_FIELD_GUEST_PASSWORD);
+    /**
+     * Sends a CHECK_AVAILABILITY request for every rental
+     * in the body to its worker, all at once.
+     *
+     * @return response with body {"availability": {rentalId: "AVAILABLE" | "UNAVAILABLE"}}
+     */
+    private Message checkAvailabilityOfRentals(Requests header, JSONObject body) throws InterruptedException {
+        JSONArray rentalIds = body.getJSONArray(BackendUtils.BODY_FIELD_RENTAL_IDS);
+        ArrayList<CompletableFuture<Message>> calls = new ArrayList<>();
+        for (int i = 0; i < rentalIds.length(); i++) {
+            int rentalId = rentalIds.getInt(i);
+            JSONObject requestBody = new JSONObject();
+            requestBody.put(BackendUtils.BODY_FIELD_RENTAL_ID, rentalId);
+            requestBody.put(BackendUtils.BODY_FIELD_START_DATE, body.getString(BackendUtils.BODY_FIELD_START_DATE));
+            requestBody.put(BackendUtils.BODY_FIELD_END_DATE, body.getString(BackendUtils.BODY_FIELD_END_DATE));
+            Message request = BackendUtils.createRequest(header, requestBody);
+            calls.add(Server.sendMessageToWorkerAsync(request, Server.hash(rentalId)));
+        }
 
-                        // Send response
-                        responseBody = new JSONObject();
-                        boolean userExists = Server.userExists(emailString, passwordString);
-                        if (userExists) {
-                            responseBody.put(BackendUtils.BODY_FIELD_STATUS, "OK");
-                            GuestAccount guestAccount = Server.getUser(emailString);
-                            responseBody.put(BackendUtils.BODY_FIELD_GUEST_EMAIL, guestAccount.getEmail().toString());
-                            responseBody.put(BackendUtils.BODY_FIELD_GUEST_PHONE_NUMBER, guestAccount.getPhoneNumber().getPhoneNumber());
-                            responseBody.put(BackendUtils.BODY_FIELD_GUEST_FIRST_NAME, guestAccount.getFirstName());
-                        } else {
-                            responseBody.put(BackendUtils.BODY_FIELD_STATUS, "ERROR");
-                        }
-                        responseJson = BackendUtils.createResponse(inputHeader.name(), responseBody.toString());
-                        this.sendClientSocketOutput(responseJson.toString());
-                        break;
+        JSONObject availability = new JSONObject();
+        for (int i = 0; i < calls.size(); i++) {
+            String rentalAvailability = "UNAVAILABLE";
+            try {
+                Message response = calls.get(i).get(BackendUtils.WORKER_RPC_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                rentalAvailability = response.getBody().getString(BackendUtils.BODY_FIELD_AVAILABILITY);
+            } catch (ExecutionException | TimeoutException e) {
+                System.err.println("\n! ClientHandler.checkAvailabilityOfRentals(): Failed to check rental #" + rentalIds.getInt(i) + ":\n" + e);
+            }
+            availability.put(String.valueOf(rentalIds.getInt(i)), rentalAvailability);
+        }
 
-                    case GET_RENTALS:
-                        // MapReduce
-                        mapResult = this.performMapReduce(inputHeader, inputBody);
+        JSONObject responseBody = new JSONObject();
+        responseBody.put(BackendUtils.BODY_FIELD_AVAILABILITY, availability);
+        return BackendUtils.createResponse(header, responseBody);
+    }
 
-                        // Create JSON response
-                        responseBody = new JSONObject();
-                        JSONArray rentals = new JSONArray();
-                        for (Rental rental : mapResult.getRentals()) {
-                            rentals.put(rental.toJSON());
-                        }
-                        responseBody.put(BackendUtils.BODY_FIELD_RENTALS, rentals);
-                        responseJson = BackendUtils.createResponse(inputHeader.name(), responseBody.toString());
-                        // Send rentals to client
-                        this.sendClientSocketOutput(responseJson.toString());
+    /**
+     * Handles a single request of the client.
+     * Called by the ClientSession, one request at a time.
+     *
+     * @return false if the connection with the client should be closed
+     */
+    protected boolean handleRequest(Message input) {
+        boolean running = true;
+        try {
+            System.out.println("\n> Received: " + input);
+
+            // Handle JSON input
+            JSONObject inputBody = input.getBody();
+            Requests inputHeader = input.getHeader();
+
+            MapResult mapResult;
+            String emailString, passwordString, status;
+            int workerId;
+            Message response;
+            JSONObject responseBody, bookingInfo;
+            switch (inputHeader) {
+                // Guest Requests
+                case SIGN_UP:
+                    responseBody = new JSONObject();
+
+                    Email email;
+                    emailString = inputBody.getString(BackendUtils.BODY_FIELD_GUEST_EMAIL);
+                    if (!Email.isValid(emailString) || Server.getUser(emailString) != null) {
+                        // Invalid email
+                        responseBody.put(BackendUtils.BODY_FIELD_ERROR, BackendUtils.BODY_FIELD_GUEST_EMAIL);
+                        response = BackendUtils.createResponse(inputHeader, responseBody);
+                        this.sendClientSocketOutput(response);
                         break;
-
-                    case CHECK_AVAILABILITY:
-                        // Forward request to worker that contains this rental
-                        int rentalId = inputBody.getInt(BackendUtils.BODY_FIELD_RENTAL_ID);
-                        workerId = Server.hash(rentalId);
-                        response = Server.sendMessageToWorkerAndWaitForResponse(input, workerId);
-                        if (response == null) {
-                            break;
-                        }
-
-                        // Forward response to client
+                    } else {
+                        email = new Email(emailString);
+                    }
+
+                    Password password;
+                    passwordString = inputBody.getString(BackendUtils.BODY_FIELD_GUEST_PASSWORD);
+                    if (!Password.isValid(passwordString)) {
+                        // Invalid password
+                        responseBody.put(BackendUtils.BODY_FIELD_ERROR, BackendUtils.BODY_FIELD_GUEST_PASSWORD);
+                        response = BackendUtils.createResponse(inputHeader, responseBody);
                         this.sendClientSocketOutput(response);
                         break;
+                    } else {
+                        password = new Password(passwordString);
+                    }
+
+                    PhoneNumber phoneNumber;
+                    String phoneNumberString = inputBody.getString(BackendUtils.BODY_FIELD_GUEST_PHONE_NUMBER);
+                    if (!PhoneNumber.isValid(phoneNumberString)) {
+                        // Invalid phone number
+                        responseBody.put(BackendUtils.BODY_FIELD_ERROR, BackendUtils.BODY_FIELD_GUEST_PHONE_NUMBER);
+                        response = BackendUtils.createResponse(inputHeader, responseBody);
+                        this.sendClientSocketOutput(response);
+                        break;
+                    } else {
+                        phoneNumber = new PhoneNumber(phoneNumberString);
+                    }
+
+                    // Valid inputs
+                    String firstName = inputBody.getString(BackendUtils.BODY_FIELD_GUEST_FIRST_NAME);
+                    String lastName = inputBody.getString(BackendUtils.BODY_FIELD_GUEST_LAST_NAME);
+                    Server.addUser(email, password, firstName, lastName, phoneNumber);
+
+                    // Send "OK" response
+                    responseBody.put(BackendUtils.BODY_FIELD_STATUS, "OK");
+                    responseBody.put(BackendUtils.BODY_FIELD_GUEST_EMAIL, email.toString());
+                    responseBody.put(BackendUtils.BODY_FIELD_GUEST_PHONE_NUMBER, phoneNumber.getPhoneNumber());
+                    responseBody.put(BackendUtils.BODY_FIELD_GUEST_FIRST_NAME, firstName);
+                    response = BackendUtils.createResponse(inputHeader, responseBody);
+                    this.sendClientSocketOutput(response);
+                    break;
 
-                    case NEW_BOOKING:
-                        responseBody = BackendUtils.executeNewBookingRequest(inputBody, inputHeader.name());
+                case CHECK_CREDENTIALS:
+                    emailString = inputBody.getString(BackendUtils.BODY_FIELD_GUEST_EMAIL);
+                    passwordString = inputBody.getString(BackendUtils.BODY_FIELD_GUEST_PASSWORD);
 
-                        if (responseBody == null) {
-                            // Communication with the worker was unsuccessful
-                            break;
-                        }
-
-                        // Communication with the worker was successful.
-                        // If the booking was successful,
-                        // it was added to the guest's list
-                        // in the executeNewBookingRequest() function.
+                    // Send response
+                    responseBody = new JSONObject();
+                    boolean userExists = Server.userExists(emailString, passwordString);
+                    if (userExists) {
+                        responseBody.put(BackendUtils.BODY_FIELD_STATUS, "OK");
+                        GuestAccount guestAccount = Server.getUser(emailString);
+                        responseBody.put(BackendUtils.BODY_FIELD_GUEST_EMAIL, guestAccount.getEmail().toString());
+                        responseBody.put(BackendUtils.BODY_FIELD_GUEST_PHONE_NUMBER, guestAccount.getPhoneNumber().getPhoneNumber());
+                        responseBody.put(BackendUtils.BODY_FIELD_GUEST_FIRST_NAME, guestAccount.getFirstName());
+                    } else {
+                        responseBody.put(BackendUtils.BODY_FIELD_STATUS, "ERROR");
+                    }
+                    response = BackendUtils.createResponse(inputHeader, responseBody);
+                    this.sendClientSocketOutput(response);
+                    break;
 
-                        // Send simplified response to client
-                        JSONObject simplifiedResponseBody = new JSONObject();
-                        simplifiedResponseBody.put(BackendUtils.BODY_FIELD_STATUS, responseBody.getString(BackendUtils.BODY_FIELD_STATUS));
-                        responseJson = BackendUtils.createResponse(inputHeader.name(), simplifiedResponseBody.toString());
-                        this.sendClientSocketOutput(responseJson.toString());
+                case GET_RENTALS:
+                    // Check sort order and cursor before asking the workers
+                    RentalPage page;
+                    try {
+                        page = RentalPage.fromJSON(inputBody);
+                    } catch (IllegalArgumentException | JSONException e) {
+                        responseBody = new JSONObject();
+                        responseBody.put(BackendUtils.BODY_FIELD_ERROR, e.getMessage());
+                        response = BackendUtils.createResponse(inputHeader, responseBody);
+                        this.sendClientSocketOutput(response);
                         break;
+                    }
+
+                    // Search the cache, then the workers
+                    String searchKey = SearchCache.keyOf(inputBody, page);
+                    mapResult = Server.searchCache.get(searchKey);
+                    if (mapResult != null) {
+                        System.out.println("\n> Search cache hit: " + searchKey + "\n> " + Server.searchCache);
+                    } else {
+                        long generation = Server.searchCache.getGeneration();
+                        mapResult = this.performCoalescedMapReduce(inputHeader, inputBody, page);
+                        Server.searchCache.put(searchKey, inputBody, page, mapResult, generation);
+                    }
+
+                    // Create JSON response
+                    responseBody = new JSONObject();
+                    JSONArray rentals = new JSONArray();
+                    for (RentalSummary rental : mapResult.getRentals()) {
+                        rentals.put(rental.toJSON());
+                    }
+                    responseBody.put(BackendUtils.BODY_FIELD_RENTALS, rentals);
+                    flagPartialResult(responseBody, mapResult);
+                    if (page != null && mapResult.getRentals().size() == page.getLimit()) {
+                        // There may be more rentals after this page
+                        RentalSummary last = mapResult.getRentals().get(page.getLimit() - 1);
+                        responseBody.put(BackendUtils.BODY_FIELD_NEXT_CURSOR, page.cursorAfter(last));
+                    }
+                    response = BackendUtils.createResponse(inputHeader, responseBody);
+                    // Send rentals to client
+                    this.sendClientSocketOutput(response);
+                    break;
 
-                    case GET_BOOKINGS_WITH_NO_RATINGS:
-                        // Get info from Server.GuestAccountDAO
-                        emailString = inputBody.getString(BackendUtils.BODY_FIELD_GUEST_EMAIL);
-                        ArrayList<BookingReference> bookingsArray = Server.getGuestBookings(emailString);
-                        if (bookingsArray == null) {
-                            System.err.println("\n! ClientHandle.run(): User " + emailString + " not found.");
-                            break;
-                        }
-                        System.out.println("\n> Sending to client: " + bookingsArray);
+                case CHECK_AVAILABILITY:
+                    if (inputBody.has(BackendUtils.BODY_FIELD_RENTAL_IDS)) {
+                        // Check several rentals at once
+                        response = this.checkAvailabilityOfRentals(inputHeader, inputBody);
+                        this.sendClientSocketOutput(response);
+                        break;
+                    }
 
-                        // Create JSON response
-                        responseBody = new JSONObject();
-                        JSONArray bookings = new JSONArray();
-                        for (BookingReference bookingReference : bookingsArray) {
-                            bookings.put(bookingReference.toJSON());
-                        }
-                        responseBody.put(BackendUtils.BODY_FIELD_BOOKINGS, bookings);
-                        responseJson = BackendUtils.createResponse(inputHeader.name(), responseBody.toString());
-                        // Send booking references to client
-                        this.sendClientSocketOutput(responseJson.toString());
+                    // Forward request to worker that contains this rental
+                    int rentalId = inputBody.getInt(BackendUtils.BODY_FIELD_RENTAL_ID);
+                    workerId = Server.hash(rentalId);
+                    response = Server.sendMessageToWorkerAndWaitForResponse(input, workerId);
+                    if (response == null) {
                         break;
+                    }
 
-                    case NEW_RATING:
-                        // Forward request, as it is,
-                        // to worker that contains this rental
-                        workerId = Server.hash(inputBody.getInt(BackendUtils.BODY_FIELD_RENTAL_ID));
-                        response = Server.sendMessageToWorkerAndWaitForResponse(input, workerId);
-                        if (response == null) {
-                            break;
-                        }
+                    // Forward response to client
+                    this.sendClientSocketOutput(response.withCorrelationId(input.getCorrelationId()));
+                    break;
 
-                        // Handle JSON response
-                        responseJson = new JSONObject(response);
-                        responseBody = new JSONObject(responseJson.getString(BackendUtils.MESSAGE_BODY));
-                        status = responseBody.getString(BackendUtils.BODY_FIELD_STATUS);
-                        if (status.equals("OK")) {
-                            System.out.println("\n> Rating was successful.");
-                            // If the rating was successful
-                            // remove booking from guest's list
-                            String bookingId = responseBody.getString(BackendUtils.BODY_FIELD_BOOKING_ID);
-                            String guestEmail = responseBody.getString(BackendUtils.BODY_FIELD_GUEST_EMAIL);
-                            Server.rateGuestsBooking(guestEmail, bookingId);
-                        }
-                        break;
+                case NEW_BOOKING:
+                    responseBody = BackendUtils.executeNewBookingRequest(inputBody, inputHeader);
 
-                    // Host Requests
-                    case NEW_RENTAL:
-                        BackendUtils.executeNewRentalRequest(inputBody, inputHeader.name());
+                    if (responseBody == null) {
+                        // Communication with the worker was unsuccessful
                         break;
+                    }
+
+                    // Communication with the worker was successful.
+                    // If the booking was successful,
+                    // it was added to the guest's list
+                    // in the executeNewBookingRequest() function.
+
+                    // Send simplified response to client
+                    JSONObject simplifiedResponseBody = new JSONObject();
+                    simplifiedResponseBody.put(BackendUtils.BODY_FIELD_STATUS, responseBody.getString(BackendUtils.BODY_FIELD_STATUS));
+                    response = BackendUtils.createResponse(inputHeader, simplifiedResponseBody);
+                    this.sendClientSocketOutput(response);
+                    break;
 
-                    case UPDATE_AVAILABILITY:
-                        response = BackendUtils.executeUpdateAvailability(input, inputBody);
-                        this.sendClientSocketOutput(response);
+                case GET_BOOKINGS_WITH_NO_RATINGS:
+                    // Get info from Server.GuestAccountDAO
+                    emailString = inputBody.getString(BackendUtils.BODY_FIELD_GUEST_EMAIL);
+                    ArrayList<BookingReference> bookingsArray = Server.getGuestBookings(emailString);
+                    if (bookingsArray == null) {
+                        System.err.println("\n! ClientHandler.handleRequest(): User " + emailString + " not found.");
                         break;
+                    }
+                    System.out.println("\n> Sending to client: " + bookingsArray);
+
+                    // Create JSON response
+                    responseBody = new JSONObject();
+                    JSONArray bookings = new JSONArray();
+                    for (BookingReference bookingReference : bookingsArray) {
+                        bookings.put(bookingReference.toJSON());
+                    }
+                    responseBody.put(BackendUtils.BODY_FIELD_BOOKINGS, bookings);
+                    response = BackendUtils.createResponse(inputHeader, responseBody);
+                    // Send booking references to client
+                    this.sendClientSocketOutput(response);
+                    break;
 
-                    case GET_ALL_BOOKINGS:
-                        // Get all rentals
-                        mapResult = this.performMapReduce(inputHeader, inputBody);
-
-                        // Create JSON response
-                        // responseBody =
-                        // { bookings:
-                        //      [JSONArray of
-                        //          {   rentalString,
-                        //              [JSONArray of
-                        //                  {bookingString}
-                        //              ]
-                        //          }
-                        //       ]
-                        // }
-                        responseBody = new JSONObject();
-                        JSONArray rentalsWithBookings = new JSONArray();
-                        JSONObject rentalInfoAndBookings;
-                        JSONArray bookingInfoOfThisRental;
-                        for (Rental rental : mapResult.getRentals()) {
-                            rentalInfoAndBookings = new JSONObject();
-                            rentalInfoAndBookings.put(BackendUtils.BODY_FIELD_RENTAL_STRING, rental.toString());
-                            bookingInfoOfThisRental = new JSONArray();
-                            for (Booking booking : rental.getBookings()) {
-                                if (!booking.hasPassed()) {
-                                    bookingInfo = new JSONObject();
-                                    bookingInfo.put(BackendUtils.BODY_FIELD_BOOKING_STRING, booking.toString());
-                                    bookingInfoOfThisRental.put(bookingInfo);
-                                }
-                            }
-                            rentalInfoAndBookings.put(BackendUtils.BODY_FIELD_BOOKINGS, bookingInfoOfThisRental);
-                            rentalsWithBookings.put(rentalInfoAndBookings);
-                        }
-                        responseBody.put(BackendUtils.BODY_FIELD_RENTALS_WITH_BOOKINGS, rentalsWithBookings);
-                        responseJson = BackendUtils.createResponse(inputHeader.name(), responseBody.toString());
-                        // Send booking references to client
-                        this.sendClientSocketOutput(responseJson.toString());
+                case NEW_RATING:
+                    // Forward request, as it is,
+                    // to worker that contains this rental
+                    workerId = Server.hash(inputBody.getInt(BackendUtils.BODY_FIELD_RENTAL_ID));
+                    response = Server.sendMessageToWorkerAndWaitForResponse(input, workerId);
+                    if (response == null) {
                         break;
+                    }
+
+                    // Handle JSON response
+                    responseBody = response.getBody();
+                    status = responseBody.getString(BackendUtils.BODY_FIELD_STATUS);
+                    if (status.equals("OK")) {
+                        System.out.println("\n> Rating was successful.");
+                        // If the rating was successful
+                        // remove booking from guest's list
+                        String bookingId = responseBody.getString(BackendUtils.BODY_FIELD_BOOKING_ID);
+                        String guestEmail = responseBody.getString(BackendUtils.BODY_FIELD_GUEST_EMAIL);
+                        Server.rateGuestsBooking(guestEmail, bookingId);
+                        Server.searchCache.onNewRating(inputBody.getInt(BackendUtils.BODY_FIELD_RENTAL_ID));
+                    }
+                    break;
 
-                    case GET_BOOKINGS_BY_LOCATION:
-                        // MapReduce
-                        mapResult = this.performMapReduce(inputHeader, inputBody);
+                // Host Requests
+                case NEW_RENTAL:
+                    response = BackendUtils.executeNewRentalRequest(inputBody, inputHeader);
+                    if (response == null || !response.getBody().optString(BackendUtils.BODY_FIELD_STATUS).equals("OK")) {
+                        System.err.println("\n! ClientHandler.run(): New rental was unsuccessful.");
+                    }
+                    break;
 
-                        // Create JSON response
+                case UPDATE_AVAILABILITY:
+                    response = BackendUtils.executeUpdateAvailability(input);
+                    if (response == null) {
+                        // Communication with the worker was unsuccessful
                         responseBody = new JSONObject();
-                        JSONArray bookingsByLocation = new JSONArray();
-                        JSONObject location;
-                        for (BookingsByLocation byLocation : mapResult.getBookingsByLocation()) {
-                            location = new JSONObject();
-                            location.put(BackendUtils.BODY_FIELD_BY_LOCATION, byLocation.toString());
-                            bookingsByLocation.put(location);
+                        responseBody.put(BackendUtils.BODY_FIELD_STATUS, "ERROR");
+                        response = BackendUtils.createResponse(inputHeader, responseBody);
+                    }
+                    this.sendClientSocketOutput(response.withCorrelationId(input.getCorrelationId()));
+                    break;
+
+                case GET_ALL_BOOKINGS:
+                    // Get all rentals
+                    mapResult = this.performMapReduce(inputHeader, inputBody);
+
+                    // Create JSON response
+                    // responseBody =
+                    // { bookings:
+                    //      [JSONArray of
+                    //          {   rentalString,
+                    //              [JSONArray of
+                    //                  {bookingString}
+                    //              ]
+                    //          }
+                    //       ]
+                    // }
+                    responseBody = new JSONObject();
+                    JSONArray rentalsWithBookings = new JSONArray();
+                    JSONObject rentalInfoAndBookings;
+                    JSONArray bookingInfoOfThisRental;
+                    for (RentalSummary rental : mapResult.getRentals()) {
+                        rentalInfoAndBookings = new JSONObject();
+                        rentalInfoAndBookings.put(BackendUtils.BODY_FIELD_RENTAL_STRING, rental.toString());
+                        bookingInfoOfThisRental = new JSONArray();
+                        // Workers only send bookings that have not passed
+                        for (Booking booking : rental.getBookings()) {
+                            bookingInfo = new JSONObject();
+                            bookingInfo.put(BackendUtils.BODY_FIELD_BOOKING_STRING, booking.toString());
+                            bookingInfoOfThisRental.put(bookingInfo);
                         }
-                        responseBody.put(BackendUtils.BODY_FIELD_BOOKINGS_BY_LOCATION, bookingsByLocation);
-                        responseJson = BackendUtils.createResponse(inputHeader.name(), responseBody.toString());
-                        // Send amount of bookings per location to client
-                        this.sendClientSocketOutput(responseJson.toString());
-                        break;
+                        rentalInfoAndBookings.put(BackendUtils.BODY_FIELD_BOOKINGS, bookingInfoOfThisRental);
+                        rentalsWithBookings.put(rentalInfoAndBookings);
+                    }
+                    responseBody.put(BackendUtils.BODY_FIELD_RENTALS_WITH_BOOKINGS, rentalsWithBookings);
+                    flagPartialResult(responseBody, mapResult);
+                    response = BackendUtils.createResponse(inputHeader, responseBody);
+                    // Send booking references to client
+                    this.sendClientSocketOutput(response);
+                    break;
 
-                    // Miscellaneous Requests
-                    case CLOSE_CONNECTION:
-                        System.out.println("\n> ClientHandler.run(): Closing connection with client.");
-                        running = false;
-                        break;
+                case GET_BOOKINGS_BY_LOCATION:
+                    // MapReduce
+                    mapResult = this.performCoalescedMapReduce(inputHeader, inputBody, null);
+
+                    // Create JSON response
+                    responseBody = new JSONObject();
+                    JSONArray bookingsByLocation = new JSONArray();
+                    JSONObject location;
+                    for (BookingsByLocation byLocation : mapResult.getBookingsByLocation()) {
+                        location = new JSONObject();
+                        location.put(BackendUtils.BODY_FIELD_BY_LOCATION, byLocation.toString());
+                        bookingsByLocation.put(location);
+                    }
+                    responseBody.put(BackendUtils.BODY_FIELD_BOOKINGS_BY_LOCATION, bookingsByLocation);
+                    flagPartialResult(responseBody, mapResult);
+                    response = BackendUtils.createResponse(inputHeader, responseBody);
+                    // Send amount of bookings per location to client
+                    this.sendClientSocketOutput(response);
+                    break;
 
-                    default:
-                        System.err.println("\n! ClientHandler.run(): Request type not recognized.");
-                        break;
-                }
+                // Miscellaneous Requests
+                case CLOSE_CONNECTION:
+                    System.out.println("\n> ClientHandler.handleRequest(): Closing connection with client.");
+                    running = false;
+                    break;
+
+                default:
+                    System.err.println("\n! ClientHandler.handleRequest(): Request type not recognized.");
+                    break;
             }
         } catch (JSONException e) {
-            System.err.println("\n! ClientHandler.run(): JSON Exception:\n" + e);
-        } catch (InterruptedException e) {
-            System.err.println("\n! ClientHandler.run(): Could not retrieve result of MapReduce:\n" + e);
+            System.err.println("\n! ClientHandler.handleRequest(): JSON Exception:\n" + e);
+            running = false;
+        } catch (InterruptedException | ExecutionException e) {
+            System.err.println("\n! ClientHandler.handleRequest(): Could not retrieve result of MapReduce:\n" + e);
+            System.err.println("\n! " + Server.mapReduceResults);
+            running = false;
         } catch (IOException e) {
-            System.err.println("\n! ClientHandler.run(): Could not send MapReduce results to client:\n" + e);
-        } finally {
-            try {
-                System.out.println("\n> Closing thread...");
-                this.clientSocketIn.close();
-                this.clientSocketOut.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            System.err.println("\n! ClientHandler.handleRequest(): Could not send MapReduce results to client:\n" + e);
+            running = false;
+        } catch (RuntimeException e) {
+            System.err.println("\n! ClientHandler.handleRequest(): Error:\n" + e);
+            e.printStackTrace();
+            running = false;
         }
+        return running;
     }
 }
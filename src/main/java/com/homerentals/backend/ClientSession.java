@@ -0,0 +1,178 @@
+package com.homerentals.backend;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+/*
+Non-blocking connection of a console client.
+Frames are read by the ClientEventLoop, while requests
+are handled one at a time on the client executor,
+so every client sees its responses in order.
+ */
+class ClientSession {
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    private final SocketChannel channel;
+    private final ClientEventLoop eventLoop;
+    private final ClientHandler handler;
+    private SelectionKey key;
+
+    private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private final ArrayDeque<ByteBuffer> writeQueue = new ArrayDeque<>();
+    private final ArrayDeque<Message> requests = new ArrayDeque<>();
+    private boolean dispatched = false;
+    private volatile boolean closed = false;
+
+    ClientSession(SocketChannel channel, ClientEventLoop eventLoop) {
+        this.channel = channel;
+        this.eventLoop = eventLoop;
+        this.handler = new ClientHandler(this);
+    }
+
+    protected void setKey(SelectionKey key) {
+        this.key = key;
+    }
+
+    protected String getRemoteAddress() {
+        try {
+            return String.valueOf(this.channel.getRemoteAddress());
+        } catch (IOException e) {
+            return "unknown";
+        }
+    }
+
+    protected boolean isClosed() {
+        return this.closed;
+    }
+
+    /**
+     * Reads available bytes from the channel.
+     * Called only by the event loop thread.
+     *
+     * @return the complete frames received, or null if the client disconnected
+     */
+    protected ArrayList<Message> readFrames() throws IOException {
+        if (this.channel.read(this.readBuffer) < 0) {
+            return null;
+        }
+
+        ArrayList<Message> frames = new ArrayList<>();
+        this.readBuffer.flip();
+        int length;
+        while ((length = MessageCodec.peekFrameLength(this.readBuffer)) >= 0
+                && this.readBuffer.remaining() >= MessageCodec.LENGTH_FIELD_LENGTH + length) {
+            this.readBuffer.position(this.readBuffer.position() + MessageCodec.LENGTH_FIELD_LENGTH);
+            ByteBuffer frame = this.readBuffer.slice(this.readBuffer.position(), length);
+            this.readBuffer.position(this.readBuffer.position() + length);
+            frames.add(MessageCodec.decode(frame));
+        }
+
+        // Make room for a frame larger than the buffer
+        if (length >= 0 && this.readBuffer.capacity() < MessageCodec.LENGTH_FIELD_LENGTH + length) {
+            ByteBuffer larger = ByteBuffer.allocate(MessageCodec.LENGTH_FIELD_LENGTH + length);
+            larger.put(this.readBuffer);
+            this.readBuffer = larger;
+        } else if (!this.readBuffer.hasRemaining() && this.readBuffer.capacity() > READ_BUFFER_SIZE) {
+            // Release the space of a large frame
+            this.readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        } else {
+            this.readBuffer.compact();
+        }
+        return frames;
+    }
+
+    /**
+     * Queues request for handling.
+     *
+     * @return true if the caller has to dispatch this session to the executor
+     */
+    protected synchronized boolean offer(Message request) {
+        this.requests.add(request);
+        if (this.dispatched) {
+            return false;
+        }
+        this.dispatched = true;
+        return true;
+    }
+
+    /*
+    Runs on the client executor.
+    Handles queued requests until none is left.
+     */
+    protected void drain() {
+        while (true) {
+            Message request;
+            synchronized (this) {
+                request = this.requests.poll();
+                if (request == null || this.closed) {
+                    this.dispatched = false;
+                    return;
+                }
+            }
+
+            if (!this.handler.handleRequest(request)) {
+                this.close();
+                return;
+            }
+        }
+    }
+
+    /*
+    Queues response and writes as much as the socket accepts.
+    The rest is written by the event loop.
+     */
+    protected void send(Message msg) throws IOException {
+        if (this.closed) {
+            throw new IOException("Client connection is closed");
+        }
+        ByteBuffer frame = ByteBuffer.wrap(MessageCodec.encode(msg));
+
+        synchronized (this.writeQueue) {
+            this.writeQueue.add(frame);
+        }
+        this.flush();
+    }
+
+    /*
+    Called by the sending thread and by the event loop
+    when the socket becomes writable
+     */
+    protected void flush() throws IOException {
+        synchronized (this.writeQueue) {
+            while (!this.writeQueue.isEmpty()) {
+                ByteBuffer buffer = this.writeQueue.peek();
+                this.channel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    // Socket buffer is full, wait until it is writable
+                    this.eventLoop.setWriteInterest(this.key, true);
+                    return;
+                }
+                this.writeQueue.poll();
+            }
+            this.eventLoop.setWriteInterest(this.key, false);
+        }
+    }
+
+    protected void close() {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            this.requests.clear();
+        }
+        System.out.println("\n> Closing connection with client " + this.getRemoteAddress());
+        if (this.key != null) {
+            this.key.cancel();
+        }
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -106,23 +106,22 @@ public class GuestConsole {
 
             // Write to socket
             System.out.println("Writing to server...");
-            JSONObject request = BackendUtils.createRequest(Requests.CHECK_CREDENTIALS.name(), requestBody.toString());
+            Message request = BackendUtils.createRequest(Requests.CHECK_CREDENTIALS, requestBody);
             try {
-                BackendUtils.clientToServer(this.serverSocketOutput, request.toString());
+                BackendUtils.clientToServer(this.serverSocketOutput, request);
             } catch (IOException e) {
                 System.err.println("\n! GuestConsole.connectUser(): Error sending to server:\n" + e);
                 return null;
             }
 
-            // Receive responseString
-            String responseString = BackendUtils.serverToClient(this.serverSocketInput);
-            if (responseString == null) {
-                System.err.println("\n! GuestConsole.connectUser(): Could not receive responseString from Server.");
+            // Receive response
+            Message response = BackendUtils.serverToClient(this.serverSocketInput);
+            if (response == null) {
+                System.err.println("\n! GuestConsole.connectUser(): Could not receive response from Server.");
                 return null;
             }
             // Handle JSON input
-            JSONObject responseJson = new JSONObject(responseString);
-            JSONObject responseBody = new JSONObject(responseJson.getString(BackendUtils.MESSAGE_BODY));
+            JSONObject responseBody = response.getBody();
             String status = responseBody.getString(BackendUtils.BODY_FIELD_STATUS);
             if (status.equals("OK")) {
                 System.out.println("Welcome Back!");
@@ -167,16 +166,16 @@ public class GuestConsole {
         requestBody.put(BackendUtils.BODY_FIELD_RENTAL_ID, rentalId);
         requestBody.put(BackendUtils.BODY_FIELD_GUEST_EMAIL, email);
 
-        JSONObject request = BackendUtils.createRequest(Requests.NEW_BOOKING.name(), requestBody.toString());
-        BackendUtils.clientToServer(this.serverSocketOutput, request.toString());
+        Message request = BackendUtils.createRequest(Requests.NEW_BOOKING, requestBody);
+        BackendUtils.clientToServer(this.serverSocketOutput, request);
 
         BackendUtils.handleServerResponse(this.serverSocketInput, "Booking successful!", "Booking failed. Try again another time.");
     }
 
     private void close() throws IOException {
         try {
-            JSONObject request = BackendUtils.createRequest(Requests.CLOSE_CONNECTION.name(), "");
-            BackendUtils.clientToServer(this.serverSocketOutput, request.toString());
+            Message request = BackendUtils.createRequest(Requests.CLOSE_CONNECTION, null);
+            BackendUtils.clientToServer(this.serverSocketOutput, request);
             this.serverSocketInput.close();
             this.serverSocketOutput.close();
             this.requestSocket.close();
@@ -200,9 +199,9 @@ public class GuestConsole {
             DataOutputStream outputStream = guestConsole.getOutputStream();
             DataInputStream inputStream = guestConsole.getInputStream();
 
-            JSONObject request, requestBody, responseJson, responseBody;
+            JSONObject requestBody, responseBody;
             ArrayList<JSONObject> rentals;
-            String response;
+            Message request, response;
             boolean done = false;
             while (!done) {
                 System.out.println("\n\n\t[MENU]");
@@ -237,8 +236,8 @@ public class GuestConsole {
 
                         // Write to socket
                         System.out.println("Writing to server...");
-                        request = BackendUtils.createRequest(Requests.GET_RENTALS.name(), requestBody.toString());
-                        BackendUtils.clientToServer(outputStream, request.toString());
+                        request = BackendUtils.createRequest(Requests.GET_RENTALS, requestBody);
+                        BackendUtils.clientToServer(outputStream, request);
 
                         // Receive response
                         response = BackendUtils.serverToClient(inputStream);
@@ -248,8 +247,7 @@ public class GuestConsole {
                         }
 
                         // Handle JSONArray of rentals
-                        responseJson = new JSONObject(response);
-                        responseBody = new JSONObject(responseJson.getString(BackendUtils.MESSAGE_BODY));
+                        responseBody = response.getBody();
                         JSONArray rentalsJsonArray = responseBody.getJSONArray(BackendUtils.BODY_FIELD_RENTALS);
                         rentals = new ArrayList<>();
                         for (int i = 0; i < rentalsJsonArray.length(); i++) {
@@ -257,6 +255,7 @@ public class GuestConsole {
                             rentals.add(rental);
                         }
                         guestConsole.printRentalsList(rentals);
+                        BackendUtils.warnIfPartial(responseBody);
 
                         try {
                             guestConsole.bookNewRental(rentals, email);
@@ -283,8 +282,8 @@ public class GuestConsole {
                         // Get all booking with no ratings
                         requestBody = new JSONObject();
                         requestBody.put(BackendUtils.BODY_FIELD_GUEST_EMAIL, email);
-                        request = BackendUtils.createRequest(Requests.GET_BOOKINGS_WITH_NO_RATINGS.name(), requestBody.toString());
-                        BackendUtils.clientToServer(outputStream, request.toString());
+                        request = BackendUtils.createRequest(Requests.GET_BOOKINGS_WITH_NO_RATINGS, requestBody);
+                        BackendUtils.clientToServer(outputStream, request);
 
                         // Receive response
                         response = BackendUtils.serverToClient(inputStream);
@@ -294,8 +293,7 @@ public class GuestConsole {
                         }
 
                         // Handle JSONArray of bookings
-                        responseJson = new JSONObject(response);
-                        responseBody = new JSONObject(responseJson.getString(BackendUtils.MESSAGE_BODY));
+                        responseBody = response.getBody();
                         JSONArray bookings = responseBody.getJSONArray(BackendUtils.BODY_FIELD_BOOKINGS);
                         System.out.println("\n[Previous Stays]\n");
                         for (int i = 0; i < bookings.length(); i++) {
@@ -347,8 +345,8 @@ public class GuestConsole {
 
                         // Write to socket
                         System.out.println("Writing to server...");
-                        request = BackendUtils.createRequest(Requests.NEW_RATING.name(), requestBody.toString());
-                        BackendUtils.clientToServer(outputStream, request.toString());
+                        request = BackendUtils.createRequest(Requests.NEW_RATING, requestBody);
+                        BackendUtils.clientToServer(outputStream, request);
                         break;
 
                     default:
@@ -108,8 +108,8 @@ public class HostConsole {
 
     private void close() throws IOException {
         try {
-            JSONObject request = BackendUtils.createRequest(Requests.CLOSE_CONNECTION.name(), "");
-            BackendUtils.clientToServer(serverSocketOutput, request.toString());
+            Message request = BackendUtils.createRequest(Requests.CLOSE_CONNECTION, null);
+            BackendUtils.clientToServer(serverSocketOutput, request);
             this.serverSocketInput.close();
             this.serverSocketOutput.close();
             this.requestSocket.close();
@@ -133,9 +133,9 @@ public class HostConsole {
             DataOutputStream outputStream = hostConsole.getOutputStream();
             DataInputStream inputStream = hostConsole.getInputStream();
 
-            JSONObject request, requestBody, responseJson, responseBody;
+            JSONObject requestBody, responseBody;
             ArrayList<JSONObject> rentals;
-            String response;
+            Message request, response;
             boolean done = false;
             while (!done) {
                 System.out.println("\n\n\t[MENU]");
@@ -169,8 +169,8 @@ public class HostConsole {
 
                         // Write to socket
                         System.out.println("Writing to server...");
-                        request = BackendUtils.createRequest(Requests.NEW_RENTAL.name(), newRental.toString());
-                        BackendUtils.clientToServer(outputStream, request.toString());
+                        request = BackendUtils.createRequest(Requests.NEW_RENTAL, newRental);
+                        BackendUtils.clientToServer(outputStream, request);
                         break;
 
                     case UPDATE_RENTAL_AVAILABILITY:
@@ -188,8 +188,8 @@ public class HostConsole {
 
                         // Write to socket
                         System.out.println("Writing to server...");
-                        request = BackendUtils.createRequest(Requests.UPDATE_AVAILABILITY.name(), requestBody.toString());
-                        BackendUtils.clientToServer(outputStream, request.toString());
+                        request = BackendUtils.createRequest(Requests.UPDATE_AVAILABILITY, requestBody);
+                        BackendUtils.clientToServer(outputStream, request);
 
                         BackendUtils.handleServerResponse(inputStream, "Change successful!", "Change unsuccessful.\nCheck rental bookings and try again.");
                         break;
@@ -201,8 +201,8 @@ public class HostConsole {
                         JSONObject filters = new JSONObject();
                         JSONObject body = new JSONObject();
                         body.put(BackendUtils.BODY_FIELD_FILTERS, filters);
-                        request = BackendUtils.createRequest(Requests.GET_ALL_BOOKINGS.name(), body.toString());
-                        BackendUtils.clientToServer(outputStream, request.toString());
+                        request = BackendUtils.createRequest(Requests.GET_ALL_BOOKINGS, body);
+                        BackendUtils.clientToServer(outputStream, request);
 
                         // Receive response
                         response = BackendUtils.serverToClient(inputStream);
@@ -212,8 +212,7 @@ public class HostConsole {
                         }
 
                         // Handle JSONArray of bookings per rental
-                        responseJson = new JSONObject(response);
-                        responseBody = new JSONObject(responseJson.getString(BackendUtils.MESSAGE_BODY));
+                        responseBody = response.getBody();
                         JSONArray rentalsWithBookings = responseBody.getJSONArray(BackendUtils.BODY_FIELD_RENTALS_WITH_BOOKINGS);
                         JSONObject rentalInfoAndBookings;
                         JSONArray bookingInfoOfThisRental;
@@ -227,6 +226,7 @@ public class HostConsole {
                                 System.out.printf("- %s%n", bookingString.get(BackendUtils.BODY_FIELD_BOOKING_STRING));
                             }
                         }
+                        BackendUtils.warnIfPartial(responseBody);
                         break;
 
                     case VIEW_AMOUNT_OF_BOOKINGS_PER_LOCATION:
@@ -235,8 +235,8 @@ public class HostConsole {
 
                         // Write to socket
                         System.out.println("Writing to server...");
-                        request = BackendUtils.createRequest(Requests.GET_BOOKINGS_BY_LOCATION.name(), requestBody.toString());
-                        BackendUtils.clientToServer(outputStream, request.toString());
+                        request = BackendUtils.createRequest(Requests.GET_BOOKINGS_BY_LOCATION, requestBody);
+                        BackendUtils.clientToServer(outputStream, request);
 
                         // Receive response
                         response = BackendUtils.serverToClient(inputStream);
@@ -246,8 +246,7 @@ public class HostConsole {
                         }
 
                         // Handle JSONArray of bookings by location
-                        responseJson = new JSONObject(response);
-                        responseBody = new JSONObject(responseJson.getString(BackendUtils.MESSAGE_BODY));
+                        responseBody = response.getBody();
                         JSONArray bookingsByLocation = responseBody.getJSONArray(BackendUtils.BODY_FIELD_BOOKINGS_BY_LOCATION);
                         System.out.printf("%n[%s's Bookings By Location]%n%n", username);
                         for (int i = 0; i < bookingsByLocation.length(); i++) {
@@ -255,6 +254,7 @@ public class HostConsole {
                             System.out.print(byLocation.get(BackendUtils.BODY_FIELD_BY_LOCATION));
                         }
                         System.out.println("<-------- [End Of List] -------->");
+                        BackendUtils.warnIfPartial(responseBody);
                         break;
 
                     case VIEW_RENTALS:
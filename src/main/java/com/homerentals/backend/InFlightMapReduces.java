@@ -0,0 +1,74 @@
+package com.homerentals.backend;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+Map-reduce calls of the Server that are still running, by request.
+A client that asks for the same thing as a running call
+waits for that call instead of sending its own to every worker,
+and every client gets the same MapResult.
+ */
+class InFlightMapReduces {
+    interface Call {
+        MapResult run() throws InterruptedException, ExecutionException;
+    }
+
+    private final ConcurrentHashMap<String, CompletableFuture<MapResult>> running = new ConcurrentHashMap<>();
+
+    // Metrics
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong joined = new AtomicLong();
+    private final AtomicLong joinTimeouts = new AtomicLong();
+
+    /**
+     * Runs call, unless a call with the same key is running,
+     * in which case its result is returned.
+     *
+     * @param timeoutMillis longest time to wait for a running call
+     * @throws TimeoutException if the running call did not finish in time
+     */
+    protected MapResult run(String key, long timeoutMillis, Call call)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        CompletableFuture<MapResult> mine = new CompletableFuture<>();
+        CompletableFuture<MapResult> existing = this.running.putIfAbsent(key, mine);
+        if (existing != null) {
+            this.joined.incrementAndGet();
+            System.out.println("\n> Waiting for running " + key + "\n> " + this);
+            try {
+                // Do not cancel the shared future, the other clients still wait for it
+                return existing.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                this.joinTimeouts.incrementAndGet();
+                throw e;
+            }
+        }
+
+        this.started.incrementAndGet();
+        try {
+            MapResult result = call.run();
+            mine.complete(result);
+            return result;
+        } catch (InterruptedException | ExecutionException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            // Later requests start a new call
+            this.running.remove(key, mine);
+        }
+    }
+
+    protected int size() {
+        return this.running.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("InFlight[running=%d, started=%d, joined=%d, joinTimeouts=%d]",
+                this.running.size(), this.started.get(), this.joined.get(), this.joinTimeouts.get());
+    }
+}
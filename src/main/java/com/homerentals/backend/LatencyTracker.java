@@ -0,0 +1,48 @@
+package com.homerentals.backend;
+
+import java.util.Arrays;
+
+/*
+Latencies of the last calls to a worker.
+The Server uses them to decide how long to wait
+before it sends a map request to the worker again.
+ */
+class LatencyTracker {
+    private final long[] samples;
+    private int next = 0;
+    private int count = 0;
+
+    LatencyTracker(int capacity) {
+        this.samples = new long[capacity];
+    }
+
+    protected synchronized void record(long latencyNanos) {
+        this.samples[this.next] = latencyNanos;
+        this.next = (this.next + 1) % this.samples.length;
+        if (this.count < this.samples.length) {
+            this.count++;
+        }
+    }
+
+    protected synchronized int getCount() {
+        return this.count;
+    }
+
+    /**
+     * @param percentile between 0 and 1
+     * @return latency of the given percentile in nanoseconds, 0 if there are no samples yet
+     */
+    protected long percentile(double percentile) {
+        long[] sorted;
+        synchronized (this) {
+            if (this.count == 0) {
+                return 0;
+            }
+            sorted = Arrays.copyOf(this.samples, this.count);
+        }
+        // Sort outside the lock
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
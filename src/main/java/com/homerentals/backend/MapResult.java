@@ -1,19 +1,49 @@
 package com.homerentals.backend;
 
-import com.homerentals.domain.Rental;
-
-import java.io.Serializable;
+import java.io.IOException;
 import java.util.ArrayList;
 
-public class MapResult implements Serializable {
+public class MapResult {
     private final int mapId;
-    private final ArrayList<Rental> rentals;
+    private final ArrayList<RentalSummary> rentals;
     private final ArrayList<BookingsByLocation> bookingsByLocation;
+    // Set if rentals are a sorted run of at most page.getLimit() rentals
+    private final RentalPage page;
+    // Worker that sent a partial result, NO_WORKER if unknown
+    private final int workerId;
+    // Time left until the deadline of the call when the partial was sent, 0 if none
+    private final long deadlineMillis;
+    // Workers missing from a reduced result that hit its deadline,
+    // 1 in the partial of a worker that failed to map
+    private final int missingPartials;
+
+    public static final int NO_WORKER = -1;
+
+    public MapResult(int mapId, ArrayList<RentalSummary> rentals, ArrayList<BookingsByLocation> bookingsByLocation) {
+        this(mapId, rentals, bookingsByLocation, null);
+    }
+
+    public MapResult(int mapId, ArrayList<RentalSummary> rentals, ArrayList<BookingsByLocation> bookingsByLocation, RentalPage page) {
+        this(mapId, rentals, bookingsByLocation, page, NO_WORKER, 0, 0);
+    }
 
-    public MapResult(int mapId, ArrayList<Rental> rentals, ArrayList<BookingsByLocation> bookingsByLocation) {
+    public MapResult(int mapId, ArrayList<RentalSummary> rentals, ArrayList<BookingsByLocation> bookingsByLocation, RentalPage page,
+                     int workerId, long deadlineMillis, int missingPartials) {
         this.mapId = mapId;
         this.rentals = rentals;
         this.bookingsByLocation = bookingsByLocation;
+        this.page = page;
+        this.workerId = workerId;
+        this.deadlineMillis = deadlineMillis;
+        this.missingPartials = missingPartials;
+    }
+
+    /*
+    Partial of a worker that failed to map, so
+    the Reducer does not wait for it until the deadline
+     */
+    public static MapResult failed(int mapId, int workerId, long deadlineMillis) {
+        return new MapResult(mapId, null, null, null, workerId, deadlineMillis, 1);
     }
 
     public int getMapId() {
@@ -24,11 +54,50 @@ public class MapResult implements Serializable {
         return this.rentals != null;
     }
 
-    public ArrayList<Rental> getRentals() {
+    public ArrayList<RentalSummary> getRentals() {
         return this.rentals;
     }
 
     public ArrayList<BookingsByLocation> getBookingsByLocation() {
         return this.bookingsByLocation;
     }
+
+    public RentalPage getPage() {
+        return this.page;
+    }
+
+    public int getWorkerId() {
+        return this.workerId;
+    }
+
+    public long getDeadlineMillis() {
+        return this.deadlineMillis;
+    }
+
+    public int getMissingPartials() {
+        return this.missingPartials;
+    }
+
+    /*
+    True if the call hit its deadline
+    before every worker answered
+     */
+    public boolean isPartial() {
+        return this.missingPartials > 0;
+    }
+
+    /*
+    Wraps result in a binary MAP_RESULT message.
+    The correlation id of the message is the mapId.
+     */
+    public Message toMessage() throws IOException {
+        return Message.binary(Message.TYPE_RESPONSE, Requests.MAP_RESULT, this.mapId, MapResultCodec.encode(this));
+    }
+
+    public static MapResult fromMessage(Message message) throws IOException {
+        if (message.getHeader() != Requests.MAP_RESULT || !message.isBinary()) {
+            throw new IOException("Not a MAP_RESULT message: " + message);
+        }
+        return MapResultCodec.decode(message.getPayload());
+    }
 }
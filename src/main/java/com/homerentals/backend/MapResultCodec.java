@@ -0,0 +1,228 @@
+package com.homerentals.backend;
+
+import com.homerentals.domain.Booking;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/*
+Binary encoding of a MapResult, used as the body of MAP_RESULT frames
+between the Workers, the Reducer and the Server.
+
+Rentals are sent as RentalSummary projections, so only
+the fields of the projection are written.
+Locations and guest emails repeat a lot, so each distinct value is
+written once per result and referred to by index afterwards.
+ */
+public final class MapResultCodec {
+    public static final byte VERSION = 5;
+
+    private static final int CONTAINS_RENTALS = 1;
+    private static final int CONTAINS_BOOKINGS_BY_LOCATION = 1 << 1;
+    private static final int CONTAINS_PAGE = 1 << 2;
+
+    // String table tags
+    private static final int NULL_STRING = -1;
+    private static final int NEW_STRING = -2;
+
+    private static final RentalSummary.Projection[] projections = RentalSummary.Projection.values();
+    private static final RentalPage.SortKey[] sortKeys = RentalPage.SortKey.values();
+
+    private MapResultCodec() {
+    }
+
+    private static void writeString(DataOutputStream out, String value, HashMap<String, Integer> table) throws IOException {
+        if (value == null) {
+            out.writeInt(NULL_STRING);
+            return;
+        }
+        Integer index = table.get(value);
+        if (index != null) {
+            out.writeInt(index);
+            return;
+        }
+        table.put(value, table.size());
+        out.writeInt(NEW_STRING);
+        out.writeUTF(value);
+    }
+
+    private static String readString(DataInputStream in, ArrayList<String> table) throws IOException {
+        int tag = in.readInt();
+        if (tag == NULL_STRING) {
+            return null;
+        }
+        if (tag == NEW_STRING) {
+            String value = in.readUTF();
+            table.add(value);
+            return value;
+        }
+        if (tag < 0 || tag >= table.size()) {
+            throw new IOException("Invalid string reference: " + tag);
+        }
+        return table.get(tag);
+    }
+
+    private static void writeRental(DataOutputStream out, RentalSummary rental, HashMap<String, Integer> table) throws IOException {
+        out.writeByte(rental.getProjection().ordinal());
+        out.writeInt(rental.getId());
+        out.writeUTF(rental.getRoomName());
+        writeString(out, rental.getLocation(), table);
+
+        if (rental.getProjection() == RentalSummary.Projection.CATALOG) {
+            out.writeDouble(rental.getNightlyRate());
+            out.writeInt(rental.getCapacity());
+            out.writeDouble(rental.getStars());
+            out.writeInt(rental.getNumOfRatings());
+            writeString(out, rental.getImageURL(), table);
+            return;
+        }
+
+        ArrayList<Booking> bookings = rental.getBookings();
+        out.writeInt(bookings.size());
+        for (Booking booking : bookings) {
+            out.writeUTF(booking.getBookingId());
+            writeString(out, booking.getGuestEmail(), table);
+            out.writeInt((int) booking.getStartDate().toEpochDay());
+            out.writeInt((int) booking.getEndDate().toEpochDay());
+            out.writeDouble(booking.getRentalNightlyRate());
+        }
+    }
+
+    private static RentalSummary readRental(DataInputStream in, ArrayList<String> table) throws IOException {
+        int ordinal = in.readByte();
+        if (ordinal < 0 || ordinal >= projections.length) {
+            throw new IOException("Unknown rental projection: " + ordinal);
+        }
+        RentalSummary.Projection projection = projections[ordinal];
+        int id = in.readInt();
+        String roomName = in.readUTF();
+        String location = readString(in, table);
+
+        if (projection == RentalSummary.Projection.CATALOG) {
+            double nightlyRate = in.readDouble();
+            int capacity = in.readInt();
+            double stars = in.readDouble();
+            int numOfRatings = in.readInt();
+            String imgUrl = readString(in, table);
+            return new RentalSummary(projection, id, roomName, location, nightlyRate, capacity, stars, numOfRatings, imgUrl, null);
+        }
+
+        int count = in.readInt();
+        ArrayList<Booking> bookings = new ArrayList<>(Math.min(count, 1024));
+        for (int i = 0; i < count; i++) {
+            String bookingId = in.readUTF();
+            String guestEmail = readString(in, table);
+            LocalDate startDate = LocalDate.ofEpochDay(in.readInt());
+            LocalDate endDate = LocalDate.ofEpochDay(in.readInt());
+            double rate = in.readDouble();
+            bookings.add(new Booking(bookingId, id, guestEmail, startDate, endDate, rate));
+        }
+        return new RentalSummary(projection, id, roomName, location, 0, 0, 0, 0, null, bookings);
+    }
+
+    public static byte[] encode(MapResult result) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        HashMap<String, Integer> table = new HashMap<>();
+
+        int contents = 0;
+        if (result.getRentals() != null) {
+            contents |= CONTAINS_RENTALS;
+        }
+        if (result.getBookingsByLocation() != null) {
+            contents |= CONTAINS_BOOKINGS_BY_LOCATION;
+        }
+        if (result.getPage() != null) {
+            contents |= CONTAINS_PAGE;
+        }
+        out.writeByte(VERSION);
+        out.writeInt(result.getMapId());
+        out.writeInt(result.getWorkerId());
+        out.writeLong(result.getDeadlineMillis());
+        out.writeInt(result.getMissingPartials());
+        out.writeByte(contents);
+
+        if (result.getPage() != null) {
+            // The Reducer only needs the order and the limit
+            RentalPage page = result.getPage();
+            out.writeByte(page.getSortKey().ordinal());
+            out.writeBoolean(page.isDescending());
+            out.writeInt(page.getLimit());
+        }
+
+        if (result.getRentals() != null) {
+            out.writeInt(result.getRentals().size());
+            for (RentalSummary rental : result.getRentals()) {
+                writeRental(out, rental, table);
+            }
+        }
+
+        if (result.getBookingsByLocation() != null) {
+            out.writeInt(result.getBookingsByLocation().size());
+            for (BookingsByLocation bookingsByLocation : result.getBookingsByLocation()) {
+                writeString(out, bookingsByLocation.getLocation(), table);
+                out.writeInt(bookingsByLocation.getNumOfBookings());
+            }
+        }
+
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    public static MapResult decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        ArrayList<String> table = new ArrayList<>();
+
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported MapResult version: " + version);
+        }
+        int mapId = in.readInt();
+        int workerId = in.readInt();
+        long deadlineMillis = in.readLong();
+        int missingPartials = in.readInt();
+        int contents = in.readByte();
+
+        RentalPage page = null;
+        if ((contents & CONTAINS_PAGE) != 0) {
+            int ordinal = in.readByte();
+            if (ordinal < 0 || ordinal >= sortKeys.length) {
+                throw new IOException("Unknown sort key: " + ordinal);
+            }
+            boolean descending = in.readBoolean();
+            int limit = in.readInt();
+            try {
+                page = new RentalPage(sortKeys[ordinal], descending, limit);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage());
+            }
+        }
+
+        ArrayList<RentalSummary> rentals = null;
+        if ((contents & CONTAINS_RENTALS) != 0) {
+            int count = in.readInt();
+            rentals = new ArrayList<>(Math.min(count, payload.length));
+            for (int i = 0; i < count; i++) {
+                rentals.add(readRental(in, table));
+            }
+        }
+
+        ArrayList<BookingsByLocation> bookingsByLocation = null;
+        if ((contents & CONTAINS_BOOKINGS_BY_LOCATION) != 0) {
+            int count = in.readInt();
+            bookingsByLocation = new ArrayList<>(Math.min(count, payload.length));
+            for (int i = 0; i < count; i++) {
+                String location = readString(in, table);
+                bookingsByLocation.add(new BookingsByLocation(location, in.readInt()));
+            }
+        }
+
+        return new MapResult(mapId, rentals, bookingsByLocation, page, workerId, deadlineMillis, missingPartials);
+    }
+}
@@ -0,0 +1,137 @@
+package com.homerentals.backend;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+Map-reduce calls of the Server that wait for the Reducer.
+Each mapId has its own future, which the ReducerHandler
+completes directly, so a result only wakes the client
+handler that asked for it.
+ */
+class MapResultRegistry {
+    private final ConcurrentHashMap<Integer, CompletableFuture<MapResult>> pending = new ConcurrentHashMap<>();
+
+    // Metrics
+    private final AtomicLong registered = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong partial = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+
+    /**
+     * Registers a map-reduce call.
+     * Must be called before the request is sent to the workers,
+     * so a fast result always finds its future.
+     */
+    protected CompletableFuture<MapResult> register(int mapId) {
+        CompletableFuture<MapResult> future = new CompletableFuture<>();
+        if (this.pending.putIfAbsent(mapId, future) != null) {
+            throw new IllegalStateException("MapReduce #" + mapId + " is already pending");
+        }
+        this.registered.incrementAndGet();
+        // Stop tracking the call once it is completed,
+        // timed out or cancelled by the caller
+        future.whenComplete((result, e) -> this.pending.remove(mapId, future));
+        return future;
+    }
+
+    /**
+     * Waits for the result of a registered call.
+     * The call is cancelled if no result arrives in time.
+     */
+    protected MapResult await(int mapId, CompletableFuture<MapResult> future, long timeoutMillis)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            this.timedOut.incrementAndGet();
+            future.cancel(false);
+            throw new TimeoutException("No result for MapReduce #" + mapId + " after " + timeoutMillis + "ms");
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            throw e;
+        }
+    }
+
+    /**
+     * Completes the call that is waiting for this result.
+     *
+     * @return false if no one waits for the result anymore
+     */
+    protected boolean complete(MapResult result) {
+        CompletableFuture<MapResult> future = this.pending.get(result.getMapId());
+        if (future == null || !future.complete(result)) {
+            this.dropped.incrementAndGet();
+            return false;
+        }
+        this.completed.incrementAndGet();
+        return true;
+    }
+
+    protected void cancel(int mapId) {
+        CompletableFuture<MapResult> future = this.pending.get(mapId);
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    /*
+    Fails calls that will never receive a result,
+    e.g. when the connection to the Reducer is lost
+     */
+    protected void failAll(Throwable cause) {
+        for (CompletableFuture<MapResult> future : this.pending.values()) {
+            future.completeExceptionally(cause);
+        }
+    }
+
+    /*
+    Counts a call that hit its deadline
+    before every worker answered
+     */
+    protected void recordPartial() {
+        this.partial.incrementAndGet();
+    }
+
+    protected void recordHedge() {
+        this.hedges.incrementAndGet();
+    }
+
+    /*
+    Counts a hedged request that was answered
+    before the request it duplicates
+     */
+    protected void recordHedgeWin() {
+        this.hedgeWins.incrementAndGet();
+    }
+
+    /*
+    Fails the calls of one Reducer,
+    when there are several of them
+     */
+    protected void failReducer(int reducerIndex, int numOfReducers, Throwable cause) {
+        this.pending.forEach((mapId, future) -> {
+            if (BackendUtils.getReducerOf(mapId, numOfReducers) == reducerIndex) {
+                future.completeExceptionally(cause);
+            }
+        });
+    }
+
+    protected int getPendingCount() {
+        return this.pending.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MapReduce[pending=%d, registered=%d, completed=%d, timedOut=%d, dropped=%d, partial=%d, hedges=%d, hedgeWins=%d]",
+                this.pending.size(), this.registered.get(), this.completed.get(), this.timedOut.get(), this.dropped.get(),
+                this.partial.get(), this.hedges.get(), this.hedgeWins.get());
+    }
+}
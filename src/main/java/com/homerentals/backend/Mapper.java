@@ -1,40 +1,202 @@
 package com.homerentals.backend;
 
-import com.homerentals.domain.Booking;
 import com.homerentals.domain.Rental;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 public class Mapper {
+    // Scans a range of rentals into a partial result
+    private interface Chunk<T> {
+        T map(ArrayList<Rental> rentals, int from, int to);
+    }
+
     private final ArrayList<Rental> rentals;
+    // null to scan every rental
+    private final RentalIndex index;
+    // null to scan the Rental objects when the index does not help
+    private final RentalColumns columns;
+    // null to count the bookings of every rental for GET_BOOKINGS_BY_LOCATION
+    private final BookingIndex bookingIndex;
+    // Pool shared by the scans of all requests, null to scan on the request thread only
+    private final ForkJoinPool scanPool;
+    // Most threads, the request thread included, that one request scans with
+    private final int parallelism;
 
+    // Scans every rental on the request thread
     public Mapper(ArrayList<Rental> rentals) {
+        this(rentals, null, null, null, null, 1);
+    }
+
+    public Mapper(ArrayList<Rental> rentals, RentalIndex index, RentalColumns columns, BookingIndex bookingIndex, ForkJoinPool scanPool, int parallelism) {
         this.rentals = rentals;
+        this.index = index;
+        this.columns = columns;
+        this.bookingIndex = bookingIndex;
+        this.scanPool = scanPool;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /*
+    Number of chunks to split a scan of size rentals into.
+    Each chunk has at least PARALLEL_SCAN_MIN_RENTALS rentals,
+    so small partitions are not worth the hand-off.
+     */
+    private int chunksFor(int size) {
+        if (this.scanPool == null) {
+            return 1;
+        }
+        return Math.max(1, Math.min(this.parallelism, size / BackendUtils.PARALLEL_SCAN_MIN_RENTALS));
     }
 
-    public ArrayList<Rental> mapRentalsToFilters(HashMap<String, String> filters) {
-        ArrayList<Rental> results = new ArrayList<>();
-        for (Rental rental : rentals) {
-            boolean matchesAll = true;
-            for (Map.Entry<String, String> filter : filters.entrySet()) {
-                if (!rental.matchesFilter(filter.getKey(), filter.getValue())) {
-                    matchesAll = false;
-                    break;
+    /**
+     * Splits rentals into contiguous chunks, scans all but the first
+     * in the pool and the first on the calling thread.
+     *
+     * @return partial results in the order of the chunks
+     */
+    private <T> ArrayList<T> mapChunks(ArrayList<Rental> rentals, Chunk<T> chunk) {
+        // Rentals added during the scan are not part of it
+        int size = rentals.size();
+        int chunks = this.chunksFor(size);
+        ArrayList<T> results = new ArrayList<>(chunks);
+        if (chunks == 1) {
+            results.add(chunk.map(rentals, 0, size));
+            return results;
+        }
+
+        int chunkSize = (size + chunks - 1) / chunks;
+        ArrayList<ForkJoinTask<T>> forks = new ArrayList<>(chunks - 1);
+        for (int c = 1; c < chunks; c++) {
+            int from = Math.min(size, c * chunkSize);
+            int to = Math.min(size, from + chunkSize);
+            forks.add(this.scanPool.submit(() -> chunk.map(rentals, from, to)));
+        }
+        results.add(chunk.map(rentals, 0, Math.min(size, chunkSize)));
+        for (ForkJoinTask<T> fork : forks) {
+            results.add(fork.join());
+        }
+        return results;
+    }
+
+    /*
+    Rentals to check against the filter,
+    fewer than all of them if the indexes can narrow them down
+     */
+    private ArrayList<Rental> candidatesOf(RentalFilter filter) {
+        if (this.index != null) {
+            // Check the condition that keeps the fewest rentals first
+            filter.orderBy(this.index.estimates(filter));
+        }
+        ArrayList<Rental> candidates = (this.index == null) ? null : this.index.candidates(filter);
+        if (candidates == null && this.columns != null && filter.hasFieldFilters()) {
+            // Unselective search, scan the columns instead of the objects
+            candidates = this.columns.select(filter);
+        }
+        return (candidates == null) ? this.rentals : candidates;
+    }
+
+    public ArrayList<RentalSummary> mapRentalsToFilters(HashMap<String, String> filters, RentalSummary.Projection projection) {
+        // Parse the filters once, not once per rental
+        RentalFilter filter = RentalFilter.compile(filters);
+        ArrayList<ArrayList<RentalSummary>> chunks = this.mapChunks(this.candidatesOf(filter), (rentals, from, to) -> {
+            ArrayList<RentalSummary> results = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                Rental rental = rentals.get(i);
+                if (filter.matches(rental)) {
+                    // Send only the fields the request needs
+                    results.add(RentalSummary.of(rental, projection));
                 }
             }
-            if (matchesAll) {
-                results.add(rental);
+            return results;
+        });
+
+        if (chunks.size() == 1) {
+            return chunks.get(0);
+        }
+        ArrayList<RentalSummary> results = new ArrayList<>();
+        for (ArrayList<RentalSummary> chunk : chunks) {
+            results.addAll(chunk);
+        }
+        return results;
+    }
+
+    /**
+     * Keeps the first page.getLimit() matching rentals after the cursor
+     * in a bounded heap, instead of every matching rental.
+     *
+     * @return sorted run of at most page.getLimit() rentals
+     */
+    public ArrayList<RentalSummary> mapRentalsToPage(HashMap<String, String> filters, RentalPage page) {
+        RentalFilter filter = RentalFilter.compile(filters);
+        ArrayList<ArrayList<RentalSummary>> runs = this.mapChunks(this.candidatesOf(filter),
+                (rentals, from, to) -> mapRentalsToPage(rentals, from, to, filter, page));
+
+        // Merge the sorted runs of the chunks
+        ArrayList<RentalSummary> results = runs.get(0);
+        for (int r = 1; r < runs.size(); r++) {
+            results = page.merge(results, runs.get(r));
+        }
+        return results;
+    }
+
+    private static ArrayList<RentalSummary> mapRentalsToPage(ArrayList<Rental> rentals, int from, int to, RentalFilter filter, RentalPage page) {
+        // Max-heap, the head is the last rental of the page
+        Comparator<RentalSummary> order = page.comparator();
+        PriorityQueue<RentalSummary> heap = new PriorityQueue<>(page.getLimit() + 1, order.reversed());
+        for (int i = from; i < to; i++) {
+            Rental rental = rentals.get(i);
+            if (!filter.matches(rental)) {
+                continue;
+            }
+            RentalSummary summary = RentalSummary.of(rental, RentalSummary.Projection.CATALOG);
+            if (!page.isAfterCursor(summary)) {
+                continue;
+            }
+            if (heap.size() < page.getLimit()) {
+                heap.add(summary);
+            } else if (order.compare(summary, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(summary);
             }
         }
+
+        ArrayList<RentalSummary> results = new ArrayList<>(heap);
+        results.sort(order);
         return results;
     }
 
     public ArrayList<BookingsByLocation> mapBookingsToLocations(LocalDate startDate, LocalDate endDate) {
+        if (this.bookingIndex != null) {
+            // Only the months of the period
+            return this.bookingIndex.countWithin(startDate, endDate);
+        }
+
+        ArrayList<HashMap<String, BookingsByLocation>> chunks = this.mapChunks(this.rentals,
+                (rentals, from, to) -> this.mapBookingsToLocations(rentals, from, to, startDate, endDate));
+
+        // Add the counts of the other chunks to the first one
+        HashMap<String, BookingsByLocation> bookings = chunks.get(0);
+        for (int c = 1; c < chunks.size(); c++) {
+            for (BookingsByLocation byLocation : chunks.get(c).values()) {
+                BookingsByLocation total = bookings.putIfAbsent(byLocation.getLocation(), byLocation);
+                if (total != null) {
+                    total.merge(byLocation);
+                }
+            }
+        }
+        return new ArrayList<>(bookings.values());
+    }
+
+    private HashMap<String, BookingsByLocation> mapBookingsToLocations(ArrayList<Rental> rentals, int from, int to, LocalDate startDate, LocalDate endDate) {
         HashMap<String, BookingsByLocation> bookings = new HashMap<>();
-        for (Rental rental : rentals) {
+        for (int i = from; i < to; i++) {
+            Rental rental = rentals.get(i);
             // Get the object for storing bookings associated with rental's location
             String location = rental.getLocation();
             if (!bookings.containsKey(location)) {
@@ -42,20 +204,12 @@ public class Mapper {
             }
             BookingsByLocation bookingsByLocation = bookings.get(location);
 
-            // Iterate over all bookings for this rental and add them to the object
-            // if they happen during the period given by the user
-            for (Booking booking : rental.getBookings()) {
-                if (isInDateRange(booking, startDate, endDate)) {
-                    bookingsByLocation.addBooking(booking.getBookingId());
-                }
+            // Count the bookings of this rental
+            // that happen during the period given by the user
+            synchronized (rental) {
+                bookingsByLocation.addBookings(rental.countBookingsWithin(startDate, endDate));
             }
         }
-        return new ArrayList<>(bookings.values());
-    }
-
-    private boolean isInDateRange(Booking booking, LocalDate startDate, LocalDate endDate) {
-        LocalDate bookingStart = booking.getStartDate();
-        LocalDate bookingEnd = booking.getEndDate();
-        return bookingStart.isAfter(startDate.minusDays(1)) && bookingEnd.isBefore(endDate.plusDays(1));
+        return bookings;
     }
 }
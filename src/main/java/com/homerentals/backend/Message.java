@@ -0,0 +1,91 @@
+package com.homerentals.backend;
+
+import org.json.JSONObject;
+
+/*
+Message exchanged between the consoles, the Server,
+the Workers and the Reducer.
+The type, request and correlation id travel in a typed
+frame header (see MessageCodec). The body is either a
+JSON object or, for binary messages, raw bytes.
+ */
+public class Message {
+    public static final byte TYPE_REQUEST = 0;
+    public static final byte TYPE_RESPONSE = 1;
+
+    private final byte type;
+    private final Requests header;
+    private final long correlationId;
+    private final JSONObject body;
+    private final byte[] payload;
+
+    Message(byte type, Requests header, long correlationId, JSONObject body, byte[] payload) {
+        this.type = type;
+        this.header = header;
+        this.correlationId = correlationId;
+        this.body = body;
+        this.payload = payload;
+    }
+
+    public static Message request(Requests header, JSONObject body) {
+        return new Message(TYPE_REQUEST, header, 0, (body == null) ? new JSONObject() : body, null);
+    }
+
+    public static Message response(Requests header, JSONObject body) {
+        return new Message(TYPE_RESPONSE, header, 0, (body == null) ? new JSONObject() : body, null);
+    }
+
+    public static Message binary(byte type, Requests header, long correlationId, byte[] payload) {
+        return new Message(type, header, correlationId, null, payload);
+    }
+
+    /*
+    Returns copy of this message that carries the given correlation id.
+    The body is shared, not copied.
+     */
+    public Message withCorrelationId(long correlationId) {
+        return new Message(this.type, this.header, correlationId, this.body, this.payload);
+    }
+
+    public byte getType() {
+        return this.type;
+    }
+
+    public boolean isRequest() {
+        return this.type == TYPE_REQUEST;
+    }
+
+    public Requests getHeader() {
+        return this.header;
+    }
+
+    public long getCorrelationId() {
+        return this.correlationId;
+    }
+
+    public boolean isBinary() {
+        return this.payload != null;
+    }
+
+    public JSONObject getBody() {
+        return this.body;
+    }
+
+    public byte[] getPayload() {
+        return this.payload;
+    }
+
+    @Override
+    public String toString() {
+        JSONObject json = new JSONObject();
+        json.put(BackendUtils.MESSAGE_TYPE, this.isRequest() ? BackendUtils.MESSAGE_TYPE_REQUEST : BackendUtils.MESSAGE_TYPE_RESPONSE);
+        json.put(BackendUtils.MESSAGE_HEADER, this.header.name());
+        json.put(BackendUtils.MESSAGE_CORRELATION_ID, this.correlationId);
+        if (this.isBinary()) {
+            json.put(BackendUtils.MESSAGE_BODY, this.payload.length + " bytes");
+        } else {
+            json.put(BackendUtils.MESSAGE_BODY, this.body);
+        }
+        return json.toString();
+    }
+}
@@ -0,0 +1,205 @@
+package com.homerentals.backend;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/*
+Length-prefixed binary frames for Messages.
+
+  int    length of the rest of the frame
+  byte   protocol version
+  byte   message type (request / response)
+  short  request type (Requests ordinal)
+  byte   flags
+  long   correlation id
+  byte[] body
+
+The body is UTF-8 JSON, or raw bytes if FLAG_BINARY is set.
+Bodies above DEFLATE_THRESHOLD are deflated (FLAG_DEFLATED)
+and start with their inflated length.
+ */
+public final class MessageCodec {
+    public static final byte VERSION = 1;
+
+    public static final int FLAG_DEFLATED = 1;
+    public static final int FLAG_BINARY = 1 << 1;
+
+    public static final int LENGTH_FIELD_LENGTH = 4;
+    public static final int HEADER_LENGTH = 1 + 1 + 2 + 1 + 8;
+    public static final int MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+    public static final int DEFLATE_THRESHOLD = 16 * 1024;
+
+    private static final Requests[] requests = Requests.values();
+
+    private MessageCodec() {
+    }
+
+    private static byte[] deflate(byte[] body) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(body);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 16);
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(chunk);
+                out.write(chunk, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(ByteBuffer frame, int inflatedLength) throws IOException {
+        if (inflatedLength < 0 || inflatedLength > MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid inflated body length: " + inflatedLength);
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(frame);
+            byte[] body = new byte[inflatedLength];
+            int n = 0;
+            while (n < inflatedLength && !inflater.finished()) {
+                int read = inflater.inflate(body, n, inflatedLength - n);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += read;
+            }
+            if (n != inflatedLength) {
+                throw new IOException("Truncated deflated body");
+            }
+            return body;
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid deflated body", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Encodes message, including the length field.
+     */
+    public static byte[] encode(Message message) throws IOException {
+        int flags = 0;
+        byte[] body;
+        if (message.isBinary()) {
+            flags |= FLAG_BINARY;
+            body = message.getPayload();
+        } else {
+            body = message.getBody().toString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        int inflatedLength = body.length;
+        if (body.length > DEFLATE_THRESHOLD) {
+            byte[] deflated = deflate(body);
+            if (deflated.length + 4 < body.length) {
+                flags |= FLAG_DEFLATED;
+                body = deflated;
+            }
+        }
+
+        int length = HEADER_LENGTH + body.length + (((flags & FLAG_DEFLATED) != 0) ? 4 : 0);
+        if (length > MAX_FRAME_LENGTH) {
+            throw new IOException("Message too large: " + length + " bytes");
+        }
+
+        ByteBuffer frame = ByteBuffer.allocate(LENGTH_FIELD_LENGTH + length);
+        frame.putInt(length);
+        frame.put(VERSION);
+        frame.put(message.getType());
+        frame.putShort((short) message.getHeader().ordinal());
+        frame.put((byte) flags);
+        frame.putLong(message.getCorrelationId());
+        if ((flags & FLAG_DEFLATED) != 0) {
+            frame.putInt(inflatedLength);
+        }
+        frame.put(body);
+        return frame.array();
+    }
+
+    /**
+     * Decodes frame, without its length field.
+     */
+    public static Message decode(ByteBuffer frame) throws IOException {
+        if (frame.remaining() < HEADER_LENGTH) {
+            throw new IOException("Frame too short: " + frame.remaining() + " bytes");
+        }
+        byte version = frame.get();
+        if (version != VERSION) {
+            throw new IOException("Unsupported protocol version: " + version);
+        }
+        byte type = frame.get();
+        int ordinal = frame.getShort() & 0xFFFF;
+        if (ordinal >= requests.length) {
+            throw new IOException("Unknown request type: " + ordinal);
+        }
+        int flags = frame.get() & 0xFF;
+        long correlationId = frame.getLong();
+
+        byte[] body;
+        if ((flags & FLAG_DEFLATED) != 0) {
+            body = inflate(frame, frame.getInt());
+        } else {
+            body = new byte[frame.remaining()];
+            frame.get(body);
+        }
+
+        if ((flags & FLAG_BINARY) != 0) {
+            return Message.binary(type, requests[ordinal], correlationId, body);
+        }
+        try {
+            JSONObject json = new JSONObject(new String(body, StandardCharsets.UTF_8));
+            return new Message(type, requests[ordinal], correlationId, json, null);
+        } catch (JSONException e) {
+            throw new IOException("Invalid message body", e);
+        }
+    }
+
+    /**
+     * Returns the length of the next frame in buffer,
+     * without its length field, or -1 if the length field
+     * has not been received yet. Does not move the position.
+     */
+    public static int peekFrameLength(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < LENGTH_FIELD_LENGTH) {
+            return -1;
+        }
+        int length = buffer.getInt(buffer.position());
+        if (length < HEADER_LENGTH || length > MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+        return length;
+    }
+
+    public static void write(DataOutputStream out, Message message) throws IOException {
+        out.write(encode(message));
+        out.flush();
+    }
+
+    /**
+     * Reads next frame of a blocking stream.
+     *
+     * @throws java.io.EOFException if the stream was closed
+     */
+    public static Message read(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < HEADER_LENGTH || length > MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+        byte[] frame = new byte[length];
+        in.readFully(frame);
+        return decode(ByteBuffer.wrap(frame));
+    }
+}
@@ -0,0 +1,144 @@
+package com.homerentals.backend;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/*
+Running reduction of one mapId in the Reducer.
+Each partial result is folded into the accumulator
+as soon as it arrives and is not kept afterwards,
+so a job holds at most one copy of its answer.
+Each job has its own lock, so workers that send
+results for different mapIds never wait for each other.
+A job that hits its deadline is reduced with the partials
+it has, and the result says how many are missing.
+ */
+class ReduceJob {
+    private final int mapId;
+    private final int expectedPartials;
+    private int received = 0;
+    // Workers that sent their partial, hedged requests may send it twice
+    private final HashSet<Integer> workers = new HashSet<>();
+    private int duplicates = 0;
+    // Workers that sent a failed partial instead of a result
+    private int failed = 0;
+    private boolean reduced = false;
+
+    // Accumulators, created by the first partial
+    private HashSet<RentalSummary> rentals;
+    private HashMap<String, BookingsByLocation> bookingsByLocation;
+    // Sorted page, for partials with a RentalPage
+    private RentalPage page;
+    private ArrayList<RentalSummary> sortedRentals;
+
+    ReduceJob(int mapId, int expectedPartials) {
+        this.mapId = mapId;
+        this.expectedPartials = expectedPartials;
+    }
+
+    protected int getMapId() {
+        return this.mapId;
+    }
+
+    protected synchronized int getReceivedPartials() {
+        return this.received;
+    }
+
+    protected synchronized int getDuplicatePartials() {
+        return this.duplicates;
+    }
+
+    /**
+     * Folds the result of a worker into the reduction.
+     *
+     * @return true if this was the last partial and the job can be reduced
+     */
+    protected synchronized boolean add(MapResult partial) {
+        if (this.reduced) {
+            System.err.printf("\n! ReduceJob.add(): MapReduce #%d was already reduced, dropping late result.%n", this.mapId);
+            return false;
+        }
+        if (this.received == this.expectedPartials) {
+            System.err.printf("\n! ReduceJob.add(): MapReduce #%d is already complete, dropping extra result.%n", this.mapId);
+            return false;
+        }
+        if (partial.getWorkerId() != MapResult.NO_WORKER && !this.workers.add(partial.getWorkerId())) {
+            this.duplicates++;
+            System.out.printf("\n> MapReduce #%d already has the result of worker %d, dropping duplicate.%n", this.mapId, partial.getWorkerId());
+            return false;
+        }
+        if (partial.isPartial()) {
+            // The worker failed to map, nothing to fold
+            this.failed += partial.getMissingPartials();
+        } else if (partial.getPage() != null) {
+            this.foldSortedRun(partial.getPage(), partial.getRentals());
+        } else if (partial.containsRentals()) {
+            this.foldRentals(partial.getRentals());
+        } else {
+            this.foldBookingsByLocation(partial.getBookingsByLocation());
+        }
+        this.received++;
+        System.out.printf("\n> MapReduce for #%d at %d/%d messages.%n", this.mapId, this.received, this.expectedPartials);
+        return this.received == this.expectedPartials;
+    }
+
+    private void foldRentals(ArrayList<RentalSummary> partial) {
+        if (this.rentals == null) {
+            this.rentals = new HashSet<>(partial);
+            return;
+        }
+        // Set union, each rental is kept once
+        this.rentals.addAll(partial);
+    }
+
+    private void foldSortedRun(RentalPage page, ArrayList<RentalSummary> run) {
+        if (this.sortedRentals == null) {
+            this.page = page;
+            this.sortedRentals = run;
+            return;
+        }
+        // Merging each run as it arrives gives the same page as
+        // a k-way merge of all runs, and keeps at most one page
+        this.sortedRentals = this.page.merge(this.sortedRentals, run);
+    }
+
+    private void foldBookingsByLocation(ArrayList<BookingsByLocation> partial) {
+        if (this.bookingsByLocation == null) {
+            this.bookingsByLocation = new HashMap<>();
+        }
+        // Workers own disjoint bookings, so counts add up
+        for (BookingsByLocation byLocation : partial) {
+            BookingsByLocation reduced = this.bookingsByLocation.get(byLocation.getLocation());
+            if (reduced == null) {
+                // Use the first worker's object
+                this.bookingsByLocation.put(byLocation.getLocation(), byLocation);
+            } else {
+                reduced.merge(byLocation);
+            }
+        }
+    }
+
+    /*
+    Returns the reduced result of the job and releases the accumulators.
+    Called once the job is complete or its deadline has passed.
+    Partials that arrive afterwards are dropped.
+     */
+    protected synchronized MapResult reduce() {
+        MapResult reduced;
+        int missing = this.expectedPartials - this.received + this.failed;
+        if (this.sortedRentals != null) {
+            reduced = new MapResult(this.mapId, this.sortedRentals, null, this.page, MapResult.NO_WORKER, 0, missing);
+        } else if (this.rentals != null) {
+            reduced = new MapResult(this.mapId, new ArrayList<>(this.rentals), null, null, MapResult.NO_WORKER, 0, missing);
+        } else {
+            ArrayList<BookingsByLocation> byLocation = (this.bookingsByLocation != null) ? new ArrayList<>(this.bookingsByLocation.values()) : new ArrayList<>();
+            reduced = new MapResult(this.mapId, null, byLocation, null, MapResult.NO_WORKER, 0, missing);
+        }
+        this.reduced = true;
+        this.rentals = null;
+        this.bookingsByLocation = null;
+        this.sortedRentals = null;
+        return reduced;
+    }
+}
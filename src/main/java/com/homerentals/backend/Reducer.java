@@ -1,97 +1,201 @@
 package com.homerentals.backend;
 
-import com.homerentals.domain.Rental;
+import org.json.JSONObject;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class Reducer {
-    private static final HashMap<Integer, ArrayList<MapResult>> resultsToReduce = new HashMap<>();
-
-    private static Object readWorkerSocketInput(ObjectInputStream in) {
+    // Jobs of the mapIds that are still waiting for workers
+    private static final ConcurrentHashMap<Integer, ReduceJob> jobs = new ConcurrentHashMap<>();
+    // Recently reduced mapIds that had a deadline,
+    // so late and hedged partials do not start a new job
+    private static final ConcurrentHashMap<Integer, Boolean> finishedMapIds = new ConcurrentHashMap<>();
+    private static final ScheduledExecutorService deadlineScheduler = Executors.newSingleThreadScheduledExecutor();
+    // Guards the Server connection only
+    private static final ReentrantLock serverOutputLock = new ReentrantLock();
+    private static ExecutorService reduceExecutor;
+    private static int numOfWorkers;
+    private static DataOutputStream serverSocketOutput;
+
+    // Metrics
+    private static final AtomicLong expiredJobs = new AtomicLong();
+    private static final AtomicLong duplicatePartials = new AtomicLong();
+    private static final AtomicLong latePartials = new AtomicLong();
+
+    private static MapResult readWorkerSocketInput(DataInputStream in) throws IOException {
         try {
-            return in.readObject();
-        } catch (IOException | ClassNotFoundException e) {
-            System.err.println("\n! Reducer.readWorkerSocketInput(): Error reading worker socket input:\n" + e);
+            return MapResult.fromMessage(MessageCodec.read(in));
+        } catch (EOFException e) {
+            // Worker closed its connection
             return null;
+        } catch (IOException e) {
+            System.err.println("\n! Reducer.readWorkerSocketInput(): Error reading worker socket input:\n" + e);
+            throw e;
         }
     }
 
-    private static void writeToServerSocket(ObjectOutputStream out, Object output) {
+    private static void writeToServerSocket(DataOutputStream out, MapResult output) {
         try {
-            out.writeObject(output);
-            out.flush();
+            // Encode outside the lock
+            byte[] frame = MessageCodec.encode(output.toMessage());
+            serverOutputLock.lock();
+            try {
+                out.write(frame);
+                out.flush();
+            } finally {
+                serverOutputLock.unlock();
+            }
         } catch (IOException e) {
             System.err.println("\n! Reducer.writeToServerSocket(): Error writing to server socket:\n" + e);
         }
     }
 
+    private static String getMetrics() {
+        return String.format("Reducer[jobs=%d, expired=%d, duplicates=%d, late=%d]",
+                jobs.size(), expiredJobs.get(), duplicatePartials.get(), latePartials.get());
+    }
+
+    /*
+    Collects the result of a worker.
+    Called by the threads of all worker connections.
+    Once every worker has sent its result for this mapId,
+    the job is reduced and sent to the Server on the reduce executor,
+    so the reading thread can go on with the next result.
+    The first partial of a job brings the deadline of the call,
+    if the other workers miss it the job is reduced without them.
+     */
+    private static void collect(MapResult workerInput) {
+        int mapId = workerInput.getMapId();
+        System.out.printf("\n> Received message from worker with mapId: %d%n", mapId);
+
+        if (finishedMapIds.containsKey(mapId)) {
+            latePartials.incrementAndGet();
+            System.out.printf("\n> MapReduce #%d was already sent, dropping result of worker %d.%n", mapId, workerInput.getWorkerId());
+            return;
+        }
+
+        ReduceJob job = jobs.get(mapId);
+        if (job == null) {
+            ReduceJob created = new ReduceJob(mapId, numOfWorkers);
+            job = jobs.putIfAbsent(mapId, created);
+            if (job == null) {
+                job = created;
+                scheduleDeadline(created, workerInput.getDeadlineMillis());
+            }
+        }
+        if (job.add(workerInput)) {
+            finish(job, workerInput.getDeadlineMillis() > 0);
+        }
+    }
+
+    private static void scheduleDeadline(ReduceJob job, long deadlineMillis) {
+        if (deadlineMillis <= 0) {
+            // No deadline, wait for every worker
+            return;
+        }
+        deadlineScheduler.schedule(() -> {
+            if (jobs.get(job.getMapId()) != job) {
+                // Completed in time
+                return;
+            }
+            System.out.printf("\n> MapReduce #%d hit its deadline at %d/%d messages.%n", job.getMapId(), job.getReceivedPartials(), numOfWorkers);
+            if (finish(job, true)) {
+                expiredJobs.incrementAndGet();
+                System.out.println("\n> " + getMetrics());
+            }
+        }, deadlineMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /*
+    Reduces the job and sends it to the Server, exactly once:
+    either the last partial or the deadline gets to remove the job
+     */
+    private static boolean finish(ReduceJob job, boolean hasDeadline) {
+        int mapId = job.getMapId();
+        if (hasDeadline) {
+            finishedMapIds.put(mapId, Boolean.TRUE);
+            // Forget the mapId once no partial can arrive anymore
+            deadlineScheduler.schedule(() -> finishedMapIds.remove(mapId), BackendUtils.MAP_REDUCE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
+        if (!jobs.remove(mapId, job)) {
+            return false;
+        }
+
+        reduceExecutor.execute(() -> {
+            System.out.printf("\n> Reducing for #%d.%n", mapId);
+            MapResult reducedResults = job.reduce();
+            duplicatePartials.addAndGet(job.getDuplicatePartials());
+
+            // Send results to server
+            System.out.println("\n> Sending results to server for #" + mapId);
+            writeToServerSocket(serverSocketOutput, reducedResults);
+        });
+        return true;
+    }
+
+    /*
+    Reads the map results a worker sends
+    over its persistent connection
+     */
+    private static void handleWorkerConnection(Socket workerSocket) {
+        try (Socket socket = workerSocket;
+             DataInputStream workerSocketInput = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024))
+        ) {
+            MapResult workerInput;
+            while ((workerInput = readWorkerSocketInput(workerSocketInput)) != null) {
+                collect(workerInput);
+            }
+            System.out.println("\n> Worker disconnected " + socket.getRemoteSocketAddress());
+        } catch (IOException e) {
+            System.err.println("\n! Reducer.handleWorkerConnection(): Error reading worker socket input:\n" + e);
+        }
+    }
+
     public static void main(String[] args) {
-        if (args.length != 1) {
-            System.out.println("Usage: java ReduceSearch <worker-number>");
+        if (args.length < 1 || args.length > 2) {
+            System.out.println("Usage: java ReduceSearch <worker-number> [reducer-index]");
             System.exit(1);
         }
 
-        int numOfWorkers = Integer.parseInt(args[0]);
+        numOfWorkers = Integer.parseInt(args[0]);
+        int reducerIndex = (args.length > 1) ? Integer.parseInt(args[1]) : 0;
+        reduceExecutor = BackendUtils.newHandlerExecutor("Reduce", Math.max(2, Runtime.getRuntime().availableProcessors()));
 
         // Connect to server
-        try (Socket serverSocket = new Socket(BackendUtils.SERVER_ADDRESS, BackendUtils.SERVER_PORT);
-             ObjectOutputStream serverSocketOutput = new ObjectOutputStream(serverSocket.getOutputStream())
-        ) {
+        try (Socket serverSocket = new Socket(BackendUtils.SERVER_ADDRESS, BackendUtils.SERVER_PORT)) {
+            serverSocketOutput = new DataOutputStream(new BufferedOutputStream(serverSocket.getOutputStream()));
+
+            // Tell the Server which mapIds this Reducer owns
+            JSONObject body = new JSONObject();
+            body.put(BackendUtils.BODY_FIELD_REDUCER_INDEX, reducerIndex);
+            MessageCodec.write(serverSocketOutput, BackendUtils.createRequest(Requests.REGISTER_REDUCER, body));
+
             // Set up reducer socket
-            try (ServerSocket reducerSocket = new ServerSocket(BackendUtils.REDUCER_PORT)) {
+            try (ServerSocket reducerSocket = new ServerSocket(BackendUtils.getReducerPort(reducerIndex))) {
                 reducerSocket.setReuseAddress(true);
                 while (true) {
-                    // Accept connection from worker
+                    // Accept connection from worker.
+                    // Each worker keeps its connection open
+                    // and sends all of its results on it.
                     Socket workerSocket = reducerSocket.accept();
+                    workerSocket.setTcpNoDelay(true);
                     System.out.println("\n> New worker connected " + workerSocket.getRemoteSocketAddress());
-
-                    // Get message from worker
-                    ObjectInputStream workerSocketInput = new ObjectInputStream(workerSocket.getInputStream());
-                    MapResult workerInput = (MapResult) readWorkerSocketInput(workerSocketInput);
-                    if (workerInput == null) {
-                        System.err.println("\n! ReduceSearch.main(): Error reading worker socket input.");
-                        break;
-                    }
-
-                    // Parse message
-                    int mapId = workerInput.getMapId();
-                    System.out.printf("\n> Received message from worker with mapId: %d%n", mapId);
-
-                    // Save MapResults based on mapId
-                    if (!resultsToReduce.containsKey(mapId)) {
-                        resultsToReduce.put(mapId, new ArrayList<>());
-                    }
-                    resultsToReduce.get(mapId).add(workerInput);
-                    System.out.printf("\n> MapReduce for #%d at %d/%d messages.%n", mapId, resultsToReduce.get(mapId).size(), numOfWorkers);
-
-                    // Reduce values when all workers have sent their results
-                    if (resultsToReduce.get(mapId).size() == numOfWorkers) {
-                        System.out.printf("\n> Reducing for #%d.%n", mapId);
-                        MapResult reducedResults;
-
-                        // Check what type of reduction you need to do
-                        if (workerInput.containsRentals()) {
-                            ArrayList<Rental> reducedRentals = reduceRentals(mapId);
-                            reducedResults = new MapResult(mapId, reducedRentals, null);
-                        } else {
-                            ArrayList<BookingsByLocation> reducedBookingsByLocation = reduceBookingsByLocation(mapId);
-                            reducedResults = new MapResult(mapId, null, reducedBookingsByLocation);
-                        }
-
-                        resultsToReduce.remove(mapId);
-
-                        // Send results to server
-                        System.out.println("\n> Sending results to server for #" + mapId);
-                        writeToServerSocket(serverSocketOutput, reducedResults);
-                    }
-
+                    BackendUtils.startHandlerThread("WorkerConnection-" + workerSocket.getRemoteSocketAddress(),
+                            () -> handleWorkerConnection(workerSocket));
                 }
             } catch (IOException e) {
                 System.err.println("\n! ReduceSearch.main(): Could not set up Reducer ServerSocket:\n" + e);
@@ -100,38 +204,4 @@ public class Reducer {
             System.err.println("\n! ReduceSearch.main(): Could not connect to Server:\n" + e);
         }
     }
-
-    public static ArrayList<Rental> reduceRentals(int mapId) {
-        ArrayList<MapResult> resultsList = resultsToReduce.get(mapId);
-
-        HashSet<Rental> reduced = new HashSet<>();
-        for (MapResult result : resultsList) {
-            reduced.addAll(result.getRentals());
-        }
-
-        return new ArrayList<>(reduced);
-    }
-
-    public static ArrayList<BookingsByLocation> reduceBookingsByLocation(int mapId) {
-        ArrayList<MapResult> resultsList = resultsToReduce.get(mapId);
-
-        // Perform reduction based on unique Booking IDs
-        HashMap<String, BookingsByLocation> reduced = new HashMap<>();
-        for (MapResult result : resultsList) {
-            for (BookingsByLocation bookingsByLocation : result.getBookingsByLocation()) {
-                String location = bookingsByLocation.getLocation();
-                if (!reduced.containsKey(location)) {
-                    // Create a new entry in the map by using
-                    // the first worker's object
-                    reduced.put(location, bookingsByLocation);
-                } else {
-                    // Add all the booking ids of this worker
-                    // to the already existing map entry
-                    reduced.get(location).addAll(bookingsByLocation.getBookingIds());
-                }
-            }
-        }
-
-        return new ArrayList<>(reduced.values());
-    }
 }
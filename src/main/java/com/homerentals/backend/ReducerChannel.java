@@ -0,0 +1,98 @@
+package com.homerentals.backend;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+Long-lived, buffered connection from a Worker to the Reducer.
+All map results of the Worker are written on it as MAP_RESULT frames.
+The connection is opened on first use and reopened once
+if a write fails.
+ */
+class ReducerChannel {
+    private final String address;
+    private final int port;
+    private final ReentrantLock lock = new ReentrantLock();
+    private Socket socket = null;
+    private DataOutputStream socketOut = null;
+
+    // Metrics
+    private long sent = 0;
+    private long bytesSent = 0;
+    private long reconnects = 0;
+
+    ReducerChannel(String address, int port) {
+        this.address = address;
+        this.port = port;
+    }
+
+    private void connect() throws IOException {
+        this.socket = new Socket(this.address, this.port);
+        this.socket.setTcpNoDelay(true);
+        this.socketOut = new DataOutputStream(new BufferedOutputStream(this.socket.getOutputStream(), 64 * 1024));
+    }
+
+    private void closeSocket() {
+        if (this.socket == null) {
+            return;
+        }
+        try {
+            this.socket.close();
+        } catch (IOException e) {
+            System.err.println("\n! ReducerChannel.closeSocket(): Error closing Reducer connection:\n" + e);
+        }
+        this.socket = null;
+        this.socketOut = null;
+    }
+
+    protected void send(MapResult result) throws IOException {
+        byte[] frame = MessageCodec.encode(result.toMessage());
+        this.lock.lock();
+        try {
+            for (int attempt = 0; ; attempt++) {
+                try {
+                    if (this.socket == null) {
+                        this.connect();
+                    }
+                    this.socketOut.write(frame);
+                    this.socketOut.flush();
+                    this.sent++;
+                    this.bytesSent += frame.length;
+                    return;
+                } catch (IOException e) {
+                    this.closeSocket();
+                    if (attempt > 0) {
+                        throw e;
+                    }
+                    this.reconnects++;
+                    System.err.println("\n! ReducerChannel.send(): Reconnecting to Reducer:\n" + e);
+                }
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    protected void close() {
+        this.lock.lock();
+        try {
+            this.closeSocket();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        this.lock.lock();
+        try {
+            return String.format("ReducerChannel[%s:%d: sent=%d, bytes=%d, reconnects=%d]",
+                    this.address, this.port, this.sent, this.bytesSent, this.reconnects);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+}
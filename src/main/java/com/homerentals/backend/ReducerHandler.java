@@ -1,29 +1,39 @@
 package com.homerentals.backend;
 
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.net.Socket;
 
 public class ReducerHandler implements Runnable {
-    protected final static Object syncObj = new Object();
-
     private final Socket reducerSocket;
-    private final ObjectInputStream reducerSocketIn;
+    private final DataInputStream reducerSocketIn;
+    private final int reducerIndex;
 
     ReducerHandler(Socket reducerSocket) throws IOException {
         this.reducerSocket = reducerSocket;
         try {
-            this.reducerSocketIn = new ObjectInputStream(reducerSocket.getInputStream());
+            this.reducerSocketIn = new DataInputStream(new BufferedInputStream(reducerSocket.getInputStream()));
+            // The Reducer tells which mapIds it owns
+            Message registration = MessageCodec.read(this.reducerSocketIn);
+            if (registration.getHeader() != Requests.REGISTER_REDUCER) {
+                throw new IOException("Expected Reducer registration, got: " + registration);
+            }
+            this.reducerIndex = registration.getBody().getInt(BackendUtils.BODY_FIELD_REDUCER_INDEX);
         } catch (IOException e) {
             System.err.println("\n! ReducerHandler(): Error setting up streams:\n" + e);
             throw e;
         }
     }
 
+    protected int getReducerIndex() {
+        return this.reducerIndex;
+    }
+
     private MapResult readReducerSocketInput() {
         try {
-            return (MapResult) this.reducerSocketIn.readObject();
-        } catch (IOException | ClassNotFoundException e) {
+            return MapResult.fromMessage(MessageCodec.read(this.reducerSocketIn));
+        } catch (IOException e) {
             System.err.println("\n! ReducerHandler.readReducerSocketInput(): Error reading Reducer Socket input:\n" + e);
             return null;
         }
@@ -41,13 +51,13 @@ public class ReducerHandler implements Runnable {
             }
             System.out.println("\n> ReducerHandler.run(): Received result with mapId = " + mapResult.getMapId());
 
-            // Put results in Server.mapReduceResults
-            // and notify waiting ClientHandler threads
-            synchronized (syncObj) {
-                Server.mapReduceResults.put(mapResult.getMapId(), mapResult);
-                syncObj.notify();
+            // Hand result to the waiting ClientHandler
+            if (!Server.mapReduceResults.complete(mapResult)) {
+                System.err.println("\n! ReducerHandler.run(): Dropped result of MapReduce #" + mapResult.getMapId() + ", it timed out or was cancelled.");
             }
         }
+        // Calls of the other Reducers go on
+        Server.mapReduceResults.failReducer(this.reducerIndex, Server.getNumOfReducers(), new IOException("Connection to Reducer " + this.reducerIndex + " closed"));
         try {
             System.out.println("\n> Closing thread...");
             this.reducerSocketIn.close();
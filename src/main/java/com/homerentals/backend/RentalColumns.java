@@ -0,0 +1,178 @@
+package com.homerentals.backend;
+
+import com.homerentals.domain.Rental;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+Searchable fields of the rentals of a Worker, one primitive array
+per field, indexed by the order the rentals were added.
+A search runs one tight loop per filter over the arrays and keeps
+the positions that pass in a selection vector, the next filter
+only reads those positions. Rental objects are read only for the
+rentals left at the end, instead of for every rental.
+ */
+public class RentalColumns {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final HashMap<String, Integer> locationCodes = new HashMap<>();
+    private final HashMap<Integer, Integer> positions = new HashMap<>();
+    private Rental[] rentals = new Rental[INITIAL_CAPACITY];
+    private int[] locations = new int[INITIAL_CAPACITY];
+    private int[] capacities = new int[INITIAL_CAPACITY];
+    private double[] nightlyRates = new double[INITIAL_CAPACITY];
+    private double[] stars = new double[INITIAL_CAPACITY];
+    private int size = 0;
+
+    public void add(Rental rental) {
+        this.lock.writeLock().lock();
+        try {
+            if (this.size == this.rentals.length) {
+                int capacity = this.size * 2;
+                this.rentals = Arrays.copyOf(this.rentals, capacity);
+                this.locations = Arrays.copyOf(this.locations, capacity);
+                this.capacities = Arrays.copyOf(this.capacities, capacity);
+                this.nightlyRates = Arrays.copyOf(this.nightlyRates, capacity);
+                this.stars = Arrays.copyOf(this.stars, capacity);
+            }
+            int position = this.size++;
+            this.rentals[position] = rental;
+            this.locations[position] = this.locationCodes.computeIfAbsent(RentalIndex.locationKey(rental.getLocation()), k -> this.locationCodes.size());
+            this.capacities[position] = rental.getCapacity();
+            this.nightlyRates[position] = rental.getNightlyRate();
+            this.stars[position] = rental.getStars();
+            this.positions.put(rental.getId(), position);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /*
+    Copies the stars of a rental after a rating
+     */
+    public void updateStars(Rental rental) {
+        this.lock.writeLock().lock();
+        try {
+            Integer position = this.positions.get(rental.getId());
+            if (position != null) {
+                this.stars[position] = rental.getStars();
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        this.lock.readLock().lock();
+        try {
+            return this.size;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rentals that pass the location, guests, rate and stars filters,
+     * in the order they were added.
+     * They must still be checked with filter.matches() for the time period.
+     */
+    public ArrayList<Rental> select(RentalFilter filter) {
+        this.lock.readLock().lock();
+        try {
+            int[] selection = new int[this.size];
+            int selected;
+
+            // The first filter reads every position,
+            // the next ones only the selected positions
+            if (filter.getLocation() != null) {
+                Integer code = this.locationCodes.get(RentalIndex.locationKey(filter.getLocation()));
+                if (code == null) {
+                    return new ArrayList<>();
+                }
+                selected = selectLocation(this.locations, this.size, code, selection);
+            } else {
+                for (int i = 0; i < this.size; i++) {
+                    selection[i] = i;
+                }
+                selected = this.size;
+            }
+            if (filter.getGuests() != null) {
+                selected = selectCapacity(this.capacities, filter.getGuests(), selection, selected);
+            }
+            if (filter.getMaxNightlyRate() != null) {
+                selected = selectNightlyRate(this.nightlyRates, filter.getMaxNightlyRate(), selection, selected);
+            }
+            if (filter.getMinStars() != null) {
+                selected = selectStars(this.stars, filter.getMinStars(), selection, selected);
+            }
+
+            // Read the Rental objects of the survivors only
+            ArrayList<Rental> result = new ArrayList<>(selected);
+            for (int i = 0; i < selected; i++) {
+                result.add(this.rentals[selection[i]]);
+            }
+            return result;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    // The loops below write every position and advance
+    // only past the ones that pass, without branches
+
+    private static int selectLocation(int[] locations, int size, int code, int[] selection) {
+        int selected = 0;
+        for (int i = 0; i < size; i++) {
+            selection[selected] = i;
+            selected += (locations[i] == code) ? 1 : 0;
+        }
+        return selected;
+    }
+
+    private static int selectCapacity(int[] capacities, int guests, int[] selection, int selected) {
+        // Same bounds as the GUESTS filter
+        int maxCapacity = guests + 2;
+        int kept = 0;
+        for (int i = 0; i < selected; i++) {
+            int position = selection[i];
+            int capacity = capacities[position];
+            selection[kept] = position;
+            kept += (capacity >= guests & capacity <= maxCapacity) ? 1 : 0;
+        }
+        return kept;
+    }
+
+    private static int selectNightlyRate(double[] nightlyRates, double maxNightlyRate, int[] selection, int selected) {
+        int kept = 0;
+        for (int i = 0; i < selected; i++) {
+            int position = selection[i];
+            selection[kept] = position;
+            kept += (nightlyRates[position] <= maxNightlyRate) ? 1 : 0;
+        }
+        return kept;
+    }
+
+    private static int selectStars(double[] stars, double minStars, int[] selection, int selected) {
+        int kept = 0;
+        for (int i = 0; i < selected; i++) {
+            int position = selection[i];
+            selection[kept] = position;
+            kept += (stars[position] >= minStars) ? 1 : 0;
+        }
+        return kept;
+    }
+
+    @Override
+    public String toString() {
+        this.lock.readLock().lock();
+        try {
+            return String.format("RentalColumns[rentals=%d, locations=%d]", this.size, this.locationCodes.size());
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+}
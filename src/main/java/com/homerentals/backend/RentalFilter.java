@@ -0,0 +1,195 @@
+package com.homerentals.backend;
+
+import com.homerentals.domain.DomainUtils;
+import com.homerentals.domain.Filters;
+import com.homerentals.domain.Rental;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/*
+Filters of a search, parsed once per request.
+Rental.matchesFilter() parses the filter values for every rental,
+here each filter becomes a typed condition. The conditions run
+in a fixed order by cost, or, once orderBy() has the estimates
+of RentalIndex, from the one that keeps the fewest rentals,
+and the time period always runs last,
+so most rentals are rejected before their calendar is read.
+Matches exactly the rentals that Rental.matchesFilter() matches.
+ */
+public class RentalFilter {
+    // Order of the conditions without estimates: a location usually
+    // rejects most rentals, guests, rate and stars are field comparisons,
+    // and the availability reads the calendar of the rental
+    private static final Filters[] ORDER = {
+            Filters.LOCATION,
+            Filters.GUESTS,
+            Filters.NIGHTLY_RATE,
+            Filters.STARS,
+            Filters.TIME_PERIOD
+    };
+
+    // A typed filter and its value
+    private static final class Condition {
+        private final Filters filter;
+        private final String value;
+        private final Predicate<Rental> predicate;
+
+        private Condition(Filters filter, String value, Predicate<Rental> predicate) {
+            this.filter = filter;
+            this.value = value;
+            this.predicate = predicate;
+        }
+    }
+
+    private final ArrayList<Condition> conditions = new ArrayList<>();
+
+    // Parsed values of the filters that RentalIndex can look up, null if not filtered
+    private String location = null;
+    private Integer guests = null;
+    private Double maxNightlyRate = null;
+    private Double minStars = null;
+    // Epoch days of the time period, both included
+    private Long startDay = null;
+    private Long endDay = null;
+
+    private RentalFilter() {
+    }
+
+    /**
+     * @param filters filter names of Filters and their values, empty values match every rental
+     * @throws IllegalArgumentException if a filter name is unknown
+     * @throws NumberFormatException if a number filter is not a number
+     * @throws java.time.format.DateTimeParseException if the time period is not valid
+     */
+    public static RentalFilter compile(Map<String, String> filters) {
+        for (String filter : filters.keySet()) {
+            // Same error as Rental.matchesFilter()
+            Filters.valueOf(filter);
+        }
+
+        RentalFilter rentalFilter = new RentalFilter();
+        for (Filters filter : ORDER) {
+            String value = filters.get(filter.name());
+            if (value == null || value.isEmpty()) {
+                continue;
+            }
+            rentalFilter.conditions.add(new Condition(filter, value, rentalFilter.compile(filter, value)));
+        }
+        return rentalFilter;
+    }
+
+    /**
+     * Runs the conditions from the one that keeps the fewest rentals,
+     * e.g. a nightly rate that almost no rental is under before a
+     * location that every rental is in. The time period stays last,
+     * it reads the calendar of the rental. Conditions without an
+     * estimate keep their place after the estimated ones.
+     *
+     * @param estimates rentals that each filter keeps, from RentalIndex.estimates()
+     */
+    public void orderBy(Map<Filters, Integer> estimates) {
+        // Stable, so equal estimates keep the fixed order
+        this.conditions.sort(Comparator.comparingLong(condition -> {
+            if (condition.filter == Filters.TIME_PERIOD) {
+                return Long.MAX_VALUE;
+            }
+            Integer estimate = estimates.get(condition.filter);
+            return (estimate == null) ? Integer.MAX_VALUE + 1L : estimate;
+        }));
+    }
+
+    private Predicate<Rental> compile(Filters filter, String value) {
+        switch (filter) {
+            case LOCATION:
+                this.location = value;
+                return rental -> rental.getLocation().equalsIgnoreCase(value);
+
+            case TIME_PERIOD:
+                String[] split = value.split("-");
+                LocalDate startDate = LocalDate.parse(split[0], DomainUtils.dateFormatter);
+                LocalDate endDate = LocalDate.parse(split[1], DomainUtils.dateFormatter);
+                if (!endDate.isBefore(startDate)) {
+                    // An invalid period is left to Rental.getAvailability() to reject
+                    this.startDay = startDate.toEpochDay();
+                    this.endDay = endDate.toEpochDay();
+                }
+                return rental -> rental.getAvailability(startDate, endDate);
+
+            case GUESTS:
+                // Only accept amount of guests that are at most smaller by 2
+                int guests = Integer.parseInt(value);
+                this.guests = guests;
+                return rental -> rental.getCapacity() >= guests && rental.getCapacity() <= guests + 2;
+
+            case NIGHTLY_RATE:
+                double maxRate = Double.parseDouble(value);
+                this.maxNightlyRate = maxRate;
+                return rental -> rental.getNightlyRate() <= maxRate;
+
+            case STARS:
+                double minStars = Double.parseDouble(value);
+                this.minStars = minStars;
+                return rental -> rental.getStars() >= minStars;
+
+            default:
+                throw new IllegalArgumentException("Filter type not recognized: " + filter);
+        }
+    }
+
+    public String getLocation() {
+        return this.location;
+    }
+
+    public Integer getGuests() {
+        return this.guests;
+    }
+
+    public Double getMaxNightlyRate() {
+        return this.maxNightlyRate;
+    }
+
+    public Double getMinStars() {
+        return this.minStars;
+    }
+
+    public Long getStartDay() {
+        return this.startDay;
+    }
+
+    public Long getEndDay() {
+        return this.endDay;
+    }
+
+    /*
+    True if a filter other than the time period is set
+     */
+    public boolean hasFieldFilters() {
+        return this.location != null || this.guests != null || this.maxNightlyRate != null || this.minStars != null;
+    }
+
+    public boolean matches(Rental rental) {
+        for (Condition condition : this.conditions) {
+            if (!condition.predicate.test(rental)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        if (this.conditions.isEmpty()) {
+            return "all";
+        }
+        // In the order the conditions run
+        StringBuilder description = new StringBuilder();
+        for (Condition condition : this.conditions) {
+            description.append((description.length() == 0) ? "" : " && ").append(condition.filter).append('=').append(condition.value);
+        }
+        return description.toString();
+    }
+}
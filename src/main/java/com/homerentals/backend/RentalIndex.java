@@ -0,0 +1,336 @@
+package com.homerentals.backend;
+
+import com.homerentals.domain.AvailabilityBitSet;
+import com.homerentals.domain.Filters;
+import com.homerentals.domain.Rental;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+Secondary indexes of the rentals of a Worker.
+Each rental gets an ordinal, its position in the order the rentals
+were added, and the indexes hold ordinals:
+ - location, case-insensitive
+ - nightly rate and capacity, sorted
+ - stars, one bucket per half star
+ - availability, the rentals available on each day
+Location, rate and capacity never change, the stars
+bucket of a rental changes when it is rated and its
+days change with its bookings and availability updates.
+A time period is the intersection of the rentals of its days.
+candidates() intersects the ordinals of the filters, so the Mapper
+only checks the rentals that can match, still in the order
+they were added.
+ */
+public class RentalIndex {
+    // Growable, sorted list of ordinals
+    private static final class Ordinals {
+        private int[] values = new int[4];
+        private int size = 0;
+
+        private void add(int ordinal) {
+            if (this.size == this.values.length) {
+                this.values = Arrays.copyOf(this.values, this.size * 2);
+            }
+            this.values[this.size++] = ordinal;
+        }
+
+        private void addTo(BitSet bits) {
+            for (int i = 0; i < this.size; i++) {
+                bits.set(this.values[i]);
+            }
+        }
+    }
+
+    // Ordinals of the rentals that one filter allows
+    private static final class Lookup {
+        private final Filters filter;
+        private final int estimate;
+        private final Collection<Ordinals> lists;
+        private final Collection<BitSet> buckets;
+
+        private Lookup(Filters filter, Collection<Ordinals> lists, Collection<BitSet> buckets) {
+            this.filter = filter;
+            this.lists = lists;
+            this.buckets = buckets;
+            int estimate = 0;
+            for (Ordinals list : lists) {
+                estimate += list.size;
+            }
+            for (BitSet bucket : buckets) {
+                estimate += bucket.cardinality();
+            }
+            this.estimate = estimate;
+        }
+
+        private BitSet toBits() {
+            BitSet bits = new BitSet();
+            for (Ordinals list : this.lists) {
+                list.addTo(bits);
+            }
+            for (BitSet bucket : this.buckets) {
+                bits.or(bucket);
+            }
+            return bits;
+        }
+    }
+
+    // Scan every rental if the most selective filter keeps more than
+    // 1/SCAN_RATIO of them, reading them in order is cheaper than the index
+    private static final int SCAN_RATIO = 4;
+    // Intersect the next index only if it is not much larger than the
+    // rentals left, else checking those rentals is cheaper than reading it
+    private static final int INTERSECT_RATIO = 2;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ArrayList<Rental> rentals = new ArrayList<>();
+    private final IdentityHashMap<Rental, Integer> ordinals = new IdentityHashMap<>();
+    private final HashMap<String, Ordinals> byLocation = new HashMap<>();
+    private final TreeMap<Double, Ordinals> byNightlyRate = new TreeMap<>();
+    private final TreeMap<Integer, Ordinals> byCapacity = new TreeMap<>();
+    private final TreeMap<Double, BitSet> byStars = new TreeMap<>();
+    // Epoch day to the rentals available on it, days without any are left out
+    private final HashMap<Long, BitSet> availableOn = new HashMap<>();
+
+    /*
+    Same key for locations that String.equalsIgnoreCase() finds equal
+     */
+    protected static String locationKey(String location) {
+        StringBuilder key = new StringBuilder(location.length());
+        for (int i = 0; i < location.length(); i++) {
+            key.append(Character.toLowerCase(Character.toUpperCase(location.charAt(i))));
+        }
+        return key.toString();
+    }
+
+    public void add(Rental rental) {
+        this.lock.writeLock().lock();
+        try {
+            int ordinal = this.rentals.size();
+            this.rentals.add(rental);
+            this.ordinals.put(rental, ordinal);
+            this.byLocation.computeIfAbsent(locationKey(rental.getLocation()), k -> new Ordinals()).add(ordinal);
+            this.byNightlyRate.computeIfAbsent(rental.getNightlyRate(), k -> new Ordinals()).add(ordinal);
+            this.byCapacity.computeIfAbsent(rental.getCapacity(), k -> new Ordinals()).add(ordinal);
+            this.byStars.computeIfAbsent(rental.getStars(), k -> new BitSet()).set(ordinal);
+            AvailabilityBitSet availability = rental.getAvailabilityBitSet();
+            if (!availability.isEmpty()) {
+                this.indexAvailability(ordinal, availability, availability.getFirstDay(), availability.getLastDay());
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private void indexAvailability(int ordinal, AvailabilityBitSet availability, long fromDay, long toDay) {
+        for (long day = fromDay; day <= toDay; day++) {
+            if (availability.get(day)) {
+                this.availableOn.computeIfAbsent(day, k -> new BitSet()).set(ordinal);
+                continue;
+            }
+            BitSet available = this.availableOn.get(day);
+            if (available != null) {
+                available.clear(ordinal);
+                if (available.isEmpty()) {
+                    this.availableOn.remove(day);
+                }
+            }
+        }
+    }
+
+    /*
+    Copies the availability of a rental from startDate to endDate
+    after a booking or an availability update of those days
+     */
+    public void updateAvailability(Rental rental, LocalDate startDate, LocalDate endDate) {
+        if (endDate.isBefore(startDate)) {
+            return;
+        }
+        this.lock.writeLock().lock();
+        try {
+            Integer ordinal = this.ordinals.get(rental);
+            if (ordinal != null) {
+                this.indexAvailability(ordinal, rental.getAvailabilityBitSet(), startDate.toEpochDay(), endDate.toEpochDay());
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /*
+    Rentals available on every day from fromDay to toDay
+     */
+    private BitSet availableBetween(long fromDay, long toDay) {
+        BitSet available = null;
+        for (long day = fromDay; day <= toDay; day++) {
+            BitSet onDay = this.availableOn.get(day);
+            if (onDay == null) {
+                return new BitSet();
+            }
+            if (available == null) {
+                available = (BitSet) onDay.clone();
+            } else {
+                available.and(onDay);
+            }
+            if (available.isEmpty()) {
+                break;
+            }
+        }
+        return available;
+    }
+
+    /*
+    Moves a rental to the bucket of its stars after a rating
+     */
+    public void updateStars(Rental rental, double previousStars) {
+        this.lock.writeLock().lock();
+        try {
+            Integer ordinal = this.ordinals.get(rental);
+            if (ordinal == null) {
+                return;
+            }
+            BitSet previous = this.byStars.get(previousStars);
+            if (previous != null) {
+                previous.clear(ordinal);
+                if (previous.isEmpty()) {
+                    this.byStars.remove(previousStars);
+                }
+            }
+            this.byStars.computeIfAbsent(rental.getStars(), k -> new BitSet()).set(ordinal);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        this.lock.readLock().lock();
+        try {
+            return this.rentals.size();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /*
+    Lookups of the filters on the rental fields,
+    each one only sums the sizes of the lists and buckets it covers
+     */
+    private ArrayList<Lookup> fieldLookupsOf(RentalFilter filter) {
+        ArrayList<Lookup> lookups = new ArrayList<>();
+        ArrayList<BitSet> noBuckets = new ArrayList<>();
+        if (filter.getLocation() != null) {
+            Ordinals list = this.byLocation.get(locationKey(filter.getLocation()));
+            lookups.add(new Lookup(Filters.LOCATION, (list == null) ? new ArrayList<>() : List.of(list), noBuckets));
+        }
+        if (filter.getGuests() != null) {
+            int guests = filter.getGuests();
+            // Same bounds as the GUESTS filter, an overflow matches nothing
+            int maxCapacity = guests + 2;
+            Collection<Ordinals> lists = (maxCapacity < guests) ? new ArrayList<>() : this.byCapacity.subMap(guests, true, maxCapacity, true).values();
+            lookups.add(new Lookup(Filters.GUESTS, lists, noBuckets));
+        }
+        if (filter.getMaxNightlyRate() != null) {
+            lookups.add(new Lookup(Filters.NIGHTLY_RATE, this.byNightlyRate.headMap(filter.getMaxNightlyRate(), true).values(), noBuckets));
+        }
+        if (filter.getMinStars() != null) {
+            lookups.add(new Lookup(Filters.STARS, new ArrayList<>(), this.byStars.tailMap(filter.getMinStars(), true).values()));
+        }
+        return lookups;
+    }
+
+    private ArrayList<Lookup> lookupsOf(RentalFilter filter) {
+        ArrayList<Lookup> lookups = this.fieldLookupsOf(filter);
+        if (filter.getStartDay() != null) {
+            lookups.add(new Lookup(Filters.TIME_PERIOD, new ArrayList<>(),
+                    List.of(this.availableBetween(filter.getStartDay(), filter.getEndDay()))));
+        }
+        return lookups;
+    }
+
+    /**
+     * Rentals that each filter on the rental fields keeps,
+     * for RentalFilter.orderBy(). The time period is left out,
+     * its estimate costs as much as the lookup itself.
+     */
+    public HashMap<Filters, Integer> estimates(RentalFilter filter) {
+        this.lock.readLock().lock();
+        try {
+            HashMap<Filters, Integer> estimates = new HashMap<>();
+            for (Lookup lookup : this.fieldLookupsOf(filter)) {
+                estimates.put(lookup.filter, lookup.estimate);
+            }
+            return estimates;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rentals that can match the filter, in the order they were added.
+     * They must still be checked with filter.matches().
+     *
+     * @return null if no filter can use the indexes
+     */
+    public ArrayList<Rental> candidates(RentalFilter filter) {
+        this.lock.readLock().lock();
+        try {
+            ArrayList<Lookup> lookups = this.lookupsOf(filter);
+            if (lookups.isEmpty()) {
+                return null;
+            }
+
+            // Start from the most selective filter
+            lookups.sort(Comparator.comparingInt(lookup -> lookup.estimate));
+            Lookup first = lookups.get(0);
+            if (first.estimate > this.rentals.size() / SCAN_RATIO) {
+                return null;
+            }
+            boolean intersect = lookups.size() > 1 && lookups.get(1).estimate <= INTERSECT_RATIO * first.estimate;
+
+            ArrayList<Rental> candidates = new ArrayList<>(first.estimate);
+            if (!intersect && first.lists.size() == 1 && first.buckets.isEmpty()) {
+                // One sorted list, e.g. a location
+                Ordinals list = first.lists.iterator().next();
+                for (int i = 0; i < list.size; i++) {
+                    candidates.add(this.rentals.get(list.values[i]));
+                }
+                return candidates;
+            }
+
+            BitSet bits = first.toBits();
+            for (int i = 1; intersect && i < lookups.size() && !bits.isEmpty(); i++) {
+                if (lookups.get(i).estimate > INTERSECT_RATIO * bits.cardinality()) {
+                    break;
+                }
+                bits.and(lookups.get(i).toBits());
+            }
+            for (int ordinal = bits.nextSetBit(0); ordinal >= 0; ordinal = bits.nextSetBit(ordinal + 1)) {
+                candidates.add(this.rentals.get(ordinal));
+            }
+            return candidates;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        this.lock.readLock().lock();
+        try {
+            return String.format("RentalIndex[rentals=%d, locations=%d, rates=%d, capacities=%d, stars=%d, days=%d]",
+                    this.rentals.size(), this.byLocation.size(), this.byNightlyRate.size(), this.byCapacity.size(), this.byStars.size(), this.availableOn.size());
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+}
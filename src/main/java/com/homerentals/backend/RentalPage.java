@@ -0,0 +1,178 @@
+package com.homerentals.backend;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+
+/*
+Sort order, limit and cursor of a GET_RENTALS search.
+Rentals are ordered by the sort key and then by id,
+so every rental has a unique position and the cursor
+(sort value and id of the last rental of a page)
+tells exactly where the next page starts.
+ */
+public class RentalPage {
+    public enum SortKey {
+        RENTAL_ID,
+        NIGHTLY_RATE,
+        STARS,
+        CAPACITY;
+
+        // Cheapest first, best rated and largest first
+        public boolean isDescendingByDefault() {
+            return this == STARS || this == CAPACITY;
+        }
+    }
+
+    public static final String SORT_ORDER_ASC = "ASC";
+    public static final String SORT_ORDER_DESC = "DESC";
+
+    private final SortKey sortKey;
+    private final boolean descending;
+    private final int limit;
+
+    // Position of the last rental of the previous page
+    private final boolean hasCursor;
+    private final double cursorValue;
+    private final int cursorId;
+
+    public RentalPage(SortKey sortKey, boolean descending, int limit) {
+        this(sortKey, descending, limit, false, 0, 0);
+    }
+
+    private RentalPage(SortKey sortKey, boolean descending, int limit, boolean hasCursor, double cursorValue, int cursorId) {
+        if (limit < 1 || limit > BackendUtils.MAX_PAGE_LIMIT) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + BackendUtils.MAX_PAGE_LIMIT);
+        }
+        this.sortKey = sortKey;
+        this.descending = descending;
+        this.limit = limit;
+        this.hasCursor = hasCursor;
+        this.cursorValue = cursorValue;
+        this.cursorId = cursorId;
+    }
+
+    /**
+     * Reads the page of a GET_RENTALS request body.
+     *
+     * @return null if the request does not ask for sorting or paging
+     * @throws IllegalArgumentException if a field is not valid
+     */
+    public static RentalPage fromJSON(JSONObject body) {
+        if (!body.has(BackendUtils.BODY_FIELD_SORT_BY) && !body.has(BackendUtils.BODY_FIELD_LIMIT) && !body.has(BackendUtils.BODY_FIELD_CURSOR)) {
+            return null;
+        }
+
+        SortKey sortKey = SortKey.RENTAL_ID;
+        if (body.has(BackendUtils.BODY_FIELD_SORT_BY)) {
+            String sortBy = body.getString(BackendUtils.BODY_FIELD_SORT_BY);
+            try {
+                sortKey = SortKey.valueOf(sortBy.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown sort key: " + sortBy);
+            }
+        }
+
+        boolean descending = sortKey.isDescendingByDefault();
+        if (body.has(BackendUtils.BODY_FIELD_SORT_ORDER)) {
+            String order = body.getString(BackendUtils.BODY_FIELD_SORT_ORDER);
+            if (!order.equalsIgnoreCase(SORT_ORDER_ASC) && !order.equalsIgnoreCase(SORT_ORDER_DESC)) {
+                throw new IllegalArgumentException("Sort order must be " + SORT_ORDER_ASC + " or " + SORT_ORDER_DESC);
+            }
+            descending = order.equalsIgnoreCase(SORT_ORDER_DESC);
+        }
+
+        int limit = body.optInt(BackendUtils.BODY_FIELD_LIMIT, BackendUtils.DEFAULT_PAGE_LIMIT);
+
+        if (!body.has(BackendUtils.BODY_FIELD_CURSOR)) {
+            return new RentalPage(sortKey, descending, limit);
+        }
+        String[] cursor = body.getString(BackendUtils.BODY_FIELD_CURSOR).split(":");
+        if (cursor.length != 2) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        try {
+            return new RentalPage(sortKey, descending, limit, true, Double.parseDouble(cursor[0]), Integer.parseInt(cursor[1]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    public SortKey getSortKey() {
+        return this.sortKey;
+    }
+
+    public boolean isDescending() {
+        return this.descending;
+    }
+
+    public int getLimit() {
+        return this.limit;
+    }
+
+    private double valueOf(RentalSummary rental) {
+        switch (this.sortKey) {
+            case NIGHTLY_RATE:
+                return rental.getNightlyRate();
+            case STARS:
+                return rental.getStars();
+            case CAPACITY:
+                return rental.getCapacity();
+            default:
+                return rental.getId();
+        }
+    }
+
+    private int compare(double valueA, int idA, double valueB, int idB) {
+        int result = Double.compare(valueA, valueB);
+        if (this.descending) {
+            result = -result;
+        }
+        return (result != 0) ? result : Integer.compare(idA, idB);
+    }
+
+    public Comparator<RentalSummary> comparator() {
+        return (a, b) -> this.compare(this.valueOf(a), a.getId(), this.valueOf(b), b.getId());
+    }
+
+    /*
+    True if rental comes after the cursor,
+    i.e. it was not part of a previous page
+     */
+    public boolean isAfterCursor(RentalSummary rental) {
+        return !this.hasCursor || this.compare(this.valueOf(rental), rental.getId(), this.cursorValue, this.cursorId) > 0;
+    }
+
+    /*
+    Cursor of the page that starts after rental
+     */
+    public String cursorAfter(RentalSummary rental) {
+        return this.valueOf(rental) + ":" + rental.getId();
+    }
+
+    /**
+     * Merges two sorted runs of rentals.
+     *
+     * @return the first limit rentals of both runs, sorted
+     */
+    public ArrayList<RentalSummary> merge(ArrayList<RentalSummary> a, ArrayList<RentalSummary> b) {
+        Comparator<RentalSummary> comparator = this.comparator();
+        ArrayList<RentalSummary> merged = new ArrayList<>(Math.min(this.limit, a.size() + b.size()));
+        int i = 0, j = 0;
+        while (merged.size() < this.limit && (i < a.size() || j < b.size())) {
+            if (j >= b.size() || (i < a.size() && comparator.compare(a.get(i), b.get(j)) <= 0)) {
+                merged.add(a.get(i++));
+            } else {
+                merged.add(b.get(j++));
+            }
+        }
+        return merged;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s, limit %d%s", this.sortKey, this.descending ? SORT_ORDER_DESC : SORT_ORDER_ASC, this.limit,
+                this.hasCursor ? ", after " + this.cursorValue + ":" + this.cursorId : "");
+    }
+}
@@ -0,0 +1,148 @@
+package com.homerentals.backend;
+
+import com.homerentals.domain.Booking;
+import com.homerentals.domain.Rental;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+
+/*
+Projection of a Rental that the Mapper sends to the Reducer.
+Only the fields the request needs are filled in,
+so map results grow with the answer and not with
+the calendars and booking history of the Worker.
+ */
+public class RentalSummary {
+    public enum Projection {
+        // Fields of Rental.toJSON(), for GET_RENTALS
+        CATALOG,
+        // Name, location and bookings that have not passed, for GET_ALL_BOOKINGS
+        UPCOMING_BOOKINGS;
+
+        public static Projection of(Requests header) {
+            return (header == Requests.GET_ALL_BOOKINGS) ? UPCOMING_BOOKINGS : CATALOG;
+        }
+    }
+
+    private final Projection projection;
+    private final int id;
+    private final String roomName;
+    private final String location;
+
+    // CATALOG
+    private final double nightlyRate;
+    private final int capacity;
+    private final double stars;
+    private final int numOfRatings;
+    private final String imgUrl;
+
+    // UPCOMING_BOOKINGS
+    private final ArrayList<Booking> bookings;
+
+    RentalSummary(Projection projection, int id, String roomName, String location,
+                  double nightlyRate, int capacity, double stars, int numOfRatings, String imgUrl,
+                  ArrayList<Booking> bookings) {
+        this.projection = projection;
+        this.id = id;
+        this.roomName = roomName;
+        this.location = location;
+        this.nightlyRate = nightlyRate;
+        this.capacity = capacity;
+        this.stars = stars;
+        this.numOfRatings = numOfRatings;
+        this.imgUrl = imgUrl;
+        this.bookings = bookings;
+    }
+
+    public static RentalSummary of(Rental rental, Projection projection) {
+        if (projection == Projection.UPCOMING_BOOKINGS) {
+            ArrayList<Booking> upcoming = new ArrayList<>();
+            synchronized (rental) {
+                for (Booking booking : rental.getBookings()) {
+                    if (!booking.hasPassed()) {
+                        upcoming.add(booking);
+                    }
+                }
+            }
+            return new RentalSummary(projection, rental.getId(), rental.getRoomName(), rental.getLocation(),
+                    0, 0, 0, 0, null, upcoming);
+        }
+        return new RentalSummary(projection, rental.getId(), rental.getRoomName(), rental.getLocation(),
+                rental.getNightlyRate(), rental.getCapacity(), rental.getStars(), rental.getNumOfRatings(), rental.getImageURL(),
+                null);
+    }
+
+    public Projection getProjection() {
+        return this.projection;
+    }
+
+    public int getId() {
+        return this.id;
+    }
+
+    public String getRoomName() {
+        return this.roomName;
+    }
+
+    public String getLocation() {
+        return this.location;
+    }
+
+    public double getNightlyRate() {
+        return this.nightlyRate;
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public double getStars() {
+        return this.stars;
+    }
+
+    public int getNumOfRatings() {
+        return this.numOfRatings;
+    }
+
+    public String getImageURL() {
+        return this.imgUrl;
+    }
+
+    public ArrayList<Booking> getBookings() {
+        return this.bookings;
+    }
+
+    /*
+    Same fields as Rental.toJSON()
+     */
+    public JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        json.put(BackendUtils.BODY_FIELD_RENTAL_ID, this.id);
+        json.put(BackendUtils.BODY_FIELD_RENTAL_NAME, this.roomName);
+        json.put(BackendUtils.BODY_FIELD_RENTAL_LOCATION, this.location);
+        json.put(BackendUtils.BODY_FIELD_RENTAL_NIGHTLY_RATE, this.nightlyRate);
+        json.put(BackendUtils.BODY_FIELD_RENTAL_CAPACITY, this.capacity);
+        json.put(BackendUtils.BODY_FIELD_RENTAL_STARS, this.stars);
+        json.put(BackendUtils.BODY_FIELD_RENTAL_STRING, this.toString());
+        json.put(BackendUtils.BODY_FIELD_RENTAL_IMAGE_URL, this.imgUrl);
+        json.put(BackendUtils.BODY_FIELD_RENTAL_RATINGS_NUM, this.numOfRatings);
+        return json;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof RentalSummary)) return false;
+        return this.id == ((RentalSummary) o).id;
+    }
+
+    @Override
+    public int hashCode() {
+        return Integer.hashCode(this.id);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%s)", this.roomName, this.location);
+    }
+}
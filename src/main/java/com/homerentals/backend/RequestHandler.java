@@ -5,43 +5,61 @@ import com.homerentals.domain.Filters;
 import com.homerentals.domain.Rental;
 import org.json.JSONObject;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.net.Socket;
 import java.time.LocalDate;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 class RequestHandler implements Runnable {
     private DataInputStream serverSocketIn = null;
     private DataOutputStream serverSocketOut = null;
+    private final ReentrantLock writeLock = new ReentrantLock();
 
     protected RequestHandler(Socket serverSocket) throws IOException {
         try {
-            this.serverSocketOut = new DataOutputStream(serverSocket.getOutputStream());
-            this.serverSocketIn = new DataInputStream(serverSocket.getInputStream());
+            this.serverSocketOut = new DataOutputStream(new BufferedOutputStream(serverSocket.getOutputStream()));
+            this.serverSocketIn = new DataInputStream(new BufferedInputStream(serverSocket.getInputStream()));
         } catch (IOException e) {
             System.err.println("\n! RequestHandler(): Error setting up streams:\n" + e);
             throw e;
         }
     }
 
-    private String readServerSocketInput() {
+    private Message readServerSocketInput() {
         try {
-            return this.serverSocketIn.readUTF();
+            return MessageCodec.read(this.serverSocketIn);
+        } catch (EOFException e) {
+            // Server closed the pooled connection
+            System.out.println("\n> RequestHandler.readServerSocketInput(): Server closed connection.");
+            return null;
         } catch (IOException e) {
             System.err.println("\n! RequestHandler.readServerSocketInput(): Error reading Client Socket input:\n" + e);
             return null;
         }
     }
 
-    private void sendServerSocketOutput(String msg) throws IOException {
+    private void sendServerSocketOutput(Message response, long correlationId) throws IOException {
+        // Tag response with the id of the request it answers
+        Message msg = response.withCorrelationId(correlationId);
         try {
             System.out.printf("\n> Sending response : %s%n", msg);
-            this.serverSocketOut.writeUTF(msg);
-            this.serverSocketOut.flush();
+            byte[] frame = MessageCodec.encode(msg);
+            // Requests of this connection are handled concurrently
+            this.writeLock.lock();
+            try {
+                this.serverSocketOut.write(frame);
+                this.serverSocketOut.flush();
+            } finally {
+                this.writeLock.unlock();
+            }
         } catch (IOException e) {
             System.err.println("\n! RequestHandler.sendServerSocketOutput(): Error sending Socket Output:\n" + e);
             throw e;
@@ -62,19 +80,78 @@ class RequestHandler implements Runnable {
         return new LocalDate[]{startDate, endDate};
     }
 
-    private void sendMappingToReducer(int mapId, ArrayList<Rental> rentals, ArrayList<BookingsByLocation> bookingsByLocation) {
-        // Wrap results in object
-        MapResult results = new MapResult(mapId, rentals, bookingsByLocation);
+    /*
+    Time left until the deadline of a map request,
+    Long.MAX_VALUE if the request has no deadline
+     */
+    private static long getRemainingMillis(JSONObject body, long receivedNanos) {
+        if (!body.has(BackendUtils.BODY_FIELD_DEADLINE_MS)) {
+            return Long.MAX_VALUE;
+        }
+        return body.getLong(BackendUtils.BODY_FIELD_DEADLINE_MS) - (System.nanoTime() - receivedNanos) / 1_000_000;
+    }
+
+    /*
+    Time left for the Reducer to wait for the other workers, 0 if none
+     */
+    private static long getPartialDeadline(JSONObject body, long receivedNanos) {
+        long remaining = getRemainingMillis(body, receivedNanos);
+        return (remaining == Long.MAX_VALUE) ? 0 : Math.max(1, remaining);
+    }
+
+    /*
+    Sends the partial result of a map request to the Reducer,
+    with the time that is left for the Reducer to wait for the other workers,
+    and acks the request. Requests that the Server gathers itself
+    are answered with the partial result instead.
+     */
+    private void sendMapResult(Requests header, JSONObject body, long receivedNanos, long correlationId,
+                               ArrayList<RentalSummary> rentals, ArrayList<BookingsByLocation> bookingsByLocation, RentalPage page) throws IOException {
+        int mapId = body.getInt(BackendUtils.BODY_FIELD_MAP_ID);
+        int workerId = body.optInt(BackendUtils.BODY_FIELD_WORKER_ID, MapResult.NO_WORKER);
+        MapResult result = new MapResult(mapId, rentals, bookingsByLocation, page, workerId, getPartialDeadline(body, receivedNanos), 0);
+
+        if (body.optBoolean(BackendUtils.BODY_FIELD_DIRECT_GATHER, false)) {
+            this.sendServerSocketOutput(result.toMessage(), correlationId);
+            return;
+        }
 
         // Send results to reducer
         try {
-            Worker.writeToReducerSocket(results);
+            Worker.writeToReducerSocket(result);
         } catch (IOException e) {
-            System.err.println("\n! RequestHandler.sendMappingToReducer(): Error writing to Reducer Socket:\n" + e);
+            System.err.println("\n! RequestHandler.sendMapResult(): Error writing to Reducer Socket:\n" + e);
+        }
+        this.sendMapAck(header, "OK", correlationId);
+    }
+
+    /*
+    Tells the Server that this worker is done with a map request
+     */
+    private void sendMapAck(Requests header, String status, long correlationId) throws IOException {
+        JSONObject responseBody = new JSONObject();
+        responseBody.put(BackendUtils.BODY_FIELD_STATUS, status);
+        this.sendServerSocketOutput(BackendUtils.createResponse(header, responseBody), correlationId);
+    }
+
+    /*
+    True if the deadline of a map request passed while it was queued.
+    The Reducer sends a partial result without this worker.
+     */
+    private boolean isExpired(Requests header, JSONObject body, long receivedNanos, long correlationId) throws IOException {
+        if (getRemainingMillis(body, receivedNanos) > 0) {
+            return false;
         }
+        System.err.printf("\n! RequestHandler.isExpired(): Deadline of mapId #%d passed, skipping %s.%n", body.getInt(BackendUtils.BODY_FIELD_MAP_ID), header);
+        this.sendMapAck(header, "EXPIRED", correlationId);
+        return true;
     }
 
-    private void handleMapReduceRequest(JSONObject body, Mapper mapper) {
+    private void handleMapReduceRequest(Requests header, JSONObject body, Mapper mapper, long receivedNanos, long correlationId) throws IOException {
+        if (this.isExpired(header, body, receivedNanos, correlationId)) {
+            return;
+        }
+
         // Parse JSON Message
         int mapId = body.getInt(BackendUtils.BODY_FIELD_MAP_ID);
         JSONObject jsonFilters = body.getJSONObject(BackendUtils.BODY_FIELD_FILTERS);
@@ -105,257 +182,367 @@ class RequestHandler implements Runnable {
         System.out.println("> Created filters map: " + filters);
 
         // Perform mapping
-        ArrayList<Rental> mappedRentals = mapper.mapRentalsToFilters(filters);
+        RentalPage page = (header == Requests.GET_RENTALS) ? RentalPage.fromJSON(body) : null;
+        ArrayList<RentalSummary> mappedRentals;
+        if (page != null) {
+            System.out.println("> Sorting page: " + page);
+            mappedRentals = mapper.mapRentalsToPage(filters, page);
+        } else {
+            mappedRentals = mapper.mapRentalsToFilters(filters, RentalSummary.Projection.of(header));
+        }
 
         // Send to reducer
-        this.sendMappingToReducer(mapId, mappedRentals, null);
+        this.sendMapResult(header, body, receivedNanos, correlationId, mappedRentals, null, page);
+    }
+
+    private void sendErrorResponse(Requests header, long correlationId) throws IOException {
+        JSONObject responseBody = new JSONObject();
+        responseBody.put(BackendUtils.BODY_FIELD_STATUS, "ERROR");
+        if (header == Requests.CHECK_AVAILABILITY) {
+            responseBody.put(BackendUtils.BODY_FIELD_AVAILABILITY, "UNAVAILABLE");
+        }
+        Message response = BackendUtils.createResponse(header, responseBody);
+        this.sendServerSocketOutput(response, correlationId);
+    }
+
+    /*
+    Answers a request that failed with an ERROR response.
+    A failed map request also sends the Reducer a failed partial,
+    so the reduction completes without this worker's result.
+     */
+    private void sendFailure(Message request, long receivedNanos) {
+        Requests header = request.getHeader();
+        JSONObject body = request.getBody();
+        long correlationId = request.getCorrelationId();
+        boolean isMapRequest = body != null && body.has(BackendUtils.BODY_FIELD_MAP_ID);
+        if (isMapRequest && !body.optBoolean(BackendUtils.BODY_FIELD_DIRECT_GATHER, false)) {
+            try {
+                int mapId = body.getInt(BackendUtils.BODY_FIELD_MAP_ID);
+                int workerId = body.optInt(BackendUtils.BODY_FIELD_WORKER_ID, MapResult.NO_WORKER);
+                Worker.writeToReducerSocket(MapResult.failed(mapId, workerId, getPartialDeadline(body, receivedNanos)));
+            } catch (IOException | RuntimeException e) {
+                System.err.println("\n! RequestHandler.sendFailure(): Error sending failed partial to Reducer:\n" + e);
+            }
+        }
+
+        try {
+            if (isMapRequest) {
+                // The Server skips answers that are not a MAP_RESULT
+                this.sendMapAck(header, "ERROR", correlationId);
+            } else {
+                this.sendErrorResponse(header, correlationId);
+            }
+        } catch (IOException e) {
+            System.err.println("\n! RequestHandler.sendFailure(): Error answering failed request:\n" + e);
+        }
     }
 
     @Override
     public void run() {
-        String input;
+        // The Server keeps this connection open
+        // and sends many requests over it
+        Message input;
         try {
-            input = this.readServerSocketInput();
-            if (input == null) {
-                System.err.println("\n! RequestHandler.run(): Error reading Master Socket input.");
-                return;
-            }
-            System.out.println("\n> Received: " + input);
-
-            // Handle JSON input
-            JSONObject inputJson = new JSONObject(input);
-            String inputType = inputJson.getString(BackendUtils.MESSAGE_TYPE);
-            JSONObject inputBody = new JSONObject(inputJson.getString(BackendUtils.MESSAGE_BODY));
-            Requests inputHeader = Requests.valueOf(inputJson.getString(BackendUtils.MESSAGE_HEADER));
-
-            Rental rental;
-            JSONObject responseBody, response;
-            LocalDate[] dates;
-            LocalDate startDate, endDate;
-            int rentalId, mapId;
-            String bookingId, startDateString, endDateString;
-            Mapper mapper = new Mapper(Worker.rentals);
-            switch (inputHeader) {
-                // Guest Requests
-                case GET_RENTALS:
-                    this.handleMapReduceRequest(inputBody, mapper);
+            while (true) {
+                input = this.readServerSocketInput();
+                if (input == null) {
                     break;
-
-                case CHECK_AVAILABILITY:
-                    // Parse JSON Object
-                    rentalId = inputBody.getInt(BackendUtils.BODY_FIELD_RENTAL_ID);
-                    dates = this.parseJsonDates(inputBody);
-                    if (dates == null) {
-                        System.err.println("\n! RequestHandler.run(): Error parsing dates.");
-                        break;
+                }
+                System.out.println("\n> Received: " + input);
+
+                // Many requests share this connection,
+                // so do not block reading the next one
+                final Message request = input;
+                // Map requests count their deadline from here
+                final long receivedNanos = System.nanoTime();
+                Worker.requestExecutor.execute(() -> {
+                    try {
+                        this.handleRequest(request, receivedNanos);
+                    } catch (IOException e) {
+                        System.err.println("\n! RequestHandler.run(): Error handling request:\n" + e);
+                        e.printStackTrace();
+                    } catch (RuntimeException e) {
+                        // e.g. a malformed body or a failed mapping,
+                        // answer so the Server does not wait for this request
+                        System.err.println("\n! RequestHandler.run(): Error handling request:\n" + e);
+                        e.printStackTrace();
+                        this.sendFailure(request, receivedNanos);
                     }
-                    startDate = dates[0];
-                    endDate = dates[1];
+                });
+            }
+        } catch (RuntimeException e) {
+            System.err.println("\n! RequestHandler.run(): Error:\n" + e);
+            e.printStackTrace();
+        } finally {
+            try {
+                System.out.println("\n> Closing thread...");
+                this.serverSocketIn.close();
+                this.serverSocketOut.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
 
-                    rental = Worker.idToRental.get(rentalId);
-                    if (rental == null) {
-                        System.err.printf("\n! RequestHandler.run(): Rental with ID %d not found.%n", rentalId);
-                        break;
-                    }
+    private void handleRequest(Message input, long receivedNanos) throws IOException {
+        // Handle JSON input
+        JSONObject inputBody = input.getBody();
+        Requests inputHeader = input.getHeader();
+        long correlationId = input.getCorrelationId();
 
-                    boolean rentalIsAvailable;
-                    synchronized (rental) {
-                        System.out.println("\n> Lock rental #" + rentalId + " for check availability.");
-                        rentalIsAvailable = rental.getAvailability(startDate, endDate);
-                    }
-                    System.out.println(rentalIsAvailable ? "\n> Rental is available." : "\n> Rental is unavailable.");
-                    System.out.println("\n> Checking rental #" + rentalId + "'s availability: " + rental.getAvailability(startDate, endDate));
+        Rental rental;
+        JSONObject responseBody;
+        Message response;
+        LocalDate[] dates;
+        LocalDate startDate, endDate;
+        int rentalId, mapId;
+        String bookingId, startDateString, endDateString;
+        Mapper mapper = new Mapper(Worker.rentals, Worker.rentalIndex, Worker.rentalColumns, Worker.bookingIndex, Worker.scanPool, Worker.scanParallelism);
+        switch (inputHeader) {
+            // Guest Requests
+            case GET_RENTALS:
+                this.handleMapReduceRequest(inputHeader, inputBody, mapper, receivedNanos, correlationId);
+                break;
+
+            case CHECK_AVAILABILITY:
+                // Parse JSON Object
+                rentalId = inputBody.getInt(BackendUtils.BODY_FIELD_RENTAL_ID);
+                dates = this.parseJsonDates(inputBody);
+                if (dates == null) {
+                    System.err.println("\n! RequestHandler.run(): Error parsing dates.");
+                    this.sendErrorResponse(inputHeader, correlationId);
+                    break;
+                }
+                startDate = dates[0];
+                endDate = dates[1];
 
-                    // Send response to Server
-                    responseBody = new JSONObject();
-                    if (rentalIsAvailable) {
-                        responseBody.put(BackendUtils.BODY_FIELD_AVAILABILITY, "AVAILABLE");
-                    } else {
-                        responseBody.put(BackendUtils.BODY_FIELD_AVAILABILITY, "UNAVAILABLE");
-                    }
-                    response = BackendUtils.createResponse(inputHeader.name(), responseBody.toString());
-                    this.sendServerSocketOutput(response.toString());
+                rental = Worker.idToRental.get(rentalId);
+                if (rental == null) {
+                    System.err.printf("\n! RequestHandler.run(): Rental with ID %d not found.%n", rentalId);
+                    this.sendErrorResponse(inputHeader, correlationId);
                     break;
+                }
 
-                case NEW_BOOKING:
-                    // Parse JSON Object
-                    rentalId = inputBody.getInt(BackendUtils.BODY_FIELD_RENTAL_ID);
-                    bookingId = inputBody.getString(BackendUtils.BODY_FIELD_BOOKING_ID);
-                    String email = inputBody.getString(BackendUtils.BODY_FIELD_GUEST_EMAIL);
-                    dates = this.parseJsonDates(inputBody);
-                    if (dates == null) {
-                        System.err.println("\n! RequestHandler.run(): Error parsing dates.");
-                        break;
-                    }
-                    startDate = dates[0];
-                    endDate = dates[1];
-                    startDateString = BackendUtils.dateFormatter.format(startDate);
-                    endDateString = BackendUtils.dateFormatter.format(endDate);
-
-                    rental = Worker.idToRental.get(rentalId);
-                    if (rental == null) {
-                        System.err.printf("\n! RequestHandler.run(): Rental with ID %d not found.%n", rentalId);
-                        break;
-                    }
+                boolean rentalIsAvailable;
+                synchronized (rental) {
+                    System.out.println("\n> Lock rental #" + rentalId + " for check availability.");
+                    rentalIsAvailable = rental.getAvailability(startDate, endDate);
+                }
+                System.out.println(rentalIsAvailable ? "\n> Rental is available." : "\n> Rental is unavailable.");
+                System.out.println("\n> Checking rental #" + rentalId + "'s availability: " + rental.getAvailability(startDate, endDate));
+
+                // Send response to Server
+                responseBody = new JSONObject();
+                if (rentalIsAvailable) {
+                    responseBody.put(BackendUtils.BODY_FIELD_AVAILABILITY, "AVAILABLE");
+                } else {
+                    responseBody.put(BackendUtils.BODY_FIELD_AVAILABILITY, "UNAVAILABLE");
+                }
+                response = BackendUtils.createResponse(inputHeader, responseBody);
+                this.sendServerSocketOutput(response, correlationId);
+                break;
+
+            case NEW_BOOKING:
+                // Parse JSON Object
+                rentalId = inputBody.getInt(BackendUtils.BODY_FIELD_RENTAL_ID);
+                bookingId = inputBody.getString(BackendUtils.BODY_FIELD_BOOKING_ID);
+                String email = inputBody.getString(BackendUtils.BODY_FIELD_GUEST_EMAIL);
+                dates = this.parseJsonDates(inputBody);
+                if (dates == null) {
+                    System.err.println("\n! RequestHandler.run(): Error parsing dates.");
+                    this.sendErrorResponse(inputHeader, correlationId);
+                    break;
+                }
+                startDate = dates[0];
+                endDate = dates[1];
+                startDateString = BackendUtils.dateFormatter.format(startDate);
+                endDateString = BackendUtils.dateFormatter.format(endDate);
+
+                rental = Worker.idToRental.get(rentalId);
+                if (rental == null) {
+                    System.err.printf("\n! RequestHandler.run(): Rental with ID %d not found.%n", rentalId);
+                    this.sendErrorResponse(inputHeader, correlationId);
+                    break;
+                }
 
-                    boolean successfulBooking = false;
-                    synchronized (rental) {
-                        System.out.println("\n> Lock rental #" + rentalId + " for new booking.");
-                        if (rental.getAvailability(startDate, endDate)) {
-                            // Execute booking
-                            Booking booking = new Booking(bookingId, rentalId, email, startDateString, endDateString, rental.getNightlyRate());
-                            rental.addBooking(booking);
-                            successfulBooking = true;
+                boolean successfulBooking = false;
+                synchronized (rental) {
+                    System.out.println("\n> Lock rental #" + rentalId + " for new booking.");
+                    if (rental.getAvailability(startDate, endDate)) {
+                        // Execute booking
+                        Booking booking = new Booking(bookingId, rentalId, email, startDateString, endDateString, rental.getNightlyRate());
+                        rental.addBooking(booking);
+                        Worker.rentalIndex.updateAvailability(rental, startDate, endDate);
+                        if (Worker.bookingIndex != null) {
+                            Worker.bookingIndex.addBooking(rental, booking);
                         }
+                        successfulBooking = true;
                     }
-                    System.out.println(successfulBooking ? "\n> Booking was successful." : "\n> Booking was unsuccessful.");
-                    System.out.println("\n> Checking rental #" + rentalId + "'s availability: " + rental.getAvailability(startDate, endDate));
-
+                }
+                System.out.println(successfulBooking ? "\n> Booking was successful." : "\n> Booking was unsuccessful.");
+                System.out.println("\n> Checking rental #" + rentalId + "'s availability: " + rental.getAvailability(startDate, endDate));
+
+                // Send response to Server
+                responseBody = new JSONObject();
+                if (successfulBooking) {
+                    // Add fields necessary to associate
+                    // booking with GuestAccount
+                    responseBody.put(BackendUtils.BODY_FIELD_STATUS, "OK");
+                    responseBody.put(BackendUtils.BODY_FIELD_GUEST_EMAIL, email);
+                    responseBody.put(BackendUtils.BODY_FIELD_BOOKING_ID, bookingId);
+                    responseBody.put(BackendUtils.BODY_FIELD_RENTAL_ID, rentalId);
+                    responseBody.put(BackendUtils.BODY_FIELD_RENTAL_NAME, rental.getRoomName());
+                    responseBody.put(BackendUtils.BODY_FIELD_RENTAL_LOCATION, rental.getLocation());
+                    responseBody.put(BackendUtils.BODY_FIELD_START_DATE, startDateString);
+                    responseBody.put(BackendUtils.BODY_FIELD_END_DATE, endDateString);
+                } else {
+                    responseBody.put(BackendUtils.BODY_FIELD_STATUS, "ERROR");
+                }
+                response = BackendUtils.createResponse(inputHeader, responseBody);
+                this.sendServerSocketOutput(response, correlationId);
+                break;
+
+            case NEW_RATING:
+                // Parse JSON Object
+                rentalId = inputBody.getInt(BackendUtils.BODY_FIELD_RENTAL_ID);
+                rental = Worker.idToRental.get(rentalId);
+                if (rental == null) {
+                    System.err.printf("\n! RequestHandler.run(): Rental with ID %d not found.%n", rentalId);
                     // Send response to Server
-                    responseBody = new JSONObject();
-                    if (successfulBooking) {
-                        // Add fields necessary to associate
-                        // booking with GuestAccount
-                        responseBody.put(BackendUtils.BODY_FIELD_STATUS, "OK");
-                        responseBody.put(BackendUtils.BODY_FIELD_GUEST_EMAIL, email);
-                        responseBody.put(BackendUtils.BODY_FIELD_BOOKING_ID, bookingId);
-                        responseBody.put(BackendUtils.BODY_FIELD_RENTAL_ID, rentalId);
-                        responseBody.put(BackendUtils.BODY_FIELD_RENTAL_NAME, rental.getRoomName());
-                        responseBody.put(BackendUtils.BODY_FIELD_RENTAL_LOCATION, rental.getLocation());
-                        responseBody.put(BackendUtils.BODY_FIELD_START_DATE, startDateString);
-                        responseBody.put(BackendUtils.BODY_FIELD_END_DATE, endDateString);
-                    } else {
-                        responseBody.put(BackendUtils.BODY_FIELD_STATUS, "ERROR");
-                    }
-                    response = BackendUtils.createResponse(inputHeader.name(), responseBody.toString());
-                    this.sendServerSocketOutput(response.toString());
+                    this.sendErrorResponse(inputHeader, correlationId);
                     break;
+                }
 
-                case NEW_RATING:
-                    // Parse JSON Object
-                    rentalId = inputBody.getInt(BackendUtils.BODY_FIELD_RENTAL_ID);
-                    rental = Worker.idToRental.get(rentalId);
-                    if (rental == null) {
-                        System.err.printf("\n! RequestHandler.run(): Rental with ID %d not found.%n", rentalId);
-                        // Send response to Server
-                        responseBody = new JSONObject();
-                        responseBody.put(BackendUtils.BODY_FIELD_STATUS, "ERROR");
-                        break;
-                    }
-
-                    int rating = inputBody.getInt(BackendUtils.BODY_FIELD_RATING);
-                    synchronized (rental) {
-                        System.out.println("\n> Lock rental #" + rentalId + " for new rating.");
-                        System.out.println("\n> Previous rating: " + rental.getStars());
-                        rental.addRating(rating);
+                int rating = inputBody.getInt(BackendUtils.BODY_FIELD_RATING);
+                synchronized (rental) {
+                    System.out.println("\n> Lock rental #" + rentalId + " for new rating.");
+                    double previousStars = rental.getStars();
+                    System.out.println("\n> Previous rating: " + previousStars);
+                    rental.addRating(rating);
+                    Worker.rentalIndex.updateStars(rental, previousStars);
+                    if (Worker.rentalColumns != null) {
+                        Worker.rentalColumns.updateStars(rental);
                     }
-                    System.out.println("\n> Rating complete.");
-                    System.out.println("\n> Checking rental #" + rentalId + "'s stars: " + rental.getStars());
-
-                    // Send response to Server.
-                    // Add fields necessary to mark
-                    // booking as rated in the guest's account
-                    responseBody = new JSONObject();
-                    responseBody.put(BackendUtils.BODY_FIELD_STATUS, "OK");
-                    responseBody.put(BackendUtils.BODY_FIELD_GUEST_EMAIL, inputBody.getString(BackendUtils.BODY_FIELD_GUEST_EMAIL));
-                    responseBody.put(BackendUtils.BODY_FIELD_BOOKING_ID, inputBody.getString(BackendUtils.BODY_FIELD_BOOKING_ID));
-                    response = BackendUtils.createResponse(inputHeader.name(), responseBody.toString());
-                    this.sendServerSocketOutput(response.toString());
+                }
+                System.out.println("\n> Rating complete.");
+                System.out.println("\n> Checking rental #" + rentalId + "'s stars: " + rental.getStars());
+
+                // Send response to Server.
+                // Add fields necessary to mark
+                // booking as rated in the guest's account
+                responseBody = new JSONObject();
+                responseBody.put(BackendUtils.BODY_FIELD_STATUS, "OK");
+                responseBody.put(BackendUtils.BODY_FIELD_GUEST_EMAIL, inputBody.getString(BackendUtils.BODY_FIELD_GUEST_EMAIL));
+                responseBody.put(BackendUtils.BODY_FIELD_BOOKING_ID, inputBody.getString(BackendUtils.BODY_FIELD_BOOKING_ID));
+                response = BackendUtils.createResponse(inputHeader, responseBody);
+                this.sendServerSocketOutput(response, correlationId);
+                break;
+
+            // Host Requests
+            case NEW_RENTAL:
+                // Create Rental object from JSON
+                rental = BackendUtils.jsonToRentalObject(inputBody);
+                if (rental == null) {
+                    System.err.println("\n! RequestHandler.run(): Error creating Rental object from JSON");
+                    this.sendErrorResponse(inputHeader, correlationId);
                     break;
+                }
 
-                // Host Requests
-                case NEW_RENTAL:
-                    // Create Rental object from JSON
-                    rental = BackendUtils.jsonToRentalObject(inputBody);
-                    if (rental == null) {
-                        System.err.println("\n! RequestHandler.run(): Error creating Rental object from JSON");
-                        return;
+                synchronized (Worker.rentals) {
+                    System.out.println("\n> Lock rentals list for new rental.");
+                    System.out.println("\n> Rentals list before: " + Worker.rentals);
+                    Worker.rentals.add(rental);
+                    Worker.idToRental.put(rental.getId(), rental);
+                    Worker.rentalIndex.add(rental);
+                    if (Worker.bookingIndex != null) {
+                        Worker.bookingIndex.addRental(rental);
                     }
-
-                    synchronized (Worker.rentals) {
-                        System.out.println("\n> Lock rentals list for new rental.");
-                        System.out.println("\n> Rentals list before: " + Worker.rentals);
-                        Worker.rentals.add(rental);
-                        Worker.idToRental.put(rental.getId(), rental);
+                    if (Worker.rentalColumns != null) {
+                        Worker.rentalColumns.add(rental);
                     }
-                    System.out.println("\n> New rental complete.");
-                    System.out.println("\n> Rentals list after: " + Worker.rentals);
-
+                }
+                System.out.println("\n> New rental complete.");
+                System.out.println("\n> Rentals list after: " + Worker.rentals);
+
+                // Send response to Server, once searches can find the rental
+                responseBody = new JSONObject();
+                responseBody.put(BackendUtils.BODY_FIELD_STATUS, "OK");
+                response = BackendUtils.createResponse(inputHeader, responseBody);
+                this.sendServerSocketOutput(response, correlationId);
+                break;
+
+            case UPDATE_AVAILABILITY:
+                // Parse JSON object
+                rentalId = inputBody.getInt(BackendUtils.BODY_FIELD_RENTAL_ID);
+                rental = Worker.idToRental.get(rentalId);
+                if (rental == null) {
+                    System.err.println("\n! RequestHandler.run(): Rental with ID " + rentalId + " not found.");
+                    this.sendErrorResponse(inputHeader, correlationId);
                     break;
+                }
 
-                case UPDATE_AVAILABILITY:
-                    // Parse JSON object
-                    rentalId = inputBody.getInt(BackendUtils.BODY_FIELD_RENTAL_ID);
-                    rental = Worker.idToRental.get(rentalId);
-                    if (rental == null) {
-                        System.err.println("\n! RequestHandler.run(): Rental with ID " + rentalId + " not found.");
-                        break;
-                    }
-
-                    // Get LocalDate objects
-                    dates = this.parseJsonDates(inputBody);
-                    if (dates == null) {
-                        System.err.println("\n! RequestHandler.run(): Error parsing dates.");
-                        break;
-                    }
-                    startDate = dates[0];
-                    endDate = dates[1];
-
-                    boolean successfulChange;
-                    synchronized (rental) {
-                        System.out.println("\n> Lock rental #" + rentalId + " for update availability.");
-                        successfulChange = rental.makeAvailable(startDate, endDate);
+                // Get LocalDate objects
+                dates = this.parseJsonDates(inputBody);
+                if (dates == null) {
+                    System.err.println("\n! RequestHandler.run(): Error parsing dates.");
+                    this.sendErrorResponse(inputHeader, correlationId);
+                    break;
+                }
+                startDate = dates[0];
+                endDate = dates[1];
+
+                boolean successfulChange;
+                synchronized (rental) {
+                    System.out.println("\n> Lock rental #" + rentalId + " for update availability.");
+                    successfulChange = rental.makeAvailable(startDate, endDate);
+                    if (successfulChange) {
+                        Worker.rentalIndex.updateAvailability(rental, startDate, endDate);
                     }
-                    System.out.println(successfulChange ? "\n> Update was successful." : "\n> Update was unsuccessful.");
-                    System.out.println("\n> Checking rental #" + rentalId + "'s availability: " + rental.getAvailability(startDate, endDate));
-
-                    // Send response to Server
-                    responseBody = new JSONObject();
-                    responseBody.put(BackendUtils.BODY_FIELD_STATUS, successfulChange ? "OK" : "ERROR");
-                    response = BackendUtils.createResponse(inputHeader.name(), responseBody.toString());
-                    this.sendServerSocketOutput(response.toString());
+                }
+                System.out.println(successfulChange ? "\n> Update was successful." : "\n> Update was unsuccessful.");
+                System.out.println("\n> Checking rental #" + rentalId + "'s availability: " + rental.getAvailability(startDate, endDate));
+
+                // Send response to Server
+                responseBody = new JSONObject();
+                responseBody.put(BackendUtils.BODY_FIELD_STATUS, successfulChange ? "OK" : "ERROR");
+                response = BackendUtils.createResponse(inputHeader, responseBody);
+                this.sendServerSocketOutput(response, correlationId);
+                break;
+
+            case GET_ALL_BOOKINGS:
+                this.handleMapReduceRequest(inputHeader, inputBody, mapper, receivedNanos, correlationId);
+                break;
+
+            case GET_BOOKINGS_BY_LOCATION:
+                if (this.isExpired(inputHeader, inputBody, receivedNanos, correlationId)) {
                     break;
+                }
 
-                case GET_ALL_BOOKINGS:
-                    this.handleMapReduceRequest(inputBody, mapper);
+                // Parse JSON Message
+                mapId = inputBody.getInt(BackendUtils.BODY_FIELD_MAP_ID);
+                dates = this.parseJsonDates(inputBody);
+                if (dates == null) {
+                    System.err.println("\n! RequestHandler.run(): Error parsing dates.");
+                    this.sendErrorResponse(inputHeader, correlationId);
                     break;
+                }
+                startDate = dates[0];
+                endDate = dates[1];
 
-                case GET_BOOKINGS_BY_LOCATION:
-                    // Parse JSON Message
-                    mapId = inputBody.getInt(BackendUtils.BODY_FIELD_MAP_ID);
-                    dates = this.parseJsonDates(inputBody);
-                    if (dates == null) {
-                        System.err.println("\n! RequestHandler.run(): Error parsing dates.");
-                        break;
-                    }
-                    startDate = dates[0];
-                    endDate = dates[1];
-
-                    // Perform mapping
-                    ArrayList<BookingsByLocation> bookingsByLocations = mapper.mapBookingsToLocations(startDate, endDate);
+                // Perform mapping
+                ArrayList<BookingsByLocation> bookingsByLocations = mapper.mapBookingsToLocations(startDate, endDate);
 
-                    // Send to reducer
-                    for (BookingsByLocation bbl : bookingsByLocations) {
-                        System.out.println("\n> Sending to reducer: " + bbl.getBookingIds());
-                    }
-                    this.sendMappingToReducer(mapId, null, bookingsByLocations);
-                    break;
+                // Send to reducer
+                System.out.println("\n> Bookings by location for mapId #" + mapId);
+                for (BookingsByLocation bbl : bookingsByLocations) {
+                    System.out.printf("\n> Sending to reducer: %s=%d%n", bbl.getLocation(), bbl.getNumOfBookings());
+                }
+                this.sendMapResult(inputHeader, inputBody, receivedNanos, correlationId, null, bookingsByLocations, null);
+                break;
 
-                default:
-                    System.err.println("\n! RequestHandler.run(): Request type not recognized.");
-                    break;
-            }
-        } catch (IOException | RuntimeException e) {
-            System.err.println("\n! RequestHandler.run(): Error:\n" + e);
-            e.printStackTrace();
-        } finally {
-            try {
-                System.out.println("\n> Closing thread...");
-                this.serverSocketIn.close();
-                this.serverSocketOut.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            default:
+                System.err.println("\n! RequestHandler.run(): Request type not recognized.");
+                break;
         }
     }
 }
@@ -18,4 +18,7 @@ public enum Requests {
 
     // Miscellaneous Requests
     CLOSE_CONNECTION,
+    REGISTER_WORKER,
+    MAP_RESULT,
+    REGISTER_REDUCER,
 }
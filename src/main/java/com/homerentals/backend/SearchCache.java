@@ -0,0 +1,326 @@
+package com.homerentals.backend;
+
+import com.homerentals.domain.Filters;
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+Results of GET_RENTALS searches, kept by the Server.
+Entries are evicted least recently used first once their
+estimated size exceeds the budget.
+Writes that go through the Server drop only the entries
+they can change: a new rental drops searches of its location,
+a booking drops date searches that contain the rental,
+new availability drops date searches of the rental's location
+and a rating drops searches that contain the rental or
+filter and sort by stars in its location.
+ */
+class SearchCache {
+    private enum Change {
+        RENTAL_ADDED,
+        BOOKED,
+        AVAILABILITY_UPDATED,
+        RATED
+    }
+
+    private static final class Write {
+        private final long generation;
+        private final Change change;
+        private final int rentalId;
+        // null if the Server does not know the location of the rental
+        private final String location;
+
+        private Write(long generation, Change change, int rentalId, String location) {
+            this.generation = generation;
+            this.change = change;
+            this.rentalId = rentalId;
+            this.location = location;
+        }
+    }
+
+    private static final class Entry {
+        private final MapResult result;
+        private final HashSet<Integer> rentalIds = new HashSet<>();
+        // null if the search is not filtered by location
+        private final String location;
+        private final boolean byDates;
+        private final boolean byStars;
+        private final long bytes;
+        private final long createdMillis;
+
+        private Entry(String key, MapResult result, String location, boolean byDates, boolean byStars, long createdMillis) {
+            this.result = result;
+            this.location = location;
+            this.byDates = byDates;
+            this.byStars = byStars;
+            this.createdMillis = createdMillis;
+
+            long bytes = ENTRY_OVERHEAD_BYTES + 2L * key.length();
+            for (RentalSummary rental : result.getRentals()) {
+                this.rentalIds.add(rental.getId());
+                bytes += RENTAL_OVERHEAD_BYTES + 2L * (length(rental.getRoomName()) + length(rental.getLocation()) + length(rental.getImageURL()));
+            }
+            this.bytes = bytes;
+        }
+
+        private static int length(String s) {
+            return (s == null) ? 0 : s.length();
+        }
+
+        private boolean matchesLocation(String location) {
+            return this.location == null || location == null || this.location.equals(location);
+        }
+
+        private boolean isChangedBy(Write write) {
+            switch (write.change) {
+                case RENTAL_ADDED:
+                    return this.matchesLocation(write.location);
+                case BOOKED:
+                    return this.byDates && this.rentalIds.contains(write.rentalId);
+                case AVAILABILITY_UPDATED:
+                    return this.byDates && this.matchesLocation(write.location);
+                case RATED:
+                    return this.rentalIds.contains(write.rentalId) || (this.byStars && this.matchesLocation(write.location));
+                default:
+                    return true;
+            }
+        }
+    }
+
+    // Rough heap size of an entry and of each rental it holds
+    private static final long ENTRY_OVERHEAD_BYTES = 256;
+    private static final long RENTAL_OVERHEAD_BYTES = 128;
+    // Writes remembered for searches that are still running
+    private static final int RECENT_WRITES = 256;
+
+    private final long maxBytes;
+    private final long maxAgeMillis;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final HashMap<Integer, String> rentalLocations = new HashMap<>();
+    private final ArrayDeque<Write> recentWrites = new ArrayDeque<>();
+    private long bytes = 0;
+    private long generation = 0;
+
+    // Metrics
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long expired = 0;
+    private long invalidations = 0;
+    private long staleRejected = 0;
+    private long hitAgeTotalMillis = 0;
+    private long hitAgeMaxMillis = 0;
+
+    /**
+     * @param maxBytes     estimated size of all entries, 0 disables the cache
+     * @param maxAgeMillis age after which an entry is not used,
+     *                     in case a write reached the worker after a search that started later
+     */
+    SearchCache(long maxBytes, long maxAgeMillis) {
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    private static String normalize(String filter, String value) {
+        value = value.trim();
+        if (filter.equals(Filters.LOCATION.name())) {
+            return value.toLowerCase();
+        }
+        if (filter.equals(Filters.TIME_PERIOD.name())) {
+            return value;
+        }
+        try {
+            return Double.toString(Double.parseDouble(value));
+        } catch (NumberFormatException e) {
+            return value;
+        }
+    }
+
+    private static HashMap<String, String> filtersOf(JSONObject body) {
+        HashMap<String, String> filters = new HashMap<>();
+        JSONObject jsonFilters = body.optJSONObject(BackendUtils.BODY_FIELD_FILTERS);
+        if (jsonFilters == null) {
+            return filters;
+        }
+        for (Filters f : Filters.values()) {
+            String value = jsonFilters.optString(f.name(), "");
+            if (!value.isBlank()) {
+                filters.put(f.name(), normalize(f.name(), value));
+            }
+        }
+        return filters;
+    }
+
+    /**
+     * Same key for searches that the workers answer the same way,
+     * e.g. filters in another order or location in another case.
+     */
+    protected static String keyOf(JSONObject body, RentalPage page) {
+        HashMap<String, String> filters = filtersOf(body);
+        StringBuilder key = new StringBuilder();
+        for (Filters f : Filters.values()) {
+            if (filters.containsKey(f.name())) {
+                key.append(f.name()).append('=').append(filters.get(f.name())).append(';');
+            }
+        }
+        key.append('|').append((page == null) ? "ALL" : page.toString());
+        return key.toString();
+    }
+
+    protected boolean isEnabled() {
+        return this.maxBytes > 0;
+    }
+
+    /**
+     * Read before the search is sent to the workers
+     * and passed to put() with its result.
+     */
+    protected synchronized long getGeneration() {
+        return this.generation;
+    }
+
+    /**
+     * @return the cached result, or null
+     */
+    protected synchronized MapResult get(String key) {
+        if (!this.isEnabled()) {
+            return null;
+        }
+        Entry entry = this.entries.get(key);
+        if (entry == null) {
+            this.misses++;
+            return null;
+        }
+        long age = System.currentTimeMillis() - entry.createdMillis;
+        if (age > this.maxAgeMillis) {
+            this.remove(key, entry);
+            this.expired++;
+            this.misses++;
+            return null;
+        }
+        this.hits++;
+        this.hitAgeTotalMillis += age;
+        this.hitAgeMaxMillis = Math.max(this.hitAgeMaxMillis, age);
+        return entry.result;
+    }
+
+    /**
+     * Caches the result of a search.
+     * The result is not cached if it is partial, or if a write
+     * since generation may have changed it while it was being computed.
+     *
+     * @return true if the result was cached
+     */
+    protected synchronized boolean put(String key, JSONObject body, RentalPage page, MapResult result, long generation) {
+        if (!this.isEnabled() || result.isPartial() || !result.containsRentals()) {
+            return false;
+        }
+
+        HashMap<String, String> filters = filtersOf(body);
+        boolean byStars = filters.containsKey(Filters.STARS.name()) || (page != null && page.getSortKey() == RentalPage.SortKey.STARS);
+        Entry entry = new Entry(key, result, filters.get(Filters.LOCATION.name()), filters.containsKey(Filters.TIME_PERIOD.name()),
+                byStars, System.currentTimeMillis());
+        if (entry.bytes > this.maxBytes) {
+            return false;
+        }
+
+        // Check the writes that happened during the search
+        if (generation < this.generation) {
+            Write oldest = this.recentWrites.peekFirst();
+            if (oldest == null || oldest.generation > generation + 1) {
+                // Some of them are forgotten
+                this.staleRejected++;
+                return false;
+            }
+            for (Write write : this.recentWrites) {
+                if (write.generation > generation && entry.isChangedBy(write)) {
+                    this.staleRejected++;
+                    return false;
+                }
+            }
+        }
+
+        Entry previous = this.entries.put(key, entry);
+        if (previous != null) {
+            this.bytes -= previous.bytes;
+        }
+        this.bytes += entry.bytes;
+
+        // Evict least recently used entries
+        Iterator<Map.Entry<String, Entry>> iterator = this.entries.entrySet().iterator();
+        while (this.bytes > this.maxBytes && iterator.hasNext()) {
+            Entry eldest = iterator.next().getValue();
+            iterator.remove();
+            this.bytes -= eldest.bytes;
+            this.evictions++;
+        }
+        return true;
+    }
+
+    private void remove(String key, Entry entry) {
+        this.entries.remove(key);
+        this.bytes -= entry.bytes;
+    }
+
+    private void apply(Change change, int rentalId, String location) {
+        Write write = new Write(++this.generation, change, rentalId, location);
+        this.recentWrites.addLast(write);
+        if (this.recentWrites.size() > RECENT_WRITES) {
+            this.recentWrites.removeFirst();
+        }
+
+        Iterator<Entry> iterator = this.entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.isChangedBy(write)) {
+                iterator.remove();
+                this.bytes -= entry.bytes;
+                this.invalidations++;
+            }
+        }
+    }
+
+    protected synchronized void onNewRental(int rentalId, String location) {
+        location = (location == null) ? null : normalize(Filters.LOCATION.name(), location);
+        if (location != null) {
+            this.rentalLocations.put(rentalId, location);
+        }
+        this.apply(Change.RENTAL_ADDED, rentalId, location);
+    }
+
+    protected synchronized void onNewBooking(int rentalId) {
+        this.apply(Change.BOOKED, rentalId, this.rentalLocations.get(rentalId));
+    }
+
+    protected synchronized void onAvailabilityUpdate(int rentalId) {
+        this.apply(Change.AVAILABILITY_UPDATED, rentalId, this.rentalLocations.get(rentalId));
+    }
+
+    protected synchronized void onNewRating(int rentalId) {
+        this.apply(Change.RATED, rentalId, this.rentalLocations.get(rentalId));
+    }
+
+    protected synchronized int size() {
+        return this.entries.size();
+    }
+
+    protected synchronized long getBytes() {
+        return this.bytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long lookups = this.hits + this.misses;
+        return String.format("SearchCache[entries=%d, bytes=%d/%d, hits=%d, misses=%d, hitRate=%.1f%%, evictions=%d, expired=%d, " +
+                        "invalidations=%d, staleRejected=%d, hitAgeAvg=%dms, hitAgeMax=%dms]",
+                this.entries.size(), this.bytes, this.maxBytes, this.hits, this.misses,
+                (lookups == 0) ? 0.0 : 100.0 * this.hits / lookups, this.evictions, this.expired,
+                this.invalidations, this.staleRejected, (this.hits == 0) ? 0 : this.hitAgeTotalMillis / this.hits, this.hitAgeMaxMillis);
+    }
+}
@@ -5,27 +5,42 @@ import com.homerentals.domain.*;
 import org.json.JSONObject;
 
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketAddress;
+import java.nio.channels.ServerSocketChannel;
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.EnumSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Server {
     // TODO: Replace System.out.println() with logger in log file.
     protected final static ArrayList<WorkerInfo> workers = new ArrayList<>();
-    protected final static HashMap<Integer, MapResult> mapReduceResults = new HashMap<>();
+    protected final static ArrayList<WorkerConnectionPool> workerPools = new ArrayList<>();
+    // Ack latencies of map requests, one tracker per worker
+    private final static ArrayList<LatencyTracker> mapLatencies = new ArrayList<>();
+    // Hedged map requests and periodic metrics
+    private static ScheduledExecutorService scheduler;
+    private static EnumSet<Requests> directGatherRequests = EnumSet.noneOf(Requests.class);
+    protected final static MapResultRegistry mapReduceResults = new MapResultRegistry();
+    protected final static InFlightMapReduces inFlightMapReduces = new InFlightMapReduces();
+    protected final static SearchCache searchCache = new SearchCache(BackendUtils.getSearchCacheMaxBytes(), BackendUtils.SEARCH_CACHE_MAX_AGE_MS);
     private final static GuestAccountDAO guestAccountDAO = new GuestAccountDAO();
 
     private static int numberOfRentals;
-    private static int mapId;
+    private static int numOfReducers = 1;
+    private final static AtomicInteger mapId = new AtomicInteger();
     private static int bookingId;
 
     // Used for synchronizing server getNextId requests
-    protected final static Object mapIdSyncObj = new Object();
     protected final static Object rentalIdSyncObj = new Object();
     protected final static Object bookingIdSyncObj = new Object();
 
@@ -33,8 +48,12 @@ public class Server {
         return numberOfRentals++;
     }
 
+    protected static int getNumOfReducers() {
+        return numOfReducers;
+    }
+
     public static int getNextMapId() {
-        return mapId++;
+        return mapId.getAndIncrement();
     }
 
     public static String getNextBookingId() {
@@ -84,60 +103,146 @@ public class Server {
         guestAccount.rateBooking(bookingId);
     }
 
-    protected static String sendMessageToWorkerAndWaitForResponse(String msg, int workerId) {
-        WorkerInfo workerInfo = workers.get(workerId);
-        String workerAddress = workerInfo.getAddress();
-        int workerPort = Integer.parseInt(workerInfo.getPort());
-
-        try (Socket workerSocket = new Socket(workerAddress, workerPort);
-             DataOutputStream workerSocketOutput = new DataOutputStream(workerSocket.getOutputStream());
-             DataInputStream workerSocketInput = new DataInputStream(workerSocket.getInputStream())
-        ) {
-            workerSocketOutput.writeUTF(msg);
-            workerSocketOutput.flush();
+    /**
+     * Sends request to worker over a shared connection.
+     *
+     * @return future completed with the response of the worker
+     */
+    protected static CompletableFuture<Message> sendMessageToWorkerAsync(Message request, int workerId) {
+        return workerPools.get(workerId).sendAsync(request);
+    }
 
+    protected static Message sendMessageToWorkerAndWaitForResponse(Message request, int workerId) {
+        CompletableFuture<Message> future = sendMessageToWorkerAsync(request, workerId);
+        try {
             // Receive response
-            return workerSocketInput.readUTF();
-        } catch (IOException e) {
-            System.err.printf("\n! Server.writeToWorkerSocketAndWaitForResponse(): Failed to set up Socket to Worker: %s%n%s%n", workerInfo, e);
+            return future.get(BackendUtils.WORKER_RPC_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            future.cancel(false);
+            System.err.printf("\n! Server.sendMessageToWorkerAndWaitForResponse(): Failed to communicate with Worker: %s%n%s%n", workers.get(workerId), e);
+            return null;
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
             return null;
         }
     }
 
-    private static void writeToWorkerSocket(String msg, int workerId) throws IOException {
-        WorkerInfo workerInfo = workers.get(workerId);
-        String workerAddress = workerInfo.getAddress();
-        int workerPort = Integer.parseInt(workerInfo.getPort());
-
-        try (Socket workerSocket = new Socket(workerAddress, workerPort);
-             DataOutputStream workerSocketOutput = new DataOutputStream(workerSocket.getOutputStream())
-        ) {
-            workerSocketOutput.writeUTF(msg);
-            workerSocketOutput.flush();
+    private static void writeToWorkerSocket(Message request, int workerId) throws IOException {
+        WorkerConnectionPool pool = workerPools.get(workerId);
+        try {
+            pool.send(request);
         } catch (IOException e) {
-            System.err.println("\n! Server.writeToWorkerSocket(): Failed to write to Worker: " + workerInfo);
+            System.err.println("\n! Server.writeToWorkerSocket(): Failed to write to Worker: " + pool.getWorkerInfo());
             throw e;
         }
     }
 
-    protected static void sendMessageToWorker(String msg, int workerId) {
+    protected static void sendMessageToWorker(Message request, int workerId) {
         try {
-            writeToWorkerSocket(msg, workerId);
+            writeToWorkerSocket(request, workerId);
         } catch (IOException e) {
             System.err.println("\n! Server.sendMessageToWorker(): Failed to write to Worker: " + workerId);
         }
     }
 
-    protected static void broadcastMessageToWorkers(String msg) {
+    /*
+    True if the Server gathers the partial results of
+    this request type itself, instead of the Reducer
+     */
+    protected static boolean isGatheredDirectly(Requests header) {
+        return directGatherRequests.contains(header);
+    }
+
+    /**
+     * Sends a map request to every worker.
+     * Each worker gets its own id and the time left until the deadline.
+     * Workers send their partial result to the Reducer and ack the request,
+     * or, when gathered directly, answer with the partial result itself.
+     * With hedging enabled, a worker that has not answered after its usual
+     * p95 latency gets the request once more over a new connection, and the
+     * first answer wins. A hedge goes to the same worker, so it only helps
+     * when the first request is stuck on its connection or queued behind
+     * slower calls on it, not when the worker itself is slow.
+     *
+     * @return future answer of every worker, in worker order
+     */
+    protected static ArrayList<CompletableFuture<Message>> sendMapRequestToWorkers(Requests header, JSONObject body, int mapId, long deadlineMillis) {
+        long start = System.nanoTime();
+        ArrayList<CompletableFuture<Message>> answers = new ArrayList<>(workers.size());
         for (int w = 0; w < workers.size(); w++) {
-            sendMessageToWorker(msg, w);
+            final int workerId = w;
+            // Shallow copy, the fields of the client are shared
+            JSONObject workerBody = new JSONObject();
+            for (String key : body.keySet()) {
+                workerBody.put(key, body.get(key));
+            }
+            workerBody.put(BackendUtils.BODY_FIELD_MAP_ID, mapId);
+            workerBody.put(BackendUtils.BODY_FIELD_WORKER_ID, workerId);
+            workerBody.put(BackendUtils.BODY_FIELD_DEADLINE_MS, deadlineMillis);
+            if (isGatheredDirectly(header)) {
+                workerBody.put(BackendUtils.BODY_FIELD_DIRECT_GATHER, true);
+            }
+            Message request = BackendUtils.createRequest(header, workerBody);
+
+            CompletableFuture<Message> answer = new CompletableFuture<>();
+            sendMessageToWorkerAsync(request, workerId).whenComplete((response, e) -> {
+                if (e != null) {
+                    answer.completeExceptionally(e);
+                } else {
+                    answer.complete(response);
+                }
+            });
+            answer.orTimeout(deadlineMillis + BackendUtils.MAP_REDUCE_DEADLINE_GRACE_MS, TimeUnit.MILLISECONDS);
+            answer.whenComplete((response, e) -> {
+                if (e == null) {
+                    mapLatencies.get(workerId).record(System.nanoTime() - start);
+                }
+            });
+            if (BackendUtils.useHedging()) {
+                scheduleHedge(request, workerId, answer, deadlineMillis);
+            }
+            answers.add(answer);
+        }
+        return answers;
+    }
+
+    private static void scheduleHedge(Message request, int workerId, CompletableFuture<Message> answer, long deadlineMillis) {
+        long delay = Math.max(BackendUtils.HEDGE_MIN_DELAY_MS, TimeUnit.NANOSECONDS.toMillis(mapLatencies.get(workerId).percentile(0.95)));
+        if (delay >= deadlineMillis) {
+            // Too late to help
+            return;
+        }
+        scheduler.schedule(() -> {
+            if (answer.isDone()) {
+                return;
+            }
+            System.out.printf("\n> Server.scheduleHedge(): Worker %s has not answered after %dms, sending request again.%n", workers.get(workerId), delay);
+            mapReduceResults.recordHedge();
+            // Not through the shared connections, where the first request may be stuck
+            CompletableFuture<Message> hedge = workerPools.get(workerId).sendAsyncOnNewConnection(request);
+            // Close the connection of the hedge by the deadline, even if the worker never answers
+            hedge.orTimeout(deadlineMillis + BackendUtils.MAP_REDUCE_DEADLINE_GRACE_MS - delay, TimeUnit.MILLISECONDS);
+            hedge.thenAccept(response -> {
+                if (answer.complete(response)) {
+                    mapReduceResults.recordHedgeWin();
+                }
+            });
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    protected static String getWorkerPoolMetrics() {
+        StringBuilder metrics = new StringBuilder();
+        for (WorkerConnectionPool pool : workerPools) {
+            metrics.append(pool).append(System.lineSeparator());
         }
+        return metrics.toString();
     }
 
     private static void setUpRental(String path, int rentalId, String bookingStartDate, String bookingEndDate) throws InterruptedException {
         JSONObject rentalJson = BackendUtils.readFile(path, true);
         if (rentalJson != null) {
-            BackendUtils.executeNewRentalRequest(rentalJson, Requests.NEW_RENTAL.name());
+            BackendUtils.executeNewRentalRequest(rentalJson, Requests.NEW_RENTAL);
         } else {
             return;
         }
@@ -148,16 +253,16 @@ public class Server {
         body.put(BackendUtils.BODY_FIELD_RENTAL_ID, rentalId);
         body.put(BackendUtils.BODY_FIELD_START_DATE, "01/01/2023");
         body.put(BackendUtils.BODY_FIELD_END_DATE, "31/12/2023");
-        JSONObject request = BackendUtils.createRequest(Requests.UPDATE_AVAILABILITY.name(), body.toString());
-        BackendUtils.executeUpdateAvailability(request.toString(), body);
+        Message request = BackendUtils.createRequest(Requests.UPDATE_AVAILABILITY, body);
+        BackendUtils.executeUpdateAvailability(request);
         Thread.sleep(1000);
         // Make available for 2024
         body = new JSONObject();
         body.put(BackendUtils.BODY_FIELD_RENTAL_ID, rentalId);
         body.put(BackendUtils.BODY_FIELD_START_DATE, "01/01/2024");
         body.put(BackendUtils.BODY_FIELD_END_DATE, "31/12/2024");
-        request = BackendUtils.createRequest(Requests.UPDATE_AVAILABILITY.name(), body.toString());
-        BackendUtils.executeUpdateAvailability(request.toString(), body);
+        request = BackendUtils.createRequest(Requests.UPDATE_AVAILABILITY, body);
+        BackendUtils.executeUpdateAvailability(request);
         Thread.sleep(1000);
 
         // Add new Booking
@@ -167,7 +272,7 @@ public class Server {
             body.put(BackendUtils.BODY_FIELD_START_DATE, bookingStartDate);
             body.put(BackendUtils.BODY_FIELD_END_DATE, bookingEndDate);
             body.put(BackendUtils.BODY_FIELD_GUEST_EMAIL, "guest@example.com");
-            BackendUtils.executeNewBookingRequest(body, Requests.NEW_BOOKING.name());
+            BackendUtils.executeNewBookingRequest(body, Requests.NEW_BOOKING);
             Thread.sleep(1000);
         }
     }
@@ -209,50 +314,69 @@ public class Server {
     }
 
     public static void main(String[] args) {
-        if (args.length != 1) {
-            System.err.println("Usage: java Server <amount_of_workers>");
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: java Server <amount_of_workers> [amount_of_reducers]");
             System.exit(1);
         }
         int amountOfWorkers = 0;
         try {
             amountOfWorkers = Integer.parseInt(args[0]);
+            numOfReducers = (args.length > 1) ? Integer.parseInt(args[1]) : 1;
         } catch (NumberFormatException e) {
-            System.err.println("\n! Server.main(): Invalid argument given for amount of workers.\n" + e);
+            System.err.println("\n! Server.main(): Invalid argument given for amount of workers or reducers.\n" + e);
             System.exit(0);
         }
         workers.clear();
+        workerPools.clear();
+        mapLatencies.clear();
+        System.out.printf("\n> Server.main(): Running handlers on %s threads.%n",
+                BackendUtils.useVirtualThreads() ? BackendUtils.THREAD_MODE_VIRTUAL : BackendUtils.THREAD_MODE_PLATFORM);
 
-        try (ServerSocket serverSocket = new ServerSocket(BackendUtils.SERVER_PORT, 10)) {
-            serverSocket.setReuseAddress(true);
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.socket().setReuseAddress(true);
+            serverChannel.bind(new InetSocketAddress(BackendUtils.SERVER_PORT), BackendUtils.SERVER_BACKLOG);
 
-            // Listen to incoming worker connections
+            // Listen to incoming worker connections.
+            // Channel is still blocking at this point.
             for (int i = 0; i < amountOfWorkers; i++) {
-                Socket workerSocket = serverSocket.accept();
+                Socket workerSocket = serverChannel.accept().socket();
                 SocketAddress workerAddress = workerSocket.getRemoteSocketAddress();
                 System.out.printf("\n> Worker:%s connected.%n", workerAddress);
                 try (DataInputStream workerSocketIn = new DataInputStream(workerSocket.getInputStream())) {
-                    String workerPort = workerSocketIn.readUTF();
-                    workers.add(new WorkerInfo(workerAddress, workerPort));
+                    Message registration = MessageCodec.read(workerSocketIn);
+                    String workerPort = registration.getBody().getString(BackendUtils.BODY_FIELD_WORKER_PORT);
+                    WorkerInfo workerInfo = new WorkerInfo(workerAddress, workerPort);
+                    workers.add(workerInfo);
+                    workerPools.add(new WorkerConnectionPool(workerInfo, BackendUtils.WORKER_POOL_MAX_CONNECTIONS, BackendUtils.WORKER_POOL_MAX_IN_FLIGHT, BackendUtils.WORKER_POOL_BORROW_TIMEOUT_MS));
                 } catch (IOException e) {
                     System.err.println("\n! Server.main(): Failed to read port from Worker: " + workerAddress);
                 }
             }
 
-            // Start thread that listens to Reducer
-            Socket reducerSocket = serverSocket.accept();
-            System.out.printf("\n> Reducer:%s connected.%n", reducerSocket.getInetAddress().toString());
-            ReducerHandler reducerHandler = new ReducerHandler(reducerSocket);
-            new Thread(reducerHandler).start();
+            for (int w = 0; w < workers.size(); w++) {
+                mapLatencies.add(new LatencyTracker(BackendUtils.HEDGE_LATENCY_SAMPLES));
+            }
+            scheduler = Executors.newSingleThreadScheduledExecutor();
+            scheduler.scheduleAtFixedRate(() -> System.out.print("\n> Worker connection pools:\n" + getWorkerPoolMetrics()),
+                    BackendUtils.WORKER_POOL_METRICS_INTERVAL_MS, BackendUtils.WORKER_POOL_METRICS_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            System.out.printf("\n> Server.main(): Hedged map requests are %s.%n", BackendUtils.useHedging() ? "enabled" : "disabled");
+            directGatherRequests = BackendUtils.getDirectGatherRequests();
+            System.out.println("\n> Server.main(): Gathering map results of " + directGatherRequests + " without the Reducer.");
+            System.out.printf("\n> Server.main(): Coalescing of identical map-reduce calls is %s.%n", BackendUtils.useCoalescing() ? "enabled" : "disabled");
+
+            // Start a thread that listens to each Reducer
+            for (int r = 0; r < numOfReducers; r++) {
+                Socket reducerSocket = serverChannel.accept().socket();
+                ReducerHandler reducerHandler = new ReducerHandler(reducerSocket);
+                System.out.printf("\n> Reducer %d:%s connected.%n", reducerHandler.getReducerIndex(), reducerSocket.getInetAddress().toString());
+                BackendUtils.startHandlerThread("ReducerHandler-" + reducerHandler.getReducerIndex(), reducerHandler);
+            }
 
             Server.setUp();
 
-            // Handle client requests
-            while (true) {
-                Socket clientSocket = serverSocket.accept();
-                System.out.println("\n> New client connected: " + clientSocket.getInetAddress().getHostAddress());
-                ClientHandler clientThread = new ClientHandler(clientSocket);
-                new Thread(clientThread).start();
-            }
+            // Handle client requests without a thread per client
+            ClientEventLoop eventLoop = new ClientEventLoop(serverChannel, BackendUtils.CLIENT_EXECUTOR_THREADS, BackendUtils.CLIENT_EXECUTOR_QUEUE_CAPACITY);
+            eventLoop.run();
         } catch (IOException | RuntimeException | InterruptedException e) {
             System.err.println("\n! Server.main(): Error:\n" + e);
             e.printStackTrace();
@@ -1,39 +1,60 @@
 package com.homerentals.backend;
 
 import com.homerentals.domain.Rental;
+import org.json.JSONObject;
 
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 
 public class Worker {
     // TODO: Replace System.out.println() with logger in log file.
     protected final static ArrayList<Rental> rentals = new ArrayList<>();
     protected final static HashMap<Integer, Rental> idToRental = new HashMap<>();
+    // Location, rate, capacity and stars of the rentals, for searches
+    protected final static RentalIndex rentalIndex = new RentalIndex();
+    // Bookings by location and month, for reports.
+    // null if the Worker runs with -Dhomerentals.bookingIndex=false.
+    protected final static BookingIndex bookingIndex = BackendUtils.useBookingIndex() ? new BookingIndex() : null;
+    // Same fields in primitive arrays, for searches the index does not narrow down.
+    // null unless the Worker runs with -Dhomerentals.columnar=true.
+    protected final static RentalColumns rentalColumns = BackendUtils.useColumnarScan() ? new RentalColumns() : null;
+    // Chunks of large scans, shared by all requests.
+    // One processor is left to the request handlers.
+    protected final static ForkJoinPool scanPool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    protected final static int scanParallelism = BackendUtils.getScanParallelism();
+    // Map results of all requests share one connection per Reducer,
+    // each mapId goes to the Reducer that owns it
+    private final static ArrayList<ReducerChannel> reducerChannels = new ArrayList<>();
+    // Handles the requests read from all Server connections
+    protected final static ExecutorService requestExecutor = BackendUtils.newHandlerExecutor("RequestHandler", Runtime.getRuntime().availableProcessors() * 2);
 
     public static void writeToReducerSocket(MapResult results) throws IOException {
-        try (Socket reducerSocket = new Socket(BackendUtils.REDUCER_ADDRESS, BackendUtils.REDUCER_PORT);
-             ObjectOutputStream reducerSocketOutput = new ObjectOutputStream(reducerSocket.getOutputStream())
-        ) {
-            reducerSocketOutput.writeObject(results);
-            reducerSocketOutput.flush();
+        int reducerIndex = BackendUtils.getReducerOf(results.getMapId(), reducerChannels.size());
+        try {
+            reducerChannels.get(reducerIndex).send(results);
         } catch (IOException e) {
-            System.err.println("\n! Worker.writeToReducerSocket(): Failed to write to Reducer: " + BackendUtils.REDUCER_PORT);
+            System.err.println("\n! Worker.writeToReducerSocket(): Failed to write to Reducer: " + BackendUtils.getReducerPort(reducerIndex));
             throw e;
         }
     }
 
     public static void main(String[] args) {
-        if (args.length != 1) {
-            System.err.println("Usage: java Worker <port>");
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: java Worker <port> [amount_of_reducers]");
             System.exit(1);
         }
 
         int port = Integer.parseInt(args[0]);
+        int amountOfReducers = (args.length > 1) ? Integer.parseInt(args[1]) : 1;
+        for (int r = 0; r < amountOfReducers; r++) {
+            reducerChannels.add(new ReducerChannel(BackendUtils.REDUCER_ADDRESS, BackendUtils.getReducerPort(r)));
+        }
 
         try (ServerSocket workerSocket = new ServerSocket(port, 10)) {
             workerSocket.setReuseAddress(true);
@@ -41,15 +62,18 @@ public class Worker {
             // Provide Server connection information
             try (Socket serverSocket = new Socket(BackendUtils.SERVER_ADDRESS, BackendUtils.SERVER_PORT)) {
                 DataOutputStream serverSocketOutput = new DataOutputStream(serverSocket.getOutputStream());
-                serverSocketOutput.writeUTF(String.valueOf(port));
-                serverSocketOutput.flush();
+                JSONObject body = new JSONObject();
+                body.put(BackendUtils.BODY_FIELD_WORKER_PORT, String.valueOf(port));
+                MessageCodec.write(serverSocketOutput, BackendUtils.createRequest(Requests.REGISTER_WORKER, body));
             }
 
-            // Accept Master connection
+            // Accept Master connections.
+            // Each connection is pooled by the Server
+            // and serves many requests.
             while (true) {
                 Socket masterSocket = workerSocket.accept();
                 RequestHandler requestThread = new RequestHandler(masterSocket);
-                new Thread(requestThread).start();
+                BackendUtils.startHandlerThread("RequestHandler-" + masterSocket.getRemoteSocketAddress(), requestThread);
             }
         } catch (IOException e) {
             System.err.println("\n! Worker.main(): Error:\n" + e);
@@ -0,0 +1,140 @@
+package com.homerentals.backend;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+Long-lived connection from the Server to a Worker.
+Requests carry a correlation ID, so many calls can
+be in flight on the same socket. A reader thread
+completes the future of each call when the Worker
+responds.
+ */
+class WorkerConnection implements Runnable {
+    private static final AtomicLong nextCorrelationId = new AtomicLong();
+
+    private final WorkerInfo workerInfo;
+    private final Socket socket;
+    private final DataInputStream socketIn;
+    private final DataOutputStream socketOut;
+    private final ConcurrentHashMap<Long, CompletableFuture<Message>> pending = new ConcurrentHashMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile boolean broken = false;
+
+    WorkerConnection(WorkerInfo workerInfo) throws IOException {
+        this.workerInfo = workerInfo;
+        this.socket = new Socket(workerInfo.getAddress(), Integer.parseInt(workerInfo.getPort()));
+        try {
+            this.socket.setTcpNoDelay(true);
+            this.socketOut = new DataOutputStream(new BufferedOutputStream(this.socket.getOutputStream()));
+            this.socketIn = new DataInputStream(new BufferedInputStream(this.socket.getInputStream()));
+        } catch (IOException e) {
+            this.socket.close();
+            throw e;
+        }
+
+        Thread reader = new Thread(this, "WorkerConnection-" + workerInfo);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    protected WorkerInfo getWorkerInfo() {
+        return this.workerInfo;
+    }
+
+    protected boolean isUsable() {
+        return !this.broken && !this.socket.isClosed();
+    }
+
+    protected int getInFlightCount() {
+        return this.pending.size();
+    }
+
+    private void write(Message request) throws IOException {
+        byte[] frame = MessageCodec.encode(request);
+        this.writeLock.lock();
+        try {
+            this.socketOut.write(frame);
+            this.socketOut.flush();
+        } catch (IOException e) {
+            this.broken = true;
+            throw e;
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    /*
+    Sends a request that does not expect a response
+     */
+    protected void send(Message request) throws IOException {
+        this.write(request.withCorrelationId(nextCorrelationId.getAndIncrement()));
+    }
+
+    /**
+     * Sends a request and returns a future that is
+     * completed with the response of the Worker.
+     * The future fails if the connection breaks.
+     */
+    protected CompletableFuture<Message> sendAsync(Message request) {
+        long correlationId = nextCorrelationId.getAndIncrement();
+        CompletableFuture<Message> future = new CompletableFuture<>();
+        this.pending.put(correlationId, future);
+        // Stop tracking the call once it is completed,
+        // timed out or cancelled by the caller
+        future.whenComplete((response, e) -> this.pending.remove(correlationId));
+
+        try {
+            this.write(request.withCorrelationId(correlationId));
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    @Override
+    public void run() {
+        // Dispatch responses to waiting callers
+        try {
+            while (true) {
+                Message response = MessageCodec.read(this.socketIn);
+                long correlationId = response.getCorrelationId();
+                CompletableFuture<Message> future = this.pending.get(correlationId);
+                if (future == null) {
+                    System.err.printf("\n! WorkerConnection.run(): No pending call #%d on %s.%n", correlationId, this.workerInfo);
+                    continue;
+                }
+                future.complete(response);
+            }
+        } catch (IOException e) {
+            if (!this.broken) {
+                System.err.println("\n! WorkerConnection.run(): Lost connection to " + this.workerInfo + ":\n" + e);
+            }
+        } finally {
+            this.close();
+        }
+    }
+
+    protected void close() {
+        this.broken = true;
+        try {
+            this.socket.close();
+        } catch (IOException e) {
+            System.err.println("\n! WorkerConnection.close(): Error closing connection to " + this.workerInfo + ":\n" + e);
+        }
+
+        // Fail calls that will never receive a response
+        IOException closed = new IOException("Connection to " + this.workerInfo + " closed");
+        for (CompletableFuture<Message> future : this.pending.values()) {
+            future.completeExceptionally(closed);
+        }
+    }
+}
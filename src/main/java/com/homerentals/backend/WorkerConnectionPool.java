@@ -0,0 +1,312 @@
+package com.homerentals.backend;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+Pool of persistent, multiplexed connections to a single Worker.
+Calls share connections instead of borrowing them exclusively.
+A new connection is opened only when every open connection
+already has the maximum amount of calls in flight.
+Once every connection is full and no more can be opened,
+callers wait for a call to finish, up to the borrow timeout.
+Connections are opened outside the pool lock, so a slow
+connect does not block the other callers.
+ */
+class WorkerConnectionPool {
+    private final WorkerInfo workerInfo;
+    private final int maxConnections;
+    private final int maxInFlightPerConnection;
+    private final long borrowTimeoutMillis;
+    private final ArrayList<WorkerConnection> connections = new ArrayList<>();
+    // Calls borrowed from each connection and not finished yet
+    private final IdentityHashMap<WorkerConnection, Integer> borrowed = new IdentityHashMap<>();
+    // Connections being opened outside the lock, they count against maxConnections
+    private int opening = 0;
+
+    // Metrics
+    private long calls = 0;
+    private long completed = 0;
+    private long failed = 0;
+    private long created = 0;
+    private long discarded = 0;
+    private long borrowTimeouts = 0;
+    private long totalWaitNanos = 0;
+    private long maxWaitNanos = 0;
+    private long totalLatencyNanos = 0;
+
+    WorkerConnectionPool(WorkerInfo workerInfo, int maxConnections, int maxInFlightPerConnection, long borrowTimeoutMillis) {
+        this.workerInfo = workerInfo;
+        this.maxConnections = maxConnections;
+        this.maxInFlightPerConnection = maxInFlightPerConnection;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+    }
+
+    protected WorkerInfo getWorkerInfo() {
+        return this.workerInfo;
+    }
+
+    private int borrowedFrom(WorkerConnection connection) {
+        return this.borrowed.getOrDefault(connection, 0);
+    }
+
+    /*
+    Least loaded usable connection, null if none is open.
+    Must hold the pool lock.
+     */
+    private WorkerConnection leastLoaded() {
+        WorkerConnection leastLoaded = null;
+        for (int i = this.connections.size() - 1; i >= 0; i--) {
+            WorkerConnection connection = this.connections.get(i);
+            if (!connection.isUsable()) {
+                // Drop broken connections
+                this.connections.remove(i);
+                this.borrowed.remove(connection);
+                this.discarded++;
+                continue;
+            }
+            if (leastLoaded == null || this.borrowedFrom(connection) < this.borrowedFrom(leastLoaded)) {
+                leastLoaded = connection;
+            }
+        }
+        return leastLoaded;
+    }
+
+    // Must hold the pool lock
+    private WorkerConnection borrow(WorkerConnection connection, long waitedNanos) {
+        this.borrowed.merge(connection, 1, Integer::sum);
+        this.calls++;
+        this.totalWaitNanos += waitedNanos;
+        this.maxWaitNanos = Math.max(this.maxWaitNanos, waitedNanos);
+        return connection;
+    }
+
+    /*
+    Returns a connection with room for one more call,
+    waiting up to the borrow timeout for one to free up,
+    and opening a new one if all of them are full
+     */
+    private WorkerConnection acquire() throws IOException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(this.borrowTimeoutMillis);
+        synchronized (this) {
+            while (true) {
+                WorkerConnection leastLoaded = this.leastLoaded();
+                if (leastLoaded != null && this.borrowedFrom(leastLoaded) < this.maxInFlightPerConnection) {
+                    return this.borrow(leastLoaded, System.nanoTime() - start);
+                }
+                if (this.connections.size() + this.opening < this.maxConnections) {
+                    // Reserve the slot, connect below without the lock
+                    this.opening++;
+                    break;
+                }
+
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    this.borrowTimeouts++;
+                    // The longest wait includes the calls that gave up
+                    this.maxWaitNanos = Math.max(this.maxWaitNanos, System.nanoTime() - start);
+                    throw new IOException(String.format("Timed out after %dms waiting for a connection to %s", this.borrowTimeoutMillis, this.workerInfo));
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted waiting for a connection to " + this.workerInfo, e);
+                }
+            }
+        }
+
+        WorkerConnection connection = null;
+        try {
+            connection = new WorkerConnection(this.workerInfo);
+        } finally {
+            synchronized (this) {
+                this.opening--;
+                if (connection != null) {
+                    this.connections.add(connection);
+                    this.created++;
+                    // The time to connect is not time spent waiting for a call to finish
+                    this.borrow(connection, 0);
+                }
+                // A failed connect frees the slot for someone else
+                this.notifyAll();
+            }
+        }
+        return connection;
+    }
+
+    private synchronized void release(WorkerConnection connection) {
+        Integer count = this.borrowed.get(connection);
+        if (count != null) {
+            if (count <= 1) {
+                this.borrowed.remove(connection);
+            } else {
+                this.borrowed.put(connection, count - 1);
+            }
+        }
+        this.notifyAll();
+    }
+
+    private synchronized void recordCompletion(long startNanos, boolean success) {
+        if (success) {
+            this.completed++;
+            this.totalLatencyNanos += System.nanoTime() - startNanos;
+        } else {
+            this.failed++;
+        }
+    }
+
+    /*
+    Sends a request that does not expect a response
+     */
+    protected void send(Message request) throws IOException {
+        WorkerConnection connection = this.acquire();
+        try {
+            connection.send(request);
+        } catch (IOException e) {
+            this.recordCompletion(0, false);
+            throw e;
+        } finally {
+            this.release(connection);
+        }
+    }
+
+    /**
+     * Sends a request over a shared connection.
+     *
+     * @return future completed with the Worker's response,
+     * or completed exceptionally if the call failed
+     */
+    protected CompletableFuture<Message> sendAsync(Message request) {
+        long start = System.nanoTime();
+        WorkerConnection connection;
+        try {
+            connection = this.acquire();
+        } catch (IOException e) {
+            this.recordCompletion(start, false);
+            CompletableFuture<Message> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+
+        CompletableFuture<Message> future = connection.sendAsync(request);
+        future.whenComplete((response, e) -> {
+            this.release(connection);
+            this.recordCompletion(start, e == null);
+        });
+        return future;
+    }
+
+    /**
+     * Sends a request over a connection of its own, outside the pool,
+     * that is closed once the call completes. Used for hedged requests,
+     * so a hedge never queues behind the call it hedges.
+     * It only helps when that call is held up by its connection,
+     * a stuck or broken connection or slow calls ahead of it on
+     * the same socket. A Worker that is slow itself answers the
+     * hedge just as slowly.
+     *
+     * @return future completed with the Worker's response,
+     * or completed exceptionally if the call failed
+     */
+    protected CompletableFuture<Message> sendAsyncOnNewConnection(Message request) {
+        long start = System.nanoTime();
+        WorkerConnection connection;
+        try {
+            connection = new WorkerConnection(this.workerInfo);
+        } catch (IOException e) {
+            this.recordCompletion(start, false);
+            CompletableFuture<Message> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        synchronized (this) {
+            this.calls++;
+            this.created++;
+        }
+
+        CompletableFuture<Message> future = connection.sendAsync(request);
+        future.whenComplete((response, e) -> {
+            connection.close();
+            this.recordCompletion(start, e == null);
+        });
+        return future;
+    }
+
+    protected synchronized void close() {
+        for (WorkerConnection connection : this.connections) {
+            connection.close();
+        }
+        this.connections.clear();
+        this.borrowed.clear();
+        this.notifyAll();
+    }
+
+    public synchronized int getOpenCount() {
+        return this.connections.size();
+    }
+
+    public synchronized int getActiveCount() {
+        // Calls currently in flight
+        int active = 0;
+        for (int count : this.borrowed.values()) {
+            active += count;
+        }
+        return active;
+    }
+
+    public synchronized int getIdleCount() {
+        // Open connections without calls in flight
+        int idle = 0;
+        for (WorkerConnection connection : this.connections) {
+            if (connection.isUsable() && this.borrowedFrom(connection) == 0) {
+                idle++;
+            }
+        }
+        return idle;
+    }
+
+    public synchronized long getCallCount() {
+        return this.calls;
+    }
+
+    public synchronized long getFailedCount() {
+        return this.failed;
+    }
+
+    public synchronized long getCreatedCount() {
+        return this.created;
+    }
+
+    public synchronized long getDiscardedCount() {
+        return this.discarded;
+    }
+
+    public synchronized long getBorrowTimeoutCount() {
+        return this.borrowTimeouts;
+    }
+
+    // Time callers waited for a call to finish on a full pool
+    public synchronized double getAverageWaitMillis() {
+        return (this.calls == 0) ? 0 : (double) this.totalWaitNanos / this.calls / 1_000_000.0;
+    }
+
+    public synchronized double getMaxWaitMillis() {
+        return this.maxWaitNanos / 1_000_000.0;
+    }
+
+    public synchronized double getAverageLatencyMillis() {
+        return (this.completed == 0) ? 0 : (double) this.totalLatencyNanos / this.completed / 1_000_000.0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("Pool[%s: open=%d, active=%d, idle=%d, calls=%d, failed=%d, created=%d, discarded=%d, borrowTimeouts=%d, avgWait=%.3fms, maxWait=%.3fms, avgLatency=%.3fms]",
+                this.workerInfo, this.connections.size(), this.getActiveCount(), this.getIdleCount(), this.calls, this.failed,
+                this.created, this.discarded, this.borrowTimeouts, this.getAverageWaitMillis(), this.getMaxWaitMillis(), this.getAverageLatencyMillis());
+    }
+}
@@ -0,0 +1,156 @@
+package com.homerentals.domain;
+
+import java.io.Serializable;
+
+/*
+Availability of a rental, one bit per day keyed by epoch day,
+set when the rental is available on that day.
+The bits are packed 64 days to a long, so a range of days is
+checked, set or flipped one word at a time with a mask for the
+first and last word. Days outside the words are unavailable.
+ */
+public class AvailabilityBitSet implements Serializable {
+    private static final int WORD_SHIFT = 6;
+    private static final int BIT_MASK = 63;
+    private static final long ALL_DAYS = -1L;
+
+    private long[] words = new long[0];
+    // Word index of words[0], the epoch day of its first bit divided by 64
+    private long firstWord = 0;
+
+    private static long wordOf(long epochDay) {
+        // Arithmetic shift, so days before 1970 round down as well
+        return epochDay >> WORD_SHIFT;
+    }
+
+    // Bits of the word from the day onwards
+    private static long fromMask(long epochDay) {
+        return ALL_DAYS << (epochDay & BIT_MASK);
+    }
+
+    // Bits of the word up to and including the day
+    private static long toMask(long epochDay) {
+        return ALL_DAYS >>> (BIT_MASK - (epochDay & BIT_MASK));
+    }
+
+    public boolean isEmpty() {
+        return this.words.length == 0;
+    }
+
+    /**
+     * First day the set holds a bit for, available or not.
+     * Only valid if the set is not empty.
+     */
+    public long getFirstDay() {
+        return this.firstWord << WORD_SHIFT;
+    }
+
+    /**
+     * Last day the set holds a bit for, available or not.
+     * Only valid if the set is not empty.
+     */
+    public long getLastDay() {
+        return ((this.firstWord + this.words.length) << WORD_SHIFT) - 1;
+    }
+
+    public boolean get(long epochDay) {
+        long word = wordOf(epochDay) - this.firstWord;
+        if (word < 0 || word >= this.words.length) {
+            return false;
+        }
+        return (this.words[(int) word] & (1L << (epochDay & BIT_MASK))) != 0;
+    }
+
+    /**
+     * True if every day from fromDay to toDay, both included, is set.
+     * Does not allocate.
+     */
+    public boolean allSet(long fromDay, long toDay) {
+        long fromWord = wordOf(fromDay) - this.firstWord;
+        long toWord = wordOf(toDay) - this.firstWord;
+        if (fromWord < 0 || toWord >= this.words.length) {
+            return false;
+        }
+        int first = (int) fromWord;
+        int last = (int) toWord;
+
+        long firstMask = fromMask(fromDay);
+        long lastMask = toMask(toDay);
+        if (first == last) {
+            long mask = firstMask & lastMask;
+            return (this.words[first] & mask) == mask;
+        }
+        if ((this.words[first] & firstMask) != firstMask) {
+            return false;
+        }
+        for (int i = first + 1; i < last; i++) {
+            if (this.words[i] != ALL_DAYS) {
+                return false;
+            }
+        }
+        return (this.words[last] & lastMask) == lastMask;
+    }
+
+    /**
+     * Sets every day from fromDay to toDay, both included.
+     * Only through Rental, so the indexes of the Worker see every change.
+     */
+    protected void set(long fromDay, long toDay) {
+        this.apply(fromDay, toDay, false);
+    }
+
+    /**
+     * Flips every day from fromDay to toDay, both included.
+     * Only through Rental, so the indexes of the Worker see every change.
+     */
+    protected void flip(long fromDay, long toDay) {
+        this.apply(fromDay, toDay, true);
+    }
+
+    private void apply(long fromDay, long toDay, boolean flip) {
+        this.ensureWords(wordOf(fromDay), wordOf(toDay));
+        int first = (int) (wordOf(fromDay) - this.firstWord);
+        int last = (int) (wordOf(toDay) - this.firstWord);
+
+        for (int i = first; i <= last; i++) {
+            long mask = ALL_DAYS;
+            if (i == first) {
+                mask &= fromMask(fromDay);
+            }
+            if (i == last) {
+                mask &= toMask(toDay);
+            }
+            this.words[i] = flip ? this.words[i] ^ mask : this.words[i] | mask;
+        }
+    }
+
+    private void ensureWords(long fromWord, long toWord) {
+        if (this.words.length == 0) {
+            this.firstWord = fromWord;
+            this.words = new long[(int) (toWord - fromWord + 1)];
+            return;
+        }
+
+        long lastWord = this.firstWord + this.words.length - 1;
+        if (fromWord >= this.firstWord && toWord <= lastWord) {
+            return;
+        }
+        // Grow to exactly the range needed, a few years
+        // of availability are only a few dozen words
+        long newFirstWord = Math.min(fromWord, this.firstWord);
+        long newLastWord = Math.max(toWord, lastWord);
+        long[] newWords = new long[(int) (newLastWord - newFirstWord + 1)];
+        System.arraycopy(this.words, 0, newWords, (int) (this.firstWord - newFirstWord), this.words.length);
+        this.words = newWords;
+        this.firstWord = newFirstWord;
+    }
+
+    @Override
+    public String toString() {
+        int days = 0;
+        for (long word : this.words) {
+            days += Long.bitCount(word);
+        }
+        return String.format("AvailabilityBitSet[words=%d, availableDays=%d]", this.words.length, days);
+    }
+}
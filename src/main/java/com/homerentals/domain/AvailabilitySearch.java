@@ -1,62 +1,33 @@
 package com.homerentals.domain;
 
 import java.time.LocalDate;
-import java.util.HashMap;
 
 public class AvailabilitySearch {
-    protected static boolean getAvailability(HashMap<Integer, CalendarYear> availability, LocalDate startDate, LocalDate endDate) {
+    // The ranges below include both the start and the end date.
+    // Each one is a few word operations on the epoch days of the
+    // dates, instead of one LocalDate and CalendarYear per day.
+
+    protected static boolean getAvailability(AvailabilityBitSet availability, LocalDate startDate, LocalDate endDate) {
         if (endDate.isBefore(startDate)) {
             throw new RuntimeException("Invalid date input");
         }
 
-        int year;
-        CalendarYear CalendarYear;
-        for (LocalDate date = startDate; date.isBefore(endDate.plusDays(1)); date = date.plusDays(1)) {
-            year = date.getYear();
-            if (!availability.containsKey(year))
-                return false;
-
-            CalendarYear = availability.get(year);
-            if (!CalendarYear.isAvailable(date))
-                return false;
-        }
-
-        return true;
+        return availability.allSet(startDate.toEpochDay(), endDate.toEpochDay());
     }
 
-    protected static void toggleAvailability(HashMap<Integer, CalendarYear> availability, LocalDate startDate, LocalDate endDate) {
+    protected static void toggleAvailability(AvailabilityBitSet availability, LocalDate startDate, LocalDate endDate) {
         if (endDate.isBefore(startDate)) {
             throw new RuntimeException("Invalid date input");
         }
 
-        int year;
-        CalendarYear CalendarYear;
-        for (LocalDate date = startDate; date.isBefore(endDate.plusDays(1)); date = date.plusDays(1)) {
-            year = date.getYear();
-            if (!availability.containsKey(year))
-                availability.put(year, new CalendarYear(year));
-
-            CalendarYear = availability.get(year);
-            CalendarYear.toggleAvailability(date);
-        }
+        availability.flip(startDate.toEpochDay(), endDate.toEpochDay());
     }
 
-    public static void makeAvailable(HashMap<Integer, CalendarYear> availability, LocalDate startDate, LocalDate endDate) {
+    public static void makeAvailable(AvailabilityBitSet availability, LocalDate startDate, LocalDate endDate) {
         if (endDate.isBefore(startDate)) {
             throw new RuntimeException("Invalid date input");
         }
 
-        int year;
-        CalendarYear CalendarYear;
-        for (LocalDate date = startDate; date.isBefore(endDate.plusDays(1)); date = date.plusDays(1)) {
-            year = date.getYear();
-            if (!availability.containsKey(year))
-                availability.put(year, new CalendarYear(year));
-
-            CalendarYear = availability.get(year);
-            if (!CalendarYear.isAvailable(date)) {
-                CalendarYear.toggleAvailability(date);
-            }
-        }
+        availability.set(startDate.toEpochDay(), endDate.toEpochDay());
     }
 }
@@ -0,0 +1,182 @@
+package com.homerentals.domain;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/*
+Live, read only view of an AvailabilityBitSet, one CalendarYear
+for every year the bit set holds days of, as Rental.getAvailabilityMap()
+returned before the bit set. Nothing is stored in the map itself:
+every read builds its CalendarYear from the bit set, so the view
+sees later changes to the availability of the rental.
+ */
+class AvailabilityYears extends HashMap<Integer, CalendarYear> {
+    private final AvailabilityBitSet availability;
+
+    AvailabilityYears(AvailabilityBitSet availability) {
+        this.availability = availability;
+    }
+
+    private int firstYear() {
+        return LocalDate.ofEpochDay(this.availability.getFirstDay()).getYear();
+    }
+
+    private int lastYear() {
+        return LocalDate.ofEpochDay(this.availability.getLastDay()).getYear();
+    }
+
+    private CalendarYear toCalendarYear(int year) {
+        CalendarYear calendarYear = new CalendarYear(year);
+        for (LocalDate date = LocalDate.of(year, 1, 1); date.getYear() == year; date = date.plusDays(1)) {
+            if (this.availability.get(date.toEpochDay())) {
+                calendarYear.toggleAvailability(date);
+            }
+        }
+        return calendarYear;
+    }
+
+    // Copy of the years the bit set holds right now
+    private TreeMap<Integer, CalendarYear> years() {
+        TreeMap<Integer, CalendarYear> years = new TreeMap<>();
+        if (!this.availability.isEmpty()) {
+            for (int year = this.firstYear(); year <= this.lastYear(); year++) {
+                years.put(year, this.toCalendarYear(year));
+            }
+        }
+        return years;
+    }
+
+    @Override
+    public int size() {
+        return this.availability.isEmpty() ? 0 : this.lastYear() - this.firstYear() + 1;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.availability.isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (!(key instanceof Integer) || this.availability.isEmpty()) {
+            return false;
+        }
+        int year = (Integer) key;
+        return year >= this.firstYear() && year <= this.lastYear();
+    }
+
+    @Override
+    public CalendarYear get(Object key) {
+        return this.containsKey(key) ? this.toCalendarYear((Integer) key) : null;
+    }
+
+    @Override
+    public CalendarYear getOrDefault(Object key, CalendarYear defaultValue) {
+        return this.containsKey(key) ? this.get(key) : defaultValue;
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        return this.years().containsValue(value);
+    }
+
+    @Override
+    public Set<Integer> keySet() {
+        return Collections.unmodifiableSet(this.years().keySet());
+    }
+
+    @Override
+    public Collection<CalendarYear> values() {
+        return Collections.unmodifiableCollection(this.years().values());
+    }
+
+    @Override
+    public Set<Map.Entry<Integer, CalendarYear>> entrySet() {
+        return Collections.unmodifiableMap(this.years()).entrySet();
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super Integer, ? super CalendarYear> action) {
+        this.years().forEach(action);
+    }
+
+    @Override
+    public Object clone() {
+        return new HashMap<>(this.years());
+    }
+
+    // Change the availability through the rental instead
+
+    @Override
+    public CalendarYear put(Integer key, CalendarYear value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void putAll(Map<? extends Integer, ? extends CalendarYear> m) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public CalendarYear putIfAbsent(Integer key, CalendarYear value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public CalendarYear remove(Object key) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public CalendarYear replace(Integer key, CalendarYear value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean replace(Integer key, CalendarYear oldValue, CalendarYear newValue) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void replaceAll(BiFunction<? super Integer, ? super CalendarYear, ? extends CalendarYear> function) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public CalendarYear computeIfAbsent(Integer key, Function<? super Integer, ? extends CalendarYear> mappingFunction) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public CalendarYear computeIfPresent(Integer key, BiFunction<? super Integer, ? super CalendarYear, ? extends CalendarYear> remappingFunction) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public CalendarYear compute(Integer key, BiFunction<? super Integer, ? super CalendarYear, ? extends CalendarYear> remappingFunction) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public CalendarYear merge(Integer key, CalendarYear value, BiFunction<? super CalendarYear, ? super CalendarYear, ? extends CalendarYear> remappingFunction) {
+        throw new UnsupportedOperationException();
+    }
+}
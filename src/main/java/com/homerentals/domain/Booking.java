@@ -13,11 +13,18 @@ public class Booking implements Serializable {
     private final double rentalNightlyRate;
 
     public Booking(String bookingId, int rentalId, String guestEmail, String startDate, String endDate, double rentalNightlyRate) {
+        this(bookingId, rentalId, guestEmail,
+                LocalDate.parse(startDate, DomainUtils.dateFormatter),
+                LocalDate.parse(endDate, DomainUtils.dateFormatter),
+                rentalNightlyRate);
+    }
+
+    public Booking(String bookingId, int rentalId, String guestEmail, LocalDate startDate, LocalDate endDate, double rentalNightlyRate) {
         this.bookingId = bookingId;
         this.rentalId = rentalId;
         this.guestEmail = guestEmail;
-        this.startDate = LocalDate.parse(startDate, DomainUtils.dateFormatter);
-        this.endDate = LocalDate.parse(endDate, DomainUtils.dateFormatter);
+        this.startDate = startDate;
+        this.endDate = endDate;
         this.rentalNightlyRate = rentalNightlyRate;
     }
 
@@ -41,6 +48,10 @@ public class Booking implements Serializable {
         return this.endDate;
     }
 
+    public double getRentalNightlyRate() {
+        return this.rentalNightlyRate;
+    }
+
     public double getTotalCost() {
         return this.calculateTotalCost();
     }
@@ -0,0 +1,114 @@
+package com.homerentals.domain;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/*
+Bookings of a rental sorted by start date, as epoch days.
+maxEnds[i] holds the latest end of the bookings 0..i, it never
+decreases, so the first booking that ends after a date is a
+binary search, and so is the first booking that starts after one.
+An overlap check is two binary searches, and a range report
+only reads the bookings that start inside the range.
+ */
+public class BookingIntervals implements Serializable {
+    private long[] starts = new long[4];
+    private long[] ends = new long[4];
+    private long[] maxEnds = new long[4];
+    private int size = 0;
+
+    public int size() {
+        return this.size;
+    }
+
+    public void add(Booking booking) {
+        if (this.size == this.starts.length) {
+            int capacity = this.size * 2;
+            this.starts = Arrays.copyOf(this.starts, capacity);
+            this.ends = Arrays.copyOf(this.ends, capacity);
+            this.maxEnds = Arrays.copyOf(this.maxEnds, capacity);
+        }
+
+        long start = booking.getStartDate().toEpochDay();
+        long end = booking.getEndDate().toEpochDay();
+        // After the bookings that start on the same day, usually at the end
+        int position = firstStartAfter(start);
+        int moved = this.size - position;
+        System.arraycopy(this.starts, position, this.starts, position + 1, moved);
+        System.arraycopy(this.ends, position, this.ends, position + 1, moved);
+        this.starts[position] = start;
+        this.ends[position] = end;
+        this.size++;
+
+        for (int i = position; i < this.size; i++) {
+            this.maxEnds[i] = (i == 0) ? this.ends[0] : Math.max(this.maxEnds[i - 1], this.ends[i]);
+        }
+    }
+
+    // First position whose start is after day, size if none
+    private int firstStartAfter(long day) {
+        int low = 0;
+        int high = this.size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (this.starts[middle] <= day) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // First position whose start is on or after day, size if none
+    private int firstStartFrom(long day) {
+        return this.firstStartAfter(day - 1);
+    }
+
+    // First position of a booking that ends after day, size if none
+    private int firstEndAfter(long day) {
+        int low = 0;
+        int high = this.size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (this.maxEnds[middle] <= day) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * True if a booking occurs during the period,
+     * the same check as Booking.occursDuring().
+     */
+    public boolean overlaps(long startDay, long endDay) {
+        // The booking at firstEndAfter() ends after startDay,
+        // it overlaps if it also starts before endDay
+        int first = this.firstEndAfter(startDay);
+        return first < this.size && this.starts[first] < endDay;
+    }
+
+    /**
+     * Number of bookings that start on or after startDay
+     * and end on or before endDay.
+     */
+    public int countWithin(long startDay, long endDay) {
+        int count = 0;
+        int last = this.firstStartAfter(endDay);
+        for (int i = this.firstStartFrom(startDay); i < last; i++) {
+            // Sorted by start, so only the end is left to check
+            if (this.ends[i] <= endDay) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BookingIntervals[bookings=%d]", this.size);
+    }
+}
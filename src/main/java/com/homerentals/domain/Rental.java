@@ -6,7 +6,9 @@ import org.json.JSONObject;
 import java.io.Serializable;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 
 public class Rental implements Serializable {
     private final int id;
@@ -18,8 +20,10 @@ public class Rental implements Serializable {
     private final int capacity;
     private final RatingsAggregator ratings;
     private final ArrayList<Booking> bookings;
+    // The bookings sorted by date, for overlap checks and range reports
+    private final BookingIntervals bookingIntervals;
 
-    private final HashMap<Integer, CalendarYear> availability;
+    private final AvailabilityBitSet availability;
 
     public Rental(
             HostAccount hostAccount,
@@ -41,7 +45,8 @@ public class Rental implements Serializable {
         this.imgUrl = imgUrl;
         this.id = id;
         this.bookings = new ArrayList<>();
-        this.availability = new HashMap<>();
+        this.bookingIntervals = new BookingIntervals();
+        this.availability = new AvailabilityBitSet();
     }
 
     public int getId() {
@@ -74,6 +79,10 @@ public class Rental implements Serializable {
         return this.ratings;
     }
 
+    public int getNumOfRatings() {
+        return this.ratings.getNumOfRatings();
+    }
+
     public void addRating(int rating) {
         this.ratings.addRating(rating);
     }
@@ -82,15 +91,32 @@ public class Rental implements Serializable {
         return this.ratings.getStars();
     }
 
+    /*
+    One CalendarYear per year, built from the bit set
+    when read, so it follows later changes
+     */
     public HashMap<Integer, CalendarYear> getAvailabilityMap() {
-        return availability;
+        return new AvailabilityYears(this.availability);
+    }
+
+    /*
+    Read only outside the domain package, the availability
+    changes through the methods of the rental
+     */
+    public AvailabilityBitSet getAvailabilityBitSet() {
+        return this.availability;
     }
 
-    public ArrayList<Booking> getBookings() {
-        return this.bookings;
+    /*
+    Read only, add bookings with addBooking()
+    so the sorted bookings stay in step
+     */
+    public List<Booking> getBookings() {
+        return Collections.unmodifiableList(this.bookings);
     }
 
     public void addBooking(Booking booking) {
+        this.bookingIntervals.add(booking);
         this.bookings.add(booking);
         toggleAvailability(booking.getStartDate(), booking.getEndDate());
     }
@@ -107,15 +133,21 @@ public class Rental implements Serializable {
         // Do not allow this action
         // if a booking occurs during
         // this time period
-        for (Booking booking : this.bookings) {
-            if (booking.occursDuring(startDate, endDate)) {
-                return false;
-            }
+        if (this.bookingIntervals.overlaps(startDate.toEpochDay(), endDate.toEpochDay())) {
+            return false;
         }
         AvailabilitySearch.makeAvailable(this.availability, startDate, endDate);
         return true;
     }
 
+    /*
+    Number of bookings that start on or after startDate
+    and end on or before endDate
+     */
+    public int countBookingsWithin(LocalDate startDate, LocalDate endDate) {
+        return this.bookingIntervals.countWithin(startDate.toEpochDay(), endDate.toEpochDay());
+    }
+
     public boolean matchesFilter(String filter, String value) {
         if (value.isEmpty()) return true;
 
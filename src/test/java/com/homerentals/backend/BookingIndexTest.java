@@ -0,0 +1,60 @@
+package com.homerentals.backend;
+
+import com.homerentals.domain.Booking;
+import com.homerentals.domain.Rental;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+public class BookingIndexTest {
+    private static final String[] LOCATIONS = {"Crete", "Athens", "Paros", "crete", "Zante"};
+
+    private static HashMap<String, Integer> counts(ArrayList<BookingsByLocation> bookings) {
+        HashMap<String, Integer> counts = new HashMap<>();
+        for (BookingsByLocation byLocation : bookings) {
+            Assert.assertNull(counts.put(byLocation.getLocation(), byLocation.getNumOfBookings()));
+        }
+        return counts;
+    }
+
+    @Test
+    public void same_counts_as_every_booking() {
+        Random random = new Random(21);
+        ArrayList<Rental> rentals = new ArrayList<>();
+        BookingIndex index = new BookingIndex();
+        for (int id = 0; id < 200; id++) {
+            Rental rental = new Rental(null, "Rental " + id, LOCATIONS[random.nextInt(LOCATIONS.length)], 50, 2, 0, 0, null, id);
+            rentals.add(rental);
+            index.addRental(rental);
+        }
+        // A location without bookings
+        Rental empty = new Rental(null, "Rental 200", "Mykonos", 50, 2, 0, 0, null, 200);
+        rentals.add(empty);
+        index.addRental(empty);
+
+        LocalDate first = LocalDate.of(2024, 1, 1);
+        for (int b = 0; b < 3000; b++) {
+            Rental rental = rentals.get(random.nextInt(rentals.size() - 1));
+            LocalDate start = first.plusDays(random.nextInt(700));
+            Booking booking = new Booking(String.valueOf(b), rental.getId(), "guest@example.com", start, start.plusDays(random.nextInt(20)), 50);
+            rental.addBooking(booking);
+            index.addBooking(rental, booking);
+        }
+        Assert.assertEquals(3000, index.size());
+
+        Mapper scan = new Mapper(rentals);
+        Mapper indexed = new Mapper(rentals, null, null, index, null, 1);
+        for (int i = 0; i < 200; i++) {
+            LocalDate startDate = first.plusDays(random.nextInt(720) - 10);
+            // Single days up to ranges of several months, and an invalid one
+            LocalDate endDate = startDate.plusDays(random.nextInt(200) - 1);
+            HashMap<String, Integer> expected = counts(scan.mapBookingsToLocations(startDate, endDate));
+            Assert.assertEquals(LOCATIONS.length + 1, expected.size());
+            Assert.assertEquals(startDate + " - " + endDate, expected, counts(indexed.mapBookingsToLocations(startDate, endDate)));
+        }
+    }
+}
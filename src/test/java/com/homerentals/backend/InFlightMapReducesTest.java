@@ -0,0 +1,106 @@
+package com.homerentals.backend;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class InFlightMapReducesTest {
+    private static MapResult result() {
+        return new MapResult(0, new ArrayList<>(), null);
+    }
+
+    // Runs a call while another one is running
+    private static MapResult runNested(InFlightMapReduces inFlight, String key, long timeoutMillis) throws InterruptedException, ExecutionException {
+        try {
+            return inFlight.run(key, timeoutMillis, InFlightMapReducesTest::result);
+        } catch (TimeoutException e) {
+            throw new ExecutionException(e);
+        }
+    }
+
+    @Test
+    public void identical_calls_share_one_result() throws Exception {
+        InFlightMapReduces inFlight = new InFlightMapReduces();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        MapResult shared = result();
+
+        CompletableFuture<MapResult> first = CompletableFuture.supplyAsync(() -> {
+            try {
+                return inFlight.run("GET_RENTALS:crete", 5_000, () -> {
+                    calls.incrementAndGet();
+                    started.countDown();
+                    release.await();
+                    return shared;
+                });
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        started.await();
+
+        CompletableFuture<MapResult> second = CompletableFuture.supplyAsync(() -> {
+            try {
+                return inFlight.run("GET_RENTALS:crete", 5_000, () -> {
+                    calls.incrementAndGet();
+                    return result();
+                });
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        // Let the second call find the first one
+        while (!inFlight.toString().contains("joined=1")) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        Assert.assertSame(shared, first.get());
+        Assert.assertSame(shared, second.get());
+        Assert.assertEquals(1, calls.get());
+        Assert.assertEquals(0, inFlight.size());
+
+        // A call after the first one finished runs again
+        Assert.assertNotSame(shared, inFlight.run("GET_RENTALS:crete", 5_000, InFlightMapReducesTest::result));
+    }
+
+    @Test
+    public void different_calls_run_separately() throws Exception {
+        InFlightMapReduces inFlight = new InFlightMapReduces();
+        MapResult crete = inFlight.run("GET_RENTALS:crete", 5_000, () -> runNested(inFlight, "GET_RENTALS:paros", 5_000));
+        Assert.assertNotNull(crete);
+        Assert.assertTrue(inFlight.toString().contains("started=2, joined=0"));
+    }
+
+    @Test
+    public void waiting_is_bounded() throws Exception {
+        InFlightMapReduces inFlight = new InFlightMapReduces();
+        try {
+            inFlight.run("GET_RENTALS:crete", 5_000, () -> runNested(inFlight, "GET_RENTALS:crete", 10));
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof TimeoutException);
+            Assert.assertTrue(inFlight.toString().contains("joinTimeouts=1"));
+        }
+    }
+
+    @Test
+    public void failure_reaches_every_caller() throws Exception {
+        InFlightMapReduces inFlight = new InFlightMapReduces();
+        try {
+            inFlight.run("GET_RENTALS:crete", 5_000, () -> {
+                throw new ExecutionException(new IllegalStateException("no workers"));
+            });
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertEquals(0, inFlight.size());
+        }
+    }
+}
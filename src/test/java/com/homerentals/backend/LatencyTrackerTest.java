@@ -0,0 +1,25 @@
+package com.homerentals.backend;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyTrackerTest {
+    @Test
+    public void percentile_of_last_samples() {
+        LatencyTracker tracker = new LatencyTracker(100);
+        Assert.assertEquals(0, tracker.percentile(0.95));
+
+        for (int i = 1; i <= 100; i++) {
+            tracker.record(i);
+        }
+        Assert.assertEquals(95, tracker.percentile(0.95));
+        Assert.assertEquals(50, tracker.percentile(0.5));
+
+        // Old samples are overwritten
+        for (int i = 0; i < 100; i++) {
+            tracker.record(1000);
+        }
+        Assert.assertEquals(100, tracker.getCount());
+        Assert.assertEquals(1000, tracker.percentile(0.5));
+    }
+}
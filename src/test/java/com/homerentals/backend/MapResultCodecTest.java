@@ -0,0 +1,120 @@
+package com.homerentals.backend;
+
+import com.homerentals.domain.Booking;
+import com.homerentals.domain.Rental;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+
+public class MapResultCodecTest {
+    private static Rental createRental() {
+        Rental rental = new Rental(null, "Cozy Rental", "Crete", 80.5, 4, 3, 12, "img.png", 7);
+        LocalDate today = LocalDate.now();
+        rental.makeAvailable(today.minusDays(30), today.plusDays(30));
+        // Passed booking
+        rental.addBooking(new Booking("11", 7, "guest@example.com", today.minusDays(20), today.minusDays(15), 80.5));
+        rental.addBooking(new Booking("12", 7, "guest@example.com", today.plusDays(10), today.plusDays(12), 80.5));
+        return rental;
+    }
+
+    @Test
+    public void catalog_rentals() throws IOException {
+        Rental rental = createRental();
+        ArrayList<RentalSummary> rentals = new ArrayList<>();
+        rentals.add(RentalSummary.of(rental, RentalSummary.Projection.CATALOG));
+        rentals.add(RentalSummary.of(new Rental(null, "Lux Rental", "Crete", 200, 2, 0, 0, null, 8), RentalSummary.Projection.CATALOG));
+
+        MapResult decoded = MapResultCodec.decode(MapResultCodec.encode(new MapResult(5, rentals, null)));
+        Assert.assertEquals(5, decoded.getMapId());
+        Assert.assertTrue(decoded.containsRentals());
+        Assert.assertNull(decoded.getBookingsByLocation());
+        Assert.assertEquals(2, decoded.getRentals().size());
+
+        RentalSummary first = decoded.getRentals().get(0);
+        Assert.assertEquals(RentalSummary.Projection.CATALOG, first.getProjection());
+        Assert.assertEquals(rental.toJSON().toString(), first.toJSON().toString());
+        // Bookings are not part of the catalog
+        Assert.assertNull(first.getBookings());
+
+        Assert.assertNull(decoded.getRentals().get(1).getImageURL());
+    }
+
+    @Test
+    public void upcoming_bookings() throws IOException {
+        Rental rental = createRental();
+        ArrayList<RentalSummary> rentals = new ArrayList<>();
+        rentals.add(RentalSummary.of(rental, RentalSummary.Projection.UPCOMING_BOOKINGS));
+
+        MapResult decoded = MapResultCodec.decode(MapResultCodec.encode(new MapResult(6, rentals, null)));
+        RentalSummary first = decoded.getRentals().get(0);
+        Assert.assertEquals(RentalSummary.Projection.UPCOMING_BOOKINGS, first.getProjection());
+        Assert.assertEquals(rental.toString(), first.toString());
+        Assert.assertNull(first.getImageURL());
+
+        // Passed bookings stay on the worker
+        Assert.assertEquals(1, first.getBookings().size());
+        Booking booking = first.getBookings().get(0);
+        Assert.assertEquals("12", booking.getBookingId());
+        Assert.assertEquals(7, booking.getRentalId());
+        Assert.assertEquals("guest@example.com", booking.getGuestEmail());
+        Assert.assertEquals(LocalDate.now().plusDays(10), booking.getStartDate());
+        Assert.assertEquals(rental.getBookings().get(1).toString(), booking.toString());
+        Assert.assertEquals(80.5, booking.getRentalNightlyRate(), 0);
+    }
+
+    @Test
+    public void sorted_page() throws IOException {
+        ArrayList<RentalSummary> rentals = new ArrayList<>();
+        rentals.add(RentalSummary.of(createRental(), RentalSummary.Projection.CATALOG));
+        RentalPage page = new RentalPage(RentalPage.SortKey.STARS, true, 10);
+
+        MapResult decoded = MapResultCodec.decode(MapResultCodec.encode(new MapResult(7, rentals, null, page)));
+        Assert.assertEquals(RentalPage.SortKey.STARS, decoded.getPage().getSortKey());
+        Assert.assertTrue(decoded.getPage().isDescending());
+        Assert.assertEquals(10, decoded.getPage().getLimit());
+        Assert.assertEquals(1, decoded.getRentals().size());
+    }
+
+    @Test
+    public void bookings_by_location() throws IOException {
+        BookingsByLocation crete = new BookingsByLocation("Crete");
+        crete.addBooking();
+        crete.addBooking();
+        BookingsByLocation athens = new BookingsByLocation("Athens");
+        ArrayList<BookingsByLocation> bookingsByLocation = new ArrayList<>();
+        bookingsByLocation.add(crete);
+        bookingsByLocation.add(athens);
+
+        MapResult decoded = MapResultCodec.decode(MapResultCodec.encode(new MapResult(9, null, bookingsByLocation)));
+        Assert.assertEquals(9, decoded.getMapId());
+        Assert.assertFalse(decoded.containsRentals());
+        Assert.assertEquals(2, decoded.getBookingsByLocation().size());
+        Assert.assertEquals("Crete", decoded.getBookingsByLocation().get(0).getLocation());
+        Assert.assertEquals(2, decoded.getBookingsByLocation().get(0).getNumOfBookings());
+        Assert.assertEquals("Athens", decoded.getBookingsByLocation().get(1).getLocation());
+        Assert.assertEquals(0, decoded.getBookingsByLocation().get(1).getNumOfBookings());
+    }
+
+    @Test
+    public void deadline_and_missing_partials() throws IOException {
+        MapResult decoded = MapResultCodec.decode(MapResultCodec.encode(new MapResult(3, new ArrayList<>(), null, null, 2, 1500, 0)));
+        Assert.assertEquals(2, decoded.getWorkerId());
+        Assert.assertEquals(1500, decoded.getDeadlineMillis());
+        Assert.assertFalse(decoded.isPartial());
+
+        decoded = MapResultCodec.decode(MapResultCodec.encode(new MapResult(3, null, new ArrayList<>(), null, MapResult.NO_WORKER, 0, 1)));
+        Assert.assertEquals(MapResult.NO_WORKER, decoded.getWorkerId());
+        Assert.assertTrue(decoded.isPartial());
+        Assert.assertEquals(1, decoded.getMissingPartials());
+    }
+
+    @Test(expected = IOException.class)
+    public void unsupported_version() throws IOException {
+        byte[] payload = MapResultCodec.encode(new MapResult(1, new ArrayList<>(), null));
+        payload[0] = MapResultCodec.VERSION + 1;
+        MapResultCodec.decode(payload);
+    }
+}
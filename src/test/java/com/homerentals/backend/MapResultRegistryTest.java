@@ -0,0 +1,109 @@
+package com.homerentals.backend;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MapResultRegistryTest {
+    private static MapResult result(int mapId) {
+        return new MapResult(mapId, new ArrayList<>(), null);
+    }
+
+    @Test
+    public void result_before_await() throws Exception {
+        MapResultRegistry registry = new MapResultRegistry();
+        CompletableFuture<MapResult> future = registry.register(1);
+        Assert.assertTrue(registry.complete(result(1)));
+
+        Assert.assertEquals(1, registry.await(1, future, 1000).getMapId());
+        Assert.assertEquals(0, registry.getPendingCount());
+    }
+
+    @Test
+    public void timeout_cancels_call() throws Exception {
+        MapResultRegistry registry = new MapResultRegistry();
+        CompletableFuture<MapResult> future = registry.register(2);
+        try {
+            registry.await(2, future, 10);
+            Assert.fail();
+        } catch (TimeoutException e) {
+            // Expected
+        }
+        Assert.assertTrue(future.isCancelled());
+        Assert.assertEquals(0, registry.getPendingCount());
+        // Late result is dropped
+        Assert.assertFalse(registry.complete(result(2)));
+    }
+
+    @Test
+    public void fail_all() throws Exception {
+        MapResultRegistry registry = new MapResultRegistry();
+        CompletableFuture<MapResult> future = registry.register(3);
+        registry.failAll(new IOException("closed"));
+        try {
+            registry.await(3, future, 1000);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+        Assert.assertEquals(0, registry.getPendingCount());
+    }
+
+    @Test
+    public void concurrent_waiters_get_their_own_result() throws Exception {
+        int calls = 200;
+        MapResultRegistry registry = new MapResultRegistry();
+        AtomicInteger mismatches = new AtomicInteger();
+        ArrayList<Thread> waiters = new ArrayList<>();
+        for (int mapId = 0; mapId < calls; mapId++) {
+            final int id = mapId;
+            CompletableFuture<MapResult> future = registry.register(id);
+            Thread waiter = new Thread(() -> {
+                try {
+                    if (registry.await(id, future, 10_000).getMapId() != id) {
+                        mismatches.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    mismatches.incrementAndGet();
+                }
+            });
+            waiter.start();
+            waiters.add(waiter);
+        }
+
+        // Results arrive in any order
+        ArrayList<Integer> order = new ArrayList<>();
+        for (int mapId = 0; mapId < calls; mapId++) {
+            order.add(mapId);
+        }
+        Collections.shuffle(order);
+        for (int mapId : order) {
+            Assert.assertTrue(registry.complete(result(mapId)));
+        }
+
+        for (Thread waiter : waiters) {
+            waiter.join();
+        }
+        Assert.assertEquals(0, mismatches.get());
+        Assert.assertEquals(0, registry.getPendingCount());
+    }
+
+    @Test
+    public void fail_calls_of_one_reducer() {
+        MapResultRegistry registry = new MapResultRegistry();
+        CompletableFuture<MapResult> first = registry.register(4);
+        CompletableFuture<MapResult> second = registry.register(5);
+        registry.failReducer(BackendUtils.getReducerOf(4, 2), 2, new IOException("closed"));
+
+        Assert.assertTrue(first.isCompletedExceptionally());
+        Assert.assertFalse(second.isDone());
+        Assert.assertEquals(1, registry.getPendingCount());
+    }
+}
@@ -0,0 +1,117 @@
+package com.homerentals.backend;
+
+import com.homerentals.domain.Booking;
+import com.homerentals.domain.Rental;
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class MapperTest {
+    private static final String[] LOCATIONS = {"Crete", "Athens", "Paros", "Zante"};
+    // Three chunks of at least PARALLEL_SCAN_MIN_RENTALS rentals
+    private static final int RENTALS = 3 * BackendUtils.PARALLEL_SCAN_MIN_RENTALS + 123;
+
+    private static ArrayList<Rental> rentals;
+    private static ForkJoinPool pool;
+
+    @BeforeClass
+    public static void createRentals() {
+        Random random = new Random(9);
+        rentals = new ArrayList<>(RENTALS);
+        for (int id = 0; id < RENTALS; id++) {
+            Rental rental = new Rental(null, "Rental " + id, LOCATIONS[random.nextInt(LOCATIONS.length)], 50 + random.nextInt(200),
+                    1 + random.nextInt(8), 2, random.nextInt(11), null, id);
+            if (id % 10 == 0) {
+                LocalDate start = LocalDate.of(2024, 1, 1).plusDays(random.nextInt(300));
+                rental.addBooking(new Booking(String.valueOf(id), id, "guest@example.com", start, start.plusDays(3), 50));
+            }
+            rentals.add(rental);
+        }
+        pool = new ForkJoinPool(2);
+    }
+
+    @AfterClass
+    public static void shutDownPool() {
+        pool.shutdown();
+    }
+
+    private static ArrayList<Integer> ids(ArrayList<RentalSummary> rentals) {
+        ArrayList<Integer> ids = new ArrayList<>();
+        for (RentalSummary rental : rentals) {
+            ids.add(rental.getId());
+        }
+        return ids;
+    }
+
+    private static HashMap<String, Integer> counts(ArrayList<BookingsByLocation> bookings) {
+        HashMap<String, Integer> counts = new HashMap<>();
+        for (BookingsByLocation byLocation : bookings) {
+            Assert.assertNull(counts.put(byLocation.getLocation(), byLocation.getNumOfBookings()));
+        }
+        return counts;
+    }
+
+    @Test
+    public void parallel_scan_matches_sequential_scan() {
+        Mapper sequential = new Mapper(rentals);
+        Mapper parallel = new Mapper(rentals, null, null, null, pool, 3);
+
+        HashMap<String, String> filters = new HashMap<>();
+        filters.put("NIGHTLY_RATE", "120");
+        filters.put("GUESTS", "3");
+        Assert.assertEquals(ids(sequential.mapRentalsToFilters(filters, RentalSummary.Projection.CATALOG)),
+                ids(parallel.mapRentalsToFilters(filters, RentalSummary.Projection.CATALOG)));
+
+        JSONObject body = new JSONObject();
+        body.put(BackendUtils.BODY_FIELD_SORT_BY, "STARS");
+        body.put(BackendUtils.BODY_FIELD_LIMIT, 50);
+        RentalPage page = RentalPage.fromJSON(body);
+        Assert.assertEquals(ids(sequential.mapRentalsToPage(filters, page)), ids(parallel.mapRentalsToPage(filters, page)));
+
+        LocalDate start = LocalDate.of(2024, 3, 1);
+        LocalDate end = LocalDate.of(2024, 9, 30);
+        HashMap<String, Integer> expected = counts(sequential.mapBookingsToLocations(start, end));
+        Assert.assertEquals(LOCATIONS.length, expected.size());
+        Assert.assertEquals(expected, counts(parallel.mapBookingsToLocations(start, end)));
+    }
+
+    @Test
+    public void booking_index_matches_parallel_scan() {
+        // Workers use one of the two, see BackendUtils.useBookingIndex()
+        BookingIndex index = new BookingIndex();
+        for (Rental rental : rentals) {
+            index.addRental(rental);
+            for (Booking booking : rental.getBookings()) {
+                index.addBooking(rental, booking);
+            }
+        }
+        Mapper parallel = new Mapper(rentals, null, null, null, pool, 3);
+        Mapper indexed = new Mapper(rentals, null, null, index, pool, 3);
+
+        LocalDate start = LocalDate.of(2024, 1, 1);
+        for (int length : new int[]{1, 30, 120, 400}) {
+            LocalDate end = start.plusDays(length - 1);
+            Assert.assertEquals(counts(parallel.mapBookingsToLocations(start, end)), counts(indexed.mapBookingsToLocations(start, end)));
+            start = start.plusDays(45);
+        }
+    }
+
+    @Test
+    public void small_partition_is_not_split() {
+        ArrayList<Rental> few = new ArrayList<>(rentals.subList(0, BackendUtils.PARALLEL_SCAN_MIN_RENTALS));
+        ForkJoinPool unused = new ForkJoinPool(2);
+        Mapper parallel = new Mapper(few, null, null, null, unused, 3);
+        Assert.assertEquals(few.size(), parallel.mapRentalsToFilters(new HashMap<>(), RentalSummary.Projection.CATALOG).size());
+        // The pool starts threads only for submitted chunks
+        Assert.assertEquals(0, unused.getPoolSize());
+        unused.shutdown();
+    }
+}
@@ -0,0 +1,94 @@
+package com.homerentals.backend;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public class MessageCodecTest {
+    private static Message roundTrip(Message message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MessageCodec.write(new DataOutputStream(bytes), message);
+        return MessageCodec.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    @Test
+    public void header_and_body() throws IOException {
+        JSONObject body = new JSONObject();
+        body.put(BackendUtils.BODY_FIELD_RENTAL_ID, 7);
+        body.put(BackendUtils.BODY_FIELD_START_DATE, "01/06/2024");
+        Message message = BackendUtils.createRequest(Requests.CHECK_AVAILABILITY, body).withCorrelationId(42);
+
+        Message decoded = roundTrip(message);
+        Assert.assertTrue(decoded.isRequest());
+        Assert.assertEquals(Requests.CHECK_AVAILABILITY, decoded.getHeader());
+        Assert.assertEquals(42, decoded.getCorrelationId());
+        Assert.assertEquals(7, decoded.getBody().getInt(BackendUtils.BODY_FIELD_RENTAL_ID));
+        Assert.assertEquals("01/06/2024", decoded.getBody().getString(BackendUtils.BODY_FIELD_START_DATE));
+    }
+
+    @Test
+    public void body_larger_than_64KB() throws IOException {
+        JSONArray rentals = new JSONArray();
+        for (int i = 0; i < 5000; i++) {
+            JSONObject rental = new JSONObject();
+            rental.put(BackendUtils.BODY_FIELD_RENTAL_ID, i);
+            rental.put(BackendUtils.BODY_FIELD_RENTAL_STRING, "Rental #" + i + " in location " + (i % 37));
+            rentals.put(rental);
+        }
+        JSONObject body = new JSONObject();
+        body.put(BackendUtils.BODY_FIELD_RENTALS, rentals);
+        Message message = BackendUtils.createResponse(Requests.GET_RENTALS, body);
+
+        byte[] frame = MessageCodec.encode(message);
+        Assert.assertTrue(body.toString().length() > 65535);
+        // Large bodies are deflated
+        Assert.assertTrue(frame.length < body.toString().length());
+
+        Message decoded = roundTrip(message);
+        Assert.assertFalse(decoded.isRequest());
+        Assert.assertEquals(5000, decoded.getBody().getJSONArray(BackendUtils.BODY_FIELD_RENTALS).length());
+        Assert.assertTrue(body.similar(decoded.getBody()));
+    }
+
+    @Test
+    public void binary_body() throws IOException {
+        byte[] payload = {1, 2, 3, 4, 5};
+        Message decoded = roundTrip(Message.binary(Message.TYPE_RESPONSE, Requests.MAP_RESULT, 3, payload));
+        Assert.assertTrue(decoded.isBinary());
+        Assert.assertEquals(Requests.MAP_RESULT, decoded.getHeader());
+        Assert.assertArrayEquals(payload, decoded.getPayload());
+    }
+
+    @Test
+    public void peek_frame_length() throws IOException {
+        byte[] frame = MessageCodec.encode(BackendUtils.createRequest(Requests.CLOSE_CONNECTION, null));
+        ByteBuffer buffer = ByteBuffer.wrap(frame, 0, 3);
+        Assert.assertEquals(-1, MessageCodec.peekFrameLength(buffer));
+
+        buffer = ByteBuffer.wrap(frame);
+        Assert.assertEquals(frame.length - MessageCodec.LENGTH_FIELD_LENGTH, MessageCodec.peekFrameLength(buffer));
+        Assert.assertEquals(0, buffer.position());
+    }
+
+    @Test(expected = IOException.class)
+    public void unsupported_version() throws IOException {
+        byte[] frame = MessageCodec.encode(BackendUtils.createRequest(Requests.CLOSE_CONNECTION, null));
+        frame[MessageCodec.LENGTH_FIELD_LENGTH] = MessageCodec.VERSION + 1;
+        MessageCodec.decode(ByteBuffer.wrap(frame, MessageCodec.LENGTH_FIELD_LENGTH, frame.length - MessageCodec.LENGTH_FIELD_LENGTH));
+    }
+
+    @Test(expected = IOException.class)
+    public void invalid_frame_length() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4).putInt(MessageCodec.MAX_FRAME_LENGTH + 1);
+        buffer.flip();
+        MessageCodec.peekFrameLength(buffer);
+    }
+}
@@ -0,0 +1,134 @@
+package com.homerentals.backend;
+
+import com.homerentals.domain.Rental;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ReduceJobTest {
+    private static MapResult rentals(int mapId, int... rentalIds) {
+        ArrayList<RentalSummary> rentals = new ArrayList<>();
+        for (int rentalId : rentalIds) {
+            Rental rental = new Rental(null, "Rental " + rentalId, "Crete", 100, 2, 0, 0, null, rentalId);
+            rentals.add(RentalSummary.of(rental, RentalSummary.Projection.CATALOG));
+        }
+        return new MapResult(mapId, rentals, null);
+    }
+
+    private static MapResult bookings(int mapId, String location, int numOfBookings) {
+        ArrayList<BookingsByLocation> bookingsByLocation = new ArrayList<>();
+        bookingsByLocation.add(new BookingsByLocation(location, numOfBookings));
+        return new MapResult(mapId, null, bookingsByLocation);
+    }
+
+    @Test
+    public void complete_on_last_partial() {
+        ReduceJob job = new ReduceJob(1, 3);
+        Assert.assertFalse(job.add(rentals(1, 1, 2)));
+        Assert.assertFalse(job.add(rentals(1)));
+        Assert.assertTrue(job.add(rentals(1, 2, 3)));
+        // Extra partials are dropped
+        Assert.assertFalse(job.add(rentals(1, 4)));
+        Assert.assertEquals(3, job.getReceivedPartials());
+
+        MapResult reduced = job.reduce();
+        Assert.assertEquals(1, reduced.getMapId());
+        Assert.assertEquals(3, reduced.getRentals().size());
+    }
+
+    @Test
+    public void drop_duplicate_partial_of_worker() {
+        ReduceJob job = new ReduceJob(4, 2);
+        ArrayList<RentalSummary> rentals = rentals(4, 1).getRentals();
+        Assert.assertFalse(job.add(new MapResult(4, rentals, null, null, 0, 1000, 0)));
+        // Hedged request answered twice
+        Assert.assertFalse(job.add(new MapResult(4, rentals, null, null, 0, 1000, 0)));
+        Assert.assertEquals(1, job.getDuplicatePartials());
+        Assert.assertTrue(job.add(new MapResult(4, rentals(4, 2).getRentals(), null, null, 1, 1000, 0)));
+
+        MapResult reduced = job.reduce();
+        Assert.assertFalse(reduced.isPartial());
+        Assert.assertEquals(2, reduced.getRentals().size());
+    }
+
+    @Test
+    public void failed_worker_completes_job() {
+        ReduceJob job = new ReduceJob(6, 2);
+        Assert.assertFalse(job.add(new MapResult(6, rentals(6, 1).getRentals(), null, null, 0, 1000, 0)));
+        // The other worker failed to map
+        Assert.assertTrue(job.add(MapResult.failed(6, 1, 1000)));
+
+        MapResult reduced = job.reduce();
+        Assert.assertTrue(reduced.isPartial());
+        Assert.assertEquals(1, reduced.getMissingPartials());
+        Assert.assertEquals(1, reduced.getRentals().size());
+    }
+
+    @Test
+    public void reduce_after_deadline() {
+        ReduceJob job = new ReduceJob(5, 3);
+        job.add(bookings(5, "Crete", 2));
+
+        // Deadline passed with one of three partials
+        MapResult reduced = job.reduce();
+        Assert.assertTrue(reduced.isPartial());
+        Assert.assertEquals(2, reduced.getMissingPartials());
+        Assert.assertEquals(2, reduced.getBookingsByLocation().get(0).getNumOfBookings());
+
+        // Late partials are dropped
+        Assert.assertFalse(job.add(bookings(5, "Crete", 1)));
+        Assert.assertEquals(1, job.getReceivedPartials());
+    }
+
+    @Test
+    public void merge_bookings_by_location() {
+        ReduceJob job = new ReduceJob(2, 3);
+        job.add(bookings(2, "Crete", 2));
+        job.add(bookings(2, "Athens", 1));
+        Assert.assertTrue(job.add(bookings(2, "Crete", 3)));
+
+        MapResult reduced = job.reduce();
+        Assert.assertFalse(reduced.containsRentals());
+        Assert.assertEquals(2, reduced.getBookingsByLocation().size());
+        for (BookingsByLocation byLocation : reduced.getBookingsByLocation()) {
+            Assert.assertEquals(byLocation.getLocation().equals("Crete") ? 5 : 1, byLocation.getNumOfBookings());
+        }
+    }
+
+    @Test
+    public void concurrent_partials_of_many_jobs() throws InterruptedException {
+        int workers = 4;
+        int mapIds = 500;
+        ConcurrentHashMap<Integer, ReduceJob> jobs = new ConcurrentHashMap<>();
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger wrongSize = new AtomicInteger();
+
+        ArrayList<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < workers; w++) {
+            final int worker = w;
+            Thread thread = new Thread(() -> {
+                for (int mapId = 0; mapId < mapIds; mapId++) {
+                    ReduceJob job = jobs.computeIfAbsent(mapId, id -> new ReduceJob(id, workers));
+                    if (job.add(rentals(mapId, worker))) {
+                        completed.incrementAndGet();
+                        if (job.reduce().getRentals().size() != workers) {
+                            wrongSize.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Every job completes exactly once
+        Assert.assertEquals(mapIds, completed.get());
+        Assert.assertEquals(0, wrongSize.get());
+    }
+}
@@ -0,0 +1,81 @@
+package com.homerentals.backend;
+
+import com.homerentals.domain.Rental;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+public class RentalColumnsTest {
+    private static final String[] LOCATIONS = {"Crete", "Athens", "Paros", "crete"};
+
+    private static ArrayList<Integer> ids(ArrayList<RentalSummary> rentals) {
+        ArrayList<Integer> ids = new ArrayList<>();
+        for (RentalSummary rental : rentals) {
+            ids.add(rental.getId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void same_rentals_as_a_scan() {
+        Random random = new Random(5);
+        ArrayList<Rental> rentals = new ArrayList<>();
+        RentalIndex index = new RentalIndex();
+        RentalColumns columns = new RentalColumns();
+        // More than the initial capacity of the columns
+        for (int id = 0; id < 3000; id++) {
+            Rental rental = new Rental(null, "Rental " + id, LOCATIONS[random.nextInt(LOCATIONS.length)], 50 + random.nextInt(20) * 10,
+                    1 + random.nextInt(8), 2, random.nextInt(11), null, id);
+            rental.makeAvailable(LocalDate.of(2024, 1, 1).plusDays(random.nextInt(30)), LocalDate.of(2024, 3, 1));
+            rentals.add(rental);
+            index.add(rental);
+            columns.add(rental);
+        }
+        Assert.assertEquals(3000, columns.size());
+
+        Mapper scan = new Mapper(rentals);
+        Mapper columnar = new Mapper(rentals, null, columns, null, null, 1);
+        Mapper both = new Mapper(rentals, index, columns, null, null, 1);
+        for (int i = 0; i < 300; i++) {
+            HashMap<String, String> filters = new HashMap<>();
+            if (random.nextBoolean()) {
+                filters.put("LOCATION", random.nextBoolean() ? "CRETE" : "Mykonos");
+            }
+            if (random.nextBoolean()) {
+                filters.put("GUESTS", String.valueOf(1 + random.nextInt(7)));
+            }
+            if (random.nextBoolean()) {
+                filters.put("NIGHTLY_RATE", String.valueOf(40 + random.nextInt(220)));
+            }
+            if (random.nextBoolean()) {
+                filters.put("STARS", String.valueOf(random.nextInt(11) / 2.0));
+            }
+            if (random.nextBoolean()) {
+                filters.put("TIME_PERIOD", "10/02/2024-20/02/2024");
+            }
+
+            ArrayList<Integer> expected = ids(scan.mapRentalsToFilters(filters, RentalSummary.Projection.CATALOG));
+            Assert.assertEquals(filters.toString(), expected, ids(columnar.mapRentalsToFilters(filters, RentalSummary.Projection.CATALOG)));
+            Assert.assertEquals(filters.toString(), expected, ids(both.mapRentalsToFilters(filters, RentalSummary.Projection.CATALOG)));
+        }
+    }
+
+    @Test
+    public void rating_updates_stars_column() {
+        RentalColumns columns = new RentalColumns();
+        Rental rental = new Rental(null, "Rental", "Crete", 50, 2, 1, 1, null, 0);
+        columns.add(rental);
+        HashMap<String, String> filters = new HashMap<>();
+        filters.put("STARS", "3");
+        Assert.assertTrue(columns.select(RentalFilter.compile(filters)).isEmpty());
+
+        rental.addRating(5);
+        rental.addRating(5);
+        columns.updateStars(rental);
+        Assert.assertEquals(1, columns.select(RentalFilter.compile(filters)).size());
+    }
+}
@@ -0,0 +1,118 @@
+package com.homerentals.backend;
+
+import com.homerentals.domain.Filters;
+import com.homerentals.domain.Rental;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class RentalFilterTest {
+    private static final String[] LOCATIONS = {"Crete", "Athens", "Paros"};
+
+    private static ArrayList<Rental> createRentals() {
+        Random random = new Random(42);
+        ArrayList<Rental> rentals = new ArrayList<>();
+        for (int id = 0; id < 200; id++) {
+            Rental rental = new Rental(null, "Rental " + id, LOCATIONS[id % LOCATIONS.length], 50 + random.nextInt(10) * 10,
+                    1 + random.nextInt(6), 2, random.nextInt(11), null, id);
+            LocalDate start = LocalDate.of(2024, 1, 1).plusDays(random.nextInt(60));
+            rental.makeAvailable(start, start.plusDays(random.nextInt(30)));
+            rentals.add(rental);
+        }
+        return rentals;
+    }
+
+    private static boolean matchesFilter(Rental rental, HashMap<String, String> filters) {
+        for (Map.Entry<String, String> filter : filters.entrySet()) {
+            if (!rental.matchesFilter(filter.getKey(), filter.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Test
+    public void matches_like_rental() {
+        ArrayList<Rental> rentals = createRentals();
+        Random random = new Random(7);
+        for (int i = 0; i < 200; i++) {
+            HashMap<String, String> filters = new HashMap<>();
+            if (random.nextBoolean()) {
+                filters.put("LOCATION", random.nextBoolean() ? "crete" : "Athens");
+            }
+            if (random.nextBoolean()) {
+                filters.put("GUESTS", String.valueOf(1 + random.nextInt(5)));
+            }
+            if (random.nextBoolean()) {
+                filters.put("NIGHTLY_RATE", String.valueOf(50 + random.nextInt(100)));
+            }
+            if (random.nextBoolean()) {
+                filters.put("STARS", random.nextBoolean() ? "" : "2.5");
+            }
+            if (random.nextBoolean()) {
+                LocalDate start = LocalDate.of(2024, 1, 1).plusDays(random.nextInt(80));
+                LocalDate end = start.plusDays(random.nextInt(10));
+                filters.put("TIME_PERIOD", start.format(BackendUtils.dateFormatter) + "-" + end.format(BackendUtils.dateFormatter));
+            }
+
+            RentalFilter filter = RentalFilter.compile(filters);
+            for (Rental rental : rentals) {
+                Assert.assertEquals(filters + " on " + rental.getId(), matchesFilter(rental, filters), filter.matches(rental));
+            }
+        }
+    }
+
+    @Test
+    public void most_selective_condition_runs_first() {
+        HashMap<String, String> filters = new HashMap<>();
+        filters.put("TIME_PERIOD", "01/01/2024-05/01/2024");
+        filters.put("NIGHTLY_RATE", "60");
+        filters.put("LOCATION", "crete");
+        filters.put("GUESTS", "2");
+        RentalFilter filter = RentalFilter.compile(filters);
+        Assert.assertEquals("LOCATION=crete && GUESTS=2 && NIGHTLY_RATE=60 && TIME_PERIOD=01/01/2024-05/01/2024", filter.toString());
+
+        // A rate few rentals are under goes before a location most of them are in,
+        // the time period stays last
+        HashMap<Filters, Integer> estimates = new HashMap<>();
+        estimates.put(Filters.LOCATION, 180);
+        estimates.put(Filters.GUESTS, 60);
+        estimates.put(Filters.NIGHTLY_RATE, 3);
+        filter.orderBy(estimates);
+        Assert.assertEquals("NIGHTLY_RATE=60 && GUESTS=2 && LOCATION=crete && TIME_PERIOD=01/01/2024-05/01/2024", filter.toString());
+        for (Rental rental : createRentals()) {
+            Assert.assertEquals(matchesFilter(rental, filters), filter.matches(rental));
+        }
+    }
+
+    @Test
+    public void empty_filters_match_everything() {
+        HashMap<String, String> filters = new HashMap<>();
+        filters.put("LOCATION", "");
+        filters.put("TIME_PERIOD", "");
+        RentalFilter filter = RentalFilter.compile(filters);
+        Assert.assertEquals("all", filter.toString());
+        for (Rental rental : createRentals()) {
+            Assert.assertTrue(filter.matches(rental));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknown_filter() {
+        HashMap<String, String> filters = new HashMap<>();
+        filters.put("VIEW", "sea");
+        RentalFilter.compile(filters);
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void invalid_value_fails_once() {
+        HashMap<String, String> filters = new HashMap<>();
+        filters.put("GUESTS", "two");
+        RentalFilter.compile(filters);
+    }
+}
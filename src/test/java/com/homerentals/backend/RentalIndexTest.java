@@ -0,0 +1,186 @@
+package com.homerentals.backend;
+
+import com.homerentals.domain.Booking;
+import com.homerentals.domain.DomainUtils;
+import com.homerentals.domain.Filters;
+import com.homerentals.domain.Rental;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+public class RentalIndexTest {
+    private static final String[] LOCATIONS = {"Crete", "Athens", "Paros", "crete", "Zante", "Corfu", "Rhodes", "Naxos", "Syros", "Milos"};
+
+    private static ArrayList<Rental> createRentals(RentalIndex index) {
+        Random random = new Random(3);
+        ArrayList<Rental> rentals = new ArrayList<>();
+        for (int id = 0; id < 500; id++) {
+            Rental rental = new Rental(null, "Rental " + id, LOCATIONS[random.nextInt(LOCATIONS.length)], 50 + random.nextInt(20) * 10,
+                    1 + random.nextInt(8), 2, random.nextInt(11), null, id);
+            rentals.add(rental);
+            index.add(rental);
+        }
+        return rentals;
+    }
+
+    private static ArrayList<Integer> ids(ArrayList<RentalSummary> rentals) {
+        ArrayList<Integer> ids = new ArrayList<>();
+        for (RentalSummary rental : rentals) {
+            ids.add(rental.getId());
+        }
+        return ids;
+    }
+
+    private static HashMap<String, String> randomFilters(Random random) {
+        HashMap<String, String> filters = new HashMap<>();
+        if (random.nextBoolean()) {
+            filters.put("LOCATION", random.nextBoolean() ? "CRETE" : "Paros");
+        }
+        if (random.nextBoolean()) {
+            filters.put("GUESTS", String.valueOf(1 + random.nextInt(7)));
+        }
+        if (random.nextBoolean()) {
+            filters.put("NIGHTLY_RATE", String.valueOf(40 + random.nextInt(220)));
+        }
+        if (random.nextBoolean()) {
+            filters.put("STARS", String.valueOf(random.nextInt(11) / 2.0));
+        }
+        return filters;
+    }
+
+    @Test
+    public void same_rentals_as_a_scan() {
+        RentalIndex index = new RentalIndex();
+        ArrayList<Rental> rentals = createRentals(index);
+        Mapper scan = new Mapper(rentals);
+        Mapper indexed = new Mapper(rentals, index, null, null, null, 1);
+
+        Random random = new Random(11);
+        for (int i = 0; i < 300; i++) {
+            HashMap<String, String> filters = randomFilters(random);
+            Assert.assertEquals(filters.toString(),
+                    ids(scan.mapRentalsToFilters(filters, RentalSummary.Projection.CATALOG)),
+                    ids(indexed.mapRentalsToFilters(filters, RentalSummary.Projection.CATALOG)));
+        }
+    }
+
+    @Test
+    public void estimates_count_the_rentals_of_each_filter() {
+        RentalIndex index = new RentalIndex();
+        ArrayList<Rental> rentals = createRentals(index);
+        HashMap<String, String> filters = new HashMap<>();
+        filters.put("LOCATION", "Crete");
+        filters.put("NIGHTLY_RATE", "60");
+        filters.put("TIME_PERIOD", "01/01/2024-05/01/2024");
+        HashMap<Filters, Integer> estimates = index.estimates(RentalFilter.compile(filters));
+
+        int crete = 0;
+        int cheap = 0;
+        for (Rental rental : rentals) {
+            crete += rental.matchesFilter("LOCATION", "Crete") ? 1 : 0;
+            cheap += rental.matchesFilter("NIGHTLY_RATE", "60") ? 1 : 0;
+        }
+        Assert.assertEquals(2, estimates.size());
+        Assert.assertEquals(crete, (int) estimates.get(Filters.LOCATION));
+        Assert.assertEquals(cheap, (int) estimates.get(Filters.NIGHTLY_RATE));
+    }
+
+    @Test
+    public void location_is_case_insensitive() {
+        RentalIndex index = new RentalIndex();
+        ArrayList<Rental> rentals = createRentals(index);
+        HashMap<String, String> filters = new HashMap<>();
+        filters.put("LOCATION", "cReTe");
+        ArrayList<Rental> candidates = index.candidates(RentalFilter.compile(filters));
+
+        int expected = 0;
+        for (Rental rental : rentals) {
+            if (rental.getLocation().equalsIgnoreCase("crete")) {
+                expected++;
+            }
+        }
+        Assert.assertEquals(expected, candidates.size());
+
+        // No indexed filter, or one that keeps most rentals: the Mapper scans every rental
+        Assert.assertNull(index.candidates(RentalFilter.compile(new HashMap<>())));
+        filters.put("LOCATION", "");
+        filters.put("NIGHTLY_RATE", "1000");
+        Assert.assertNull(index.candidates(RentalFilter.compile(filters)));
+    }
+
+    @Test
+    public void rating_moves_rental_to_its_stars() {
+        RentalIndex index = new RentalIndex();
+        Rental rental = new Rental(null, "Rental", "Crete", 50, 2, 1, 1, null, 0);
+        index.add(rental);
+        for (int id = 1; id < 20; id++) {
+            index.add(new Rental(null, "Rental " + id, "Crete", 50, 2, 0, 0, null, id));
+        }
+        HashMap<String, String> filters = new HashMap<>();
+        filters.put("STARS", "3");
+        Assert.assertTrue(index.candidates(RentalFilter.compile(filters)).isEmpty());
+
+        double previousStars = rental.getStars();
+        rental.addRating(5);
+        rental.addRating(5);
+        index.updateStars(rental, previousStars);
+        Assert.assertEquals(1, index.candidates(RentalFilter.compile(filters)).size());
+
+        filters.put("STARS", "4");
+        Assert.assertTrue(index.candidates(RentalFilter.compile(filters)).isEmpty());
+    }
+
+    @Test
+    public void time_period_follows_bookings_and_updates() {
+        RentalIndex index = new RentalIndex();
+        ArrayList<Rental> rentals = createRentals(index);
+        Mapper scan = new Mapper(rentals);
+        Mapper indexed = new Mapper(rentals, index, null, null, null, 1);
+        LocalDate first = LocalDate.of(2024, 1, 1);
+
+        Random random = new Random(13);
+        for (int i = 0; i < 300; i++) {
+            // Make available, then book, random days of random rentals
+            Rental rental = rentals.get(random.nextInt(rentals.size()));
+            LocalDate startDate = first.plusDays(random.nextInt(120));
+            LocalDate endDate = startDate.plusDays(random.nextInt(40));
+            if (random.nextInt(3) > 0) {
+                if (rental.makeAvailable(startDate, endDate)) {
+                    index.updateAvailability(rental, startDate, endDate);
+                }
+            } else if (rental.getAvailability(startDate, endDate)) {
+                rental.addBooking(new Booking(String.valueOf(i), rental.getId(), "guest@example.com", startDate, endDate, 50));
+                index.updateAvailability(rental, startDate, endDate);
+            }
+
+            HashMap<String, String> filters = randomFilters(random);
+            LocalDate from = first.plusDays(random.nextInt(150));
+            LocalDate to = from.plusDays(random.nextInt(10));
+            filters.put("TIME_PERIOD", DomainUtils.dateFormatter.format(from) + "-" + DomainUtils.dateFormatter.format(to));
+            Assert.assertEquals(filters.toString(),
+                    ids(scan.mapRentalsToFilters(filters, RentalSummary.Projection.CATALOG)),
+                    ids(indexed.mapRentalsToFilters(filters, RentalSummary.Projection.CATALOG)));
+        }
+    }
+
+    @Test
+    public void added_rental_keeps_its_availability() {
+        RentalIndex index = new RentalIndex();
+        Rental rental = new Rental(null, "Rental", "Crete", 50, 2, 0, 0, null, 0);
+        rental.makeAvailable(LocalDate.of(2024, 5, 1), LocalDate.of(2024, 5, 31));
+        index.add(rental);
+        for (int id = 1; id < 20; id++) {
+            index.add(new Rental(null, "Rental " + id, "Crete", 50, 2, 0, 0, null, id));
+        }
+
+        HashMap<String, String> filters = new HashMap<>();
+        filters.put("TIME_PERIOD", "10/05/2024-20/05/2024");
+        Assert.assertEquals(1, index.candidates(RentalFilter.compile(filters)).size());
+        filters.put("TIME_PERIOD", "10/05/2024-01/06/2024");
+        Assert.assertTrue(index.candidates(RentalFilter.compile(filters)).isEmpty());
+    }
+}
@@ -0,0 +1,98 @@
+package com.homerentals.backend;
+
+import com.homerentals.domain.Rental;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+public class RentalPageTest {
+    private static ArrayList<Rental> createRentals(int fromId, int toId) {
+        Random random = new Random(fromId);
+        ArrayList<Rental> rentals = new ArrayList<>();
+        for (int id = fromId; id < toId; id++) {
+            // Few distinct rates, so ties are broken by id
+            rentals.add(new Rental(null, "Rental " + id, "Crete", 50 + random.nextInt(5) * 10, 1 + random.nextInt(6), 2, random.nextInt(11), null, id));
+        }
+        return rentals;
+    }
+
+    private static JSONObject body(String sortBy, int limit, String cursor) {
+        JSONObject body = new JSONObject();
+        body.put(BackendUtils.BODY_FIELD_SORT_BY, sortBy);
+        body.put(BackendUtils.BODY_FIELD_LIMIT, limit);
+        if (cursor != null) {
+            body.put(BackendUtils.BODY_FIELD_CURSOR, cursor);
+        }
+        return body;
+    }
+
+    @Test
+    public void from_json() {
+        Assert.assertNull(RentalPage.fromJSON(new JSONObject()));
+
+        RentalPage page = RentalPage.fromJSON(body("stars", 10, null));
+        Assert.assertEquals(RentalPage.SortKey.STARS, page.getSortKey());
+        Assert.assertTrue(page.isDescending());
+        Assert.assertEquals(10, page.getLimit());
+
+        JSONObject body = new JSONObject();
+        body.put(BackendUtils.BODY_FIELD_LIMIT, 5);
+        page = RentalPage.fromJSON(body);
+        Assert.assertEquals(RentalPage.SortKey.RENTAL_ID, page.getSortKey());
+        Assert.assertFalse(page.isDescending());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalid_cursor() {
+        RentalPage.fromJSON(body("NIGHTLY_RATE", 10, "abc"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalid_limit() {
+        RentalPage.fromJSON(body("NIGHTLY_RATE", BackendUtils.MAX_PAGE_LIMIT + 1, null));
+    }
+
+    @Test
+    public void pages_of_two_workers() {
+        Mapper first = new Mapper(createRentals(0, 60));
+        Mapper second = new Mapper(createRentals(60, 100));
+        HashMap<String, String> filters = new HashMap<>();
+
+        // Expected order: every rental, fully sorted
+        ArrayList<RentalSummary> expected = new ArrayList<>();
+        RentalPage all = RentalPage.fromJSON(body("NIGHTLY_RATE", 100, null));
+        expected.addAll(first.mapRentalsToPage(filters, all));
+        expected.addAll(second.mapRentalsToPage(filters, all));
+        expected.sort(all.comparator());
+
+        ArrayList<RentalSummary> paged = new ArrayList<>();
+        String cursor = null;
+        int mapId = 0;
+        do {
+            RentalPage page = RentalPage.fromJSON(body("NIGHTLY_RATE", 7, cursor));
+            ArrayList<RentalSummary> firstRun = first.mapRentalsToPage(filters, page);
+            ArrayList<RentalSummary> secondRun = second.mapRentalsToPage(filters, page);
+            Assert.assertTrue(firstRun.size() <= 7 && secondRun.size() <= 7);
+
+            ReduceJob job = new ReduceJob(mapId, 2);
+            job.add(new MapResult(mapId, firstRun, null, page));
+            job.add(new MapResult(mapId, secondRun, null, page));
+            ArrayList<RentalSummary> rentals = job.reduce().getRentals();
+            paged.addAll(rentals);
+            cursor = (rentals.size() == page.getLimit()) ? page.cursorAfter(rentals.get(rentals.size() - 1)) : null;
+            mapId++;
+        } while (cursor != null);
+
+        Assert.assertEquals(100, paged.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(expected.get(i).getId(), paged.get(i).getId());
+        }
+        for (int i = 1; i < paged.size(); i++) {
+            Assert.assertTrue(paged.get(i - 1).getNightlyRate() <= paged.get(i).getNightlyRate());
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.homerentals.backend;
+
+import com.homerentals.domain.Rental;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+public class SearchCacheTest {
+    private static final long MAX_BYTES = 1024 * 1024;
+    private static final long MAX_AGE_MS = 60_000;
+
+    private static JSONObject body(String location, String timePeriod) {
+        JSONObject filters = new JSONObject();
+        if (location != null) {
+            filters.put("LOCATION", location);
+        }
+        if (timePeriod != null) {
+            filters.put("TIME_PERIOD", timePeriod);
+        }
+        JSONObject body = new JSONObject();
+        body.put(BackendUtils.BODY_FIELD_FILTERS, filters);
+        return body;
+    }
+
+    private static MapResult result(String location, int... ids) {
+        ArrayList<RentalSummary> rentals = new ArrayList<>();
+        for (int id : ids) {
+            Rental rental = new Rental(null, "Rental " + id, location, 50, 2, 2, 0, null, id);
+            rentals.add(RentalSummary.of(rental, RentalSummary.Projection.CATALOG));
+        }
+        return new MapResult(0, rentals, null);
+    }
+
+    private static String cache(SearchCache cache, JSONObject body, MapResult result) {
+        String key = SearchCache.keyOf(body, null);
+        Assert.assertTrue(cache.put(key, body, null, result, cache.getGeneration()));
+        return key;
+    }
+
+    @Test
+    public void same_key_for_same_search() {
+        JSONObject body = body("Crete", null);
+        body.getJSONObject(BackendUtils.BODY_FIELD_FILTERS).put("GUESTS", "2");
+        JSONObject other = body(" crete", null);
+        other.getJSONObject(BackendUtils.BODY_FIELD_FILTERS).put("GUESTS", "2.0");
+        other.getJSONObject(BackendUtils.BODY_FIELD_FILTERS).put("STARS", "");
+        Assert.assertEquals(SearchCache.keyOf(body, null), SearchCache.keyOf(other, null));
+        Assert.assertNotEquals(SearchCache.keyOf(body, null), SearchCache.keyOf(body("Paros", null), null));
+
+        JSONObject paged = new JSONObject();
+        paged.put(BackendUtils.BODY_FIELD_SORT_BY, "stars");
+        Assert.assertNotEquals(SearchCache.keyOf(body, null), SearchCache.keyOf(body, RentalPage.fromJSON(paged)));
+    }
+
+    @Test
+    public void new_rental_drops_searches_of_its_location() {
+        SearchCache cache = new SearchCache(MAX_BYTES, MAX_AGE_MS);
+        String crete = cache(cache, body("Crete", null), result("Crete", 0, 1));
+        String paros = cache(cache, body("Paros", null), result("Paros", 2));
+        String all = cache(cache, body(null, null), result("Crete", 0, 1, 2));
+
+        cache.onNewRental(3, "crete");
+        Assert.assertNull(cache.get(crete));
+        Assert.assertNull(cache.get(all));
+        Assert.assertNotNull(cache.get(paros));
+    }
+
+    @Test
+    public void booking_drops_date_searches_that_contain_the_rental() {
+        SearchCache cache = new SearchCache(MAX_BYTES, MAX_AGE_MS);
+        cache.onNewRental(0, "Crete");
+        cache.onNewRental(1, "Crete");
+        String datesWithRental = cache(cache, body("Crete", "01/01/2024-05/01/2024"), result("Crete", 0, 1));
+        String datesWithoutRental = cache(cache, body("Crete", "01/02/2024-05/02/2024"), result("Crete", 1));
+        String noDates = cache(cache, body("Crete", null), result("Crete", 0, 1));
+
+        cache.onNewBooking(0);
+        Assert.assertNull(cache.get(datesWithRental));
+        Assert.assertNotNull(cache.get(datesWithoutRental));
+        Assert.assertNotNull(cache.get(noDates));
+
+        // New availability may add the rental to any date search of its location
+        cache.onAvailabilityUpdate(0);
+        Assert.assertNull(cache.get(datesWithoutRental));
+        Assert.assertNotNull(cache.get(noDates));
+
+        // A rating changes the stars the search returns
+        cache.onNewRating(0);
+        Assert.assertNull(cache.get(noDates));
+    }
+
+    @Test
+    public void write_during_search_is_not_cached() {
+        SearchCache cache = new SearchCache(MAX_BYTES, MAX_AGE_MS);
+        cache.onNewRental(0, "Crete");
+        cache.onNewRental(1, "Paros");
+
+        JSONObject crete = body("Crete", null);
+        long generation = cache.getGeneration();
+        cache.onNewRating(0);
+        Assert.assertFalse(cache.put(SearchCache.keyOf(crete, null), crete, null, result("Crete", 0), generation));
+
+        // A write to another location does not change the result
+        JSONObject paros = body("Paros", null);
+        generation = cache.getGeneration();
+        cache.onNewRating(0);
+        Assert.assertTrue(cache.put(SearchCache.keyOf(paros, null), paros, null, result("Paros", 1), generation));
+        Assert.assertTrue(cache.toString().contains("staleRejected=1"));
+    }
+
+    @Test
+    public void search_before_new_rental_ack_is_dropped() {
+        SearchCache cache = new SearchCache(MAX_BYTES, MAX_AGE_MS);
+        cache.onNewRental(0, "Crete");
+
+        // Rental 1 is sent to its worker, searches start before the worker acks it
+        JSONObject crete = body("Crete", null);
+        JSONObject all = body(null, null);
+        long creteGeneration = cache.getGeneration();
+        long allGeneration = cache.getGeneration();
+
+        // One finishes before the ack, without the new rental
+        String key = SearchCache.keyOf(crete, null);
+        Assert.assertTrue(cache.put(key, crete, null, result("Crete", 0), creteGeneration));
+
+        // The ack drops it, and the other one finishes too late to be cached
+        cache.onNewRental(1, "Crete");
+        Assert.assertNull(cache.get(key));
+        Assert.assertFalse(cache.put(SearchCache.keyOf(all, null), all, null, result("Crete", 0), allGeneration));
+    }
+
+    @Test
+    public void least_recently_used_is_evicted() {
+        MapResult result = result("Crete", 0, 1, 2);
+        // Room for two entries
+        SearchCache probe = new SearchCache(MAX_BYTES, MAX_AGE_MS);
+        cache(probe, body("Crete", null), result);
+        SearchCache cache = new SearchCache(probe.getBytes() * 5 / 2, MAX_AGE_MS);
+
+        String first = cache(cache, body("Crete", null), result);
+        String second = cache(cache, body("crete ", "01/01/2024-05/01/2024"), result);
+        Assert.assertNotNull(cache.get(first));
+        String third = cache(cache, body("Crete", "01/02/2024-05/02/2024"), result);
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertNotNull(cache.get(first));
+        Assert.assertNull(cache.get(second));
+        Assert.assertNotNull(cache.get(third));
+        Assert.assertTrue(cache.getBytes() <= probe.getBytes() * 5 / 2);
+    }
+
+    @Test
+    public void partial_result_is_not_cached() {
+        SearchCache cache = new SearchCache(MAX_BYTES, MAX_AGE_MS);
+        JSONObject body = body(null, null);
+        MapResult partial = new MapResult(0, new ArrayList<>(), null, null, MapResult.NO_WORKER, 0, 1);
+        Assert.assertFalse(cache.put(SearchCache.keyOf(body, null), body, null, partial, cache.getGeneration()));
+
+        SearchCache disabled = new SearchCache(0, MAX_AGE_MS);
+        Assert.assertFalse(disabled.put(SearchCache.keyOf(body, null), body, null, result("Crete", 0), disabled.getGeneration()));
+        Assert.assertNull(disabled.get(SearchCache.keyOf(body, null)));
+    }
+}
@@ -0,0 +1,125 @@
+package com.homerentals.backend;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+public class WorkerConnectionPoolTest {
+    // Accepts connections and never responds
+    private ServerSocket silentWorker;
+    private final ArrayList<Socket> accepted = new ArrayList<>();
+    private WorkerConnectionPool pool;
+
+    @Before
+    public void startWorker() throws IOException {
+        this.silentWorker = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(() -> {
+            try {
+                while (true) {
+                    Socket socket = this.silentWorker.accept();
+                    synchronized (this.accepted) {
+                        this.accepted.add(socket);
+                    }
+                }
+            } catch (IOException e) {
+                // Closed by the test
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        WorkerInfo workerInfo = new WorkerInfo(new InetSocketAddress("127.0.0.1", this.silentWorker.getLocalPort()),
+                String.valueOf(this.silentWorker.getLocalPort()));
+        this.pool = new WorkerConnectionPool(workerInfo, 1, 2, 200);
+    }
+
+    @After
+    public void stopWorker() throws IOException {
+        this.pool.close();
+        this.silentWorker.close();
+        synchronized (this.accepted) {
+            for (Socket socket : this.accepted) {
+                socket.close();
+            }
+        }
+    }
+
+    private CompletableFuture<Message> call() {
+        return this.pool.sendAsync(BackendUtils.createRequest(Requests.GET_RENTALS, new JSONObject()));
+    }
+
+    @Test
+    public void full_pool_waits_then_times_out() throws InterruptedException {
+        CompletableFuture<Message> first = this.call();
+        CompletableFuture<Message> second = this.call();
+        Assert.assertEquals(1, this.pool.getOpenCount());
+        Assert.assertEquals(2, this.pool.getActiveCount());
+
+        // No room left and no more connections allowed
+        CompletableFuture<Message> third = this.call();
+        try {
+            third.get();
+            Assert.fail("Borrow should time out");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+        Assert.assertEquals(1, this.pool.getBorrowTimeoutCount());
+        Assert.assertTrue(this.pool.getMaxWaitMillis() >= 150);
+
+        // A finished call makes room for the next one
+        first.cancel(false);
+        CompletableFuture<Message> fourth = this.call();
+        Assert.assertFalse(fourth.isDone());
+        Assert.assertEquals(2, this.pool.getActiveCount());
+        Assert.assertEquals(1, this.pool.getCreatedCount());
+        second.cancel(false);
+        fourth.cancel(false);
+    }
+
+    @Test
+    public void waiting_call_gets_freed_room() throws Exception {
+        CompletableFuture<Message> first = this.call();
+        this.call();
+
+        Thread finisher = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                return;
+            }
+            first.cancel(false);
+        });
+        finisher.start();
+        CompletableFuture<Message> third = this.call();
+        finisher.join();
+        Assert.assertFalse(third.isCompletedExceptionally());
+        Assert.assertEquals(0, this.pool.getBorrowTimeoutCount());
+        Assert.assertTrue(this.pool.getMaxWaitMillis() >= 30);
+    }
+
+    @Test
+    public void new_connection_skips_full_pool() throws Exception {
+        this.call();
+        this.call();
+
+        CompletableFuture<Message> hedge = this.pool.sendAsyncOnNewConnection(BackendUtils.createRequest(Requests.GET_RENTALS, new JSONObject()));
+        Assert.assertFalse(hedge.isDone());
+        // Sent right away on a connection the pool does not share
+        Assert.assertEquals(1, this.pool.getOpenCount());
+        Assert.assertEquals(2, this.pool.getActiveCount());
+        Assert.assertEquals(2, this.pool.getCreatedCount());
+        Assert.assertEquals(0, this.pool.getBorrowTimeoutCount());
+        hedge.cancel(false);
+    }
+}
@@ -0,0 +1,97 @@
+package com.homerentals.benchmarks;
+
+import com.homerentals.domain.Rental;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+/*
+Availability checks of 1, 14 and 365 night ranges:
+ - days: one boolean per day in a HashMap of years, walked one
+   LocalDate at a time, the way CalendarYear and AvailabilitySearch
+   used to work
+ - bitset: Rental.getAvailability() on its AvailabilityBitSet
+
+Usage: AvailabilityBenchmark [checks] [rounds]
+ */
+public class AvailabilityBenchmark {
+    private static final int YEARS = 3;
+    private static final int FIRST_YEAR = 2024;
+
+    private static boolean daysAvailable(HashMap<Integer, boolean[]> availability, LocalDate startDate, LocalDate endDate) {
+        for (LocalDate date = startDate; date.isBefore(endDate.plusDays(1)); date = date.plusDays(1)) {
+            boolean[] year = availability.get(date.getYear());
+            if (year == null || !year[date.getDayOfYear() - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static double run(String mode, Rental rental, HashMap<Integer, boolean[]> days, LocalDate[] starts, int nights, int rounds, int[] available) {
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < rounds; r++) {
+            int count = 0;
+            long start = System.nanoTime();
+            for (LocalDate startDate : starts) {
+                LocalDate endDate = startDate.plusDays(nights - 1);
+                boolean isAvailable = mode.equals("days")
+                        ? daysAvailable(days, startDate, endDate)
+                        : rental.getAvailability(startDate, endDate);
+                count += isAvailable ? 1 : 0;
+            }
+            best = Math.min(best, System.nanoTime() - start);
+            available[0] = count;
+        }
+        // Nanoseconds per check of the fastest round
+        return (double) best / starts.length;
+    }
+
+    public static void main(String[] args) {
+        int checks = (args.length > 0) ? Integer.parseInt(args[0]) : 200_000;
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+
+        // Available for the whole period except a few bookings,
+        // so most checks read every day of their range
+        Rental rental = new Rental(null, "Rental", "Crete", 100, 4, 0, 0, null, 0);
+        LocalDate first = LocalDate.of(FIRST_YEAR, 1, 1);
+        LocalDate last = LocalDate.of(FIRST_YEAR + YEARS - 1, 12, 31);
+        rental.makeAvailable(first, last);
+        HashMap<Integer, boolean[]> days = new HashMap<>();
+        for (int year = FIRST_YEAR; year < FIRST_YEAR + YEARS; year++) {
+            boolean[] yearDays = new boolean[LocalDate.of(year, 1, 1).lengthOfYear()];
+            Arrays.fill(yearDays, true);
+            days.put(year, yearDays);
+        }
+        Random random = new Random(3);
+        for (int b = 0; b < 6; b++) {
+            LocalDate booked = first.plusDays(random.nextInt(YEARS * 365 - 5));
+            rental.toggleAvailability(booked, booked.plusDays(2));
+            for (LocalDate date = booked; !date.isAfter(booked.plusDays(2)); date = date.plusDays(1)) {
+                days.get(date.getYear())[date.getDayOfYear() - 1] = false;
+            }
+        }
+
+        for (int nights : new int[]{1, 14, 365}) {
+            LocalDate[] starts = new LocalDate[checks];
+            for (int i = 0; i < checks; i++) {
+                starts[i] = first.plusDays(random.nextInt(YEARS * 365 - nights));
+            }
+
+            int[] availableDays = new int[1];
+            int[] availableBits = new int[1];
+            // Warm up
+            run("days", rental, days, starts, nights, 2, availableDays);
+            run("bitset", rental, days, starts, nights, 2, availableBits);
+            double daysNanos = run("days", rental, days, starts, nights, rounds, availableDays);
+            double bitsNanos = run("bitset", rental, days, starts, nights, rounds, availableBits);
+            if (availableDays[0] != availableBits[0]) {
+                throw new IllegalStateException("Different availability for " + nights + " nights");
+            }
+            System.out.printf("%d nights: available=%d/%d, days=%.1fns, bitset=%.1fns per check%n",
+                    nights, availableBits[0], checks, daysNanos, bitsNanos);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.homerentals.benchmarks;
+
+import com.homerentals.backend.BookingIndex;
+import com.homerentals.backend.BookingsByLocation;
+import com.homerentals.backend.Mapper;
+import com.homerentals.domain.Booking;
+import com.homerentals.domain.Rental;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Random;
+
+/*
+GET_BOOKINGS_BY_LOCATION on one worker's rentals:
+ - scan: count the bookings of every rental
+ - index: read the months of the period from BookingIndex
+
+Usage: BookingReportBenchmark [rentals] [bookingsPerRental] [rounds]
+ */
+public class BookingReportBenchmark {
+    private static final String[] LOCATIONS = {"Crete", "Athens", "Thessaloniki", "Paros", "Santorini", "Zante", "Corfu", "Rhodes"};
+    private static final int YEARS = 3;
+
+    private static int total(ArrayList<BookingsByLocation> bookings) {
+        int total = 0;
+        for (BookingsByLocation byLocation : bookings) {
+            total += byLocation.getNumOfBookings();
+        }
+        return total;
+    }
+
+    private static double run(Mapper mapper, LocalDate startDate, LocalDate endDate, int rounds, int[] bookings) {
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < rounds; r++) {
+            long start = System.nanoTime();
+            bookings[0] = total(mapper.mapBookingsToLocations(startDate, endDate));
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        // Milliseconds of the fastest round
+        return best / 1_000_000.0;
+    }
+
+    public static void main(String[] args) {
+        int rentalCount = (args.length > 0) ? Integer.parseInt(args[0]) : 100_000;
+        int bookingsPerRental = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+        int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+
+        System.out.printf("Creating %d rentals with %d bookings each...%n", rentalCount, bookingsPerRental);
+        Random random = new Random(1);
+        LocalDate first = LocalDate.of(2022, 1, 1);
+        int days = YEARS * 365;
+        ArrayList<Rental> rentals = new ArrayList<>(rentalCount);
+        BookingIndex index = new BookingIndex();
+        for (int r = 0; r < rentalCount; r++) {
+            Rental rental = new Rental(null, "Rental " + r, LOCATIONS[r % LOCATIONS.length], 100, 4, 0, 0, null, r);
+            rentals.add(rental);
+            index.addRental(rental);
+            // One booking per slot of the history, so they do not overlap
+            int slot = days / bookingsPerRental;
+            for (int b = 0; b < bookingsPerRental; b++) {
+                LocalDate start = first.plusDays((long) b * slot + random.nextInt(slot / 2));
+                Booking booking = new Booking(r + "-" + b, r, "guest@example.com", start, start.plusDays(1 + random.nextInt(slot / 2)), 100);
+                rental.addBooking(booking);
+                index.addBooking(rental, booking);
+            }
+        }
+
+        Mapper scan = new Mapper(rentals);
+        Mapper indexed = new Mapper(rentals, null, null, index, null, 1);
+        LocalDate from = LocalDate.of(2023, 3, 10);
+        for (int length : new int[]{7, 30, 90, 365}) {
+            LocalDate to = from.plusDays(length - 1);
+            int[] scanned = new int[1];
+            int[] read = new int[1];
+            // Warm up
+            run(scan, from, to, 2, scanned);
+            run(indexed, from, to, 2, read);
+            double scanMillis = run(scan, from, to, rounds, scanned);
+            double indexMillis = run(indexed, from, to, rounds, read);
+            if (scanned[0] != read[0]) {
+                throw new IllegalStateException("Different counts for " + length + " days");
+            }
+            System.out.printf("%d days: bookings=%d, scan=%.2fms, index=%.2fms%n", length, read[0], scanMillis, indexMillis);
+        }
+    }
+}
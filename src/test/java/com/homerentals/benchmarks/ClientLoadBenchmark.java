@@ -0,0 +1,144 @@
+package com.homerentals.benchmarks;
+
+import com.homerentals.backend.BackendUtils;
+import com.homerentals.backend.Message;
+import com.homerentals.backend.MessageCodec;
+import com.homerentals.backend.Requests;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+Load generator for a running backend.
+Opens the given amount of concurrent client connections,
+each of which logs in and then checks availability of rentals.
+Compare the Server with -Dhomerentals.threads=platform and
+-Dhomerentals.threads=virtual.
+
+Usage: ClientLoadBenchmark <clients> <requestsPerClient> [host] [port]
+ */
+public class ClientLoadBenchmark {
+    // Rentals created by the Server on start up
+    private static final int RENTALS = 9;
+
+    private static final AtomicInteger connectFailures = new AtomicInteger();
+    private static final AtomicInteger requestFailures = new AtomicInteger();
+
+    private static Message credentialsRequest() {
+        JSONObject body = new JSONObject();
+        body.put(BackendUtils.BODY_FIELD_GUEST_EMAIL, "guest@example.com");
+        body.put(BackendUtils.BODY_FIELD_GUEST_PASSWORD, "guest");
+        return BackendUtils.createRequest(Requests.CHECK_CREDENTIALS, body);
+    }
+
+    private static Message availabilityRequest(int rentalId) {
+        JSONObject body = new JSONObject();
+        body.put(BackendUtils.BODY_FIELD_RENTAL_ID, rentalId);
+        body.put(BackendUtils.BODY_FIELD_START_DATE, "01/06/2024");
+        body.put(BackendUtils.BODY_FIELD_END_DATE, "05/06/2024");
+        return BackendUtils.createRequest(Requests.CHECK_AVAILABILITY, body);
+    }
+
+    private static long call(DataOutputStream out, DataInputStream in, Message request) throws IOException {
+        long start = System.nanoTime();
+        MessageCodec.write(out, request);
+        JSONObject response = MessageCodec.read(in).getBody();
+        long elapsed = System.nanoTime() - start;
+        if (!response.has(BackendUtils.BODY_FIELD_STATUS) && !response.has(BackendUtils.BODY_FIELD_AVAILABILITY)) {
+            requestFailures.incrementAndGet();
+        }
+        return elapsed;
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1_000_000.0;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: ClientLoadBenchmark <clients> <requestsPerClient> [host] [port]");
+            return;
+        }
+        int clients = Integer.parseInt(args[0]);
+        int requestsPerClient = Integer.parseInt(args[1]);
+        String host = (args.length > 2) ? args[2] : BackendUtils.SERVER_ADDRESS;
+        int port = (args.length > 3) ? Integer.parseInt(args[3]) : BackendUtils.SERVER_PORT;
+
+        long[] latencies = new long[clients * (requestsPerClient + 1)];
+        AtomicInteger recorded = new AtomicInteger();
+        CountDownLatch connected = new CountDownLatch(clients);
+        CountDownLatch start = new CountDownLatch(1);
+        ArrayList<Thread> threads = new ArrayList<>(clients);
+
+        long connectStart = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            final int clientId = c;
+            threads.add(Thread.ofVirtual().name("Client-" + c).start(() -> {
+                Socket socket;
+                DataOutputStream out;
+                DataInputStream in;
+                try {
+                    socket = new Socket(host, port);
+                    socket.setTcpNoDelay(true);
+                    out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                    in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                } catch (IOException e) {
+                    connectFailures.incrementAndGet();
+                    connected.countDown();
+                    return;
+                }
+                connected.countDown();
+
+                try {
+                    start.await();
+                    long elapsed = call(out, in, credentialsRequest());
+                    latencies[recorded.getAndIncrement()] = elapsed;
+                    for (int r = 0; r < requestsPerClient; r++) {
+                        int rentalId = (clientId + r) % RENTALS;
+                        elapsed = call(out, in, availabilityRequest(rentalId));
+                        latencies[recorded.getAndIncrement()] = elapsed;
+                    }
+                } catch (IOException | InterruptedException e) {
+                    requestFailures.incrementAndGet();
+                } finally {
+                    try {
+                        socket.close();
+                    } catch (IOException e) {
+                        // Done with this client
+                    }
+                }
+            }));
+        }
+        connected.await();
+        double connectSeconds = (System.nanoTime() - connectStart) / 1_000_000_000.0;
+
+        long runStart = System.nanoTime();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double runSeconds = (System.nanoTime() - runStart) / 1_000_000_000.0;
+
+        long[] sorted = Arrays.copyOf(latencies, recorded.get());
+        Arrays.sort(sorted);
+        System.out.printf("clients=%d, requests=%d, connectFailures=%d, requestFailures=%d%n",
+                clients, sorted.length, connectFailures.get(), requestFailures.get());
+        System.out.printf("connect=%.2fs, run=%.2fs, throughput=%.0f req/s%n",
+                connectSeconds, runSeconds, sorted.length / runSeconds);
+        System.out.printf("latency p50=%.2fms, p99=%.2fms, max=%.2fms%n",
+                percentile(sorted, 50), percentile(sorted, 99), percentile(sorted, 100));
+    }
+}
@@ -0,0 +1,165 @@
+package com.homerentals.benchmarks;
+
+import com.homerentals.backend.RentalColumns;
+import com.homerentals.backend.RentalFilter;
+import com.homerentals.backend.RentalIndex;
+import com.homerentals.domain.Rental;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/*
+Scan throughput of a worker's rentals:
+ - strings: Rental.matchesFilter() for every filter of the HashMap,
+   which parses the filter values for every rental
+ - compiled: RentalFilter, parsed once, cheapest conditions first
+ - indexed: RentalFilter on the candidates of RentalIndex
+ - columnar: RentalFilter on the rentals that RentalColumns selects
+
+Usage: FilterScanBenchmark [rentals] [rounds]
+Run with a large heap, e.g. -Xmx3g for 1M rentals.
+ */
+public class FilterScanBenchmark {
+    private static final String[] LOCATIONS = {"Crete", "Athens", "Thessaloniki", "Paros", "Santorini", "Zante", "Corfu", "Rhodes"};
+
+    private static ArrayList<Rental> createRentals(int rentals) {
+        Random random = new Random(1);
+        ArrayList<Rental> result = new ArrayList<>(rentals);
+        for (int r = 0; r < rentals; r++) {
+            Rental rental = new Rental(null, "Rental " + r, LOCATIONS[r % LOCATIONS.length], 40 + random.nextInt(300),
+                    1 + random.nextInt(8), 10, random.nextInt(51), null, r);
+            LocalDate start = LocalDate.of(2024, 1, 1).plusDays(random.nextInt(120));
+            rental.makeAvailable(start, start.plusDays(30 + random.nextInt(150)));
+            result.add(rental);
+        }
+        return result;
+    }
+
+    private static int scanStrings(ArrayList<Rental> rentals, HashMap<String, String> filters) {
+        int matches = 0;
+        for (Rental rental : rentals) {
+            boolean match = true;
+            for (Map.Entry<String, String> filter : filters.entrySet()) {
+                if (!rental.matchesFilter(filter.getKey(), filter.getValue())) {
+                    match = false;
+                    break;
+                }
+            }
+            if (match) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    private static int scanCompiled(ArrayList<Rental> rentals, HashMap<String, String> filters) {
+        RentalFilter filter = RentalFilter.compile(filters);
+        int matches = 0;
+        for (Rental rental : rentals) {
+            if (filter.matches(rental)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    private static int scanIndexed(RentalIndex index, ArrayList<Rental> rentals, HashMap<String, String> filters) {
+        RentalFilter filter = RentalFilter.compile(filters);
+        ArrayList<Rental> candidates = index.candidates(filter);
+        int matches = 0;
+        for (Rental rental : (candidates == null) ? rentals : candidates) {
+            if (filter.matches(rental)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    private static int scanColumnar(RentalColumns columns, HashMap<String, String> filters) {
+        RentalFilter filter = RentalFilter.compile(filters);
+        int matches = 0;
+        for (Rental rental : columns.select(filter)) {
+            if (filter.matches(rental)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    private static HashMap<String, String> filters(String... pairs) {
+        HashMap<String, String> filters = new HashMap<>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            filters.put(pairs[i], pairs[i + 1]);
+        }
+        return filters;
+    }
+
+    private static double run(String mode, RentalIndex index, RentalColumns columns, ArrayList<Rental> rentals, HashMap<String, String> filters, int rounds, int[] matches) {
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < rounds; r++) {
+            long start = System.nanoTime();
+            switch (mode) {
+                case "strings":
+                    matches[0] = scanStrings(rentals, filters);
+                    break;
+                case "compiled":
+                    matches[0] = scanCompiled(rentals, filters);
+                    break;
+                case "columnar":
+                    matches[0] = scanColumnar(columns, filters);
+                    break;
+                default:
+                    matches[0] = scanIndexed(index, rentals, filters);
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        // Millions of rentals per second of the fastest round
+        return rentals.size() / (best / 1_000.0);
+    }
+
+    public static void main(String[] args) {
+        int rentalCount = (args.length > 0) ? Integer.parseInt(args[0]) : 1_000_000;
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+
+        System.out.printf("Creating %d rentals...%n", rentalCount);
+        ArrayList<Rental> rentals = createRentals(rentalCount);
+
+        ArrayList<HashMap<String, String>> searches = new ArrayList<>();
+        searches.add(filters("NIGHTLY_RATE", "150"));
+        searches.add(filters("NIGHTLY_RATE", "250", "STARS", "1", "GUESTS", "2"));
+        searches.add(filters("LOCATION", "crete", "GUESTS", "4"));
+        searches.add(filters("NIGHTLY_RATE", "45", "STARS", "4.5"));
+        searches.add(filters("TIME_PERIOD", "01/03/2024-14/03/2024"));
+        searches.add(filters("TIME_PERIOD", "01/09/2024-14/09/2024"));
+        searches.add(filters("TIME_PERIOD", "01/03/2024-14/03/2024", "NIGHTLY_RATE", "200", "STARS", "2.5"));
+        searches.add(filters("LOCATION", "Paros", "TIME_PERIOD", "01/03/2024-14/03/2024", "GUESTS", "2", "NIGHTLY_RATE", "250", "STARS", "1"));
+
+        RentalIndex index = new RentalIndex();
+        RentalColumns columns = new RentalColumns();
+        for (Rental rental : rentals) {
+            index.add(rental);
+            columns.add(rental);
+        }
+
+        String[] modes = {"strings", "compiled", "indexed", "columnar"};
+        for (HashMap<String, String> search : searches) {
+            double[] throughput = new double[modes.length];
+            int[] expected = null;
+            for (int m = 0; m < modes.length; m++) {
+                int[] matches = new int[1];
+                // Warm up
+                run(modes[m], index, columns, rentals, search, 2, matches);
+                throughput[m] = run(modes[m], index, columns, rentals, search, rounds, matches);
+                if (expected != null && expected[0] != matches[0]) {
+                    throw new IllegalStateException("Different matches for " + search);
+                }
+                expected = matches;
+            }
+            System.out.printf("%s: matches=%d, strings=%.1fM, compiled=%.1fM, indexed=%.1fM, columnar=%.1fM rentals/s%n",
+                    RentalFilter.compile(search), expected[0], throughput[0], throughput[1], throughput[2], throughput[3]);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.homerentals.benchmarks;
+
+import com.homerentals.backend.BackendUtils;
+import com.homerentals.backend.Message;
+import com.homerentals.backend.MessageCodec;
+import com.homerentals.backend.Requests;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+Latency of map-reduce calls against a running backend.
+Run it once against a Server started as usual, where the Reducer
+reduces the partial results, and once against a Server started with
+-Dhomerentals.gather=GET_RENTALS,GET_BOOKINGS_BY_LOCATION,
+where the Server gathers them itself, and compare p50 and p99.
+Every client sends the same search, so start the Server with
+-Dhomerentals.searchCache=0 to measure the workers and not the cache,
+and with -Dhomerentals.coalescing=false to send every request to the workers.
+
+Usage: MapReduceLatencyBenchmark <clients> <requestsPerClient> [GET_RENTALS | GET_BOOKINGS_BY_LOCATION] [host] [port]
+ */
+public class MapReduceLatencyBenchmark {
+    private static final int WARM_UP_REQUESTS = 50;
+
+    private static final AtomicInteger requestFailures = new AtomicInteger();
+    private static final AtomicInteger partialResults = new AtomicInteger();
+
+    private static Message createRequest(Requests header) {
+        JSONObject body = new JSONObject();
+        if (header == Requests.GET_BOOKINGS_BY_LOCATION) {
+            body.put(BackendUtils.BODY_FIELD_START_DATE, "01/01/2023");
+            body.put(BackendUtils.BODY_FIELD_END_DATE, "31/12/2024");
+        } else {
+            body.put(BackendUtils.BODY_FIELD_FILTERS, new JSONObject());
+        }
+        return BackendUtils.createRequest(header, body);
+    }
+
+    private static long call(DataOutputStream out, DataInputStream in, Message request) throws IOException {
+        long start = System.nanoTime();
+        MessageCodec.write(out, request);
+        JSONObject response = MessageCodec.read(in).getBody();
+        long elapsed = System.nanoTime() - start;
+        if (!response.has(BackendUtils.BODY_FIELD_RENTALS) && !response.has(BackendUtils.BODY_FIELD_BOOKINGS_BY_LOCATION)) {
+            requestFailures.incrementAndGet();
+        }
+        if (response.optBoolean(BackendUtils.BODY_FIELD_PARTIAL, false)) {
+            partialResults.incrementAndGet();
+        }
+        return elapsed;
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1_000_000.0;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: MapReduceLatencyBenchmark <clients> <requestsPerClient> [GET_RENTALS | GET_BOOKINGS_BY_LOCATION] [host] [port]");
+            return;
+        }
+        int clients = Integer.parseInt(args[0]);
+        int requestsPerClient = Integer.parseInt(args[1]);
+        Requests header = (args.length > 2) ? Requests.valueOf(args[2]) : Requests.GET_RENTALS;
+        String host = (args.length > 3) ? args[3] : BackendUtils.SERVER_ADDRESS;
+        int port = (args.length > 4) ? Integer.parseInt(args[4]) : BackendUtils.SERVER_PORT;
+        Message request = createRequest(header);
+
+        // Warm up the Server, the workers and the Reducer
+        try (Socket socket = new Socket(host, port)) {
+            socket.setTcpNoDelay(true);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            for (int r = 0; r < WARM_UP_REQUESTS; r++) {
+                call(out, in, request);
+            }
+        }
+        requestFailures.set(0);
+        partialResults.set(0);
+
+        long[] latencies = new long[clients * requestsPerClient];
+        AtomicInteger recorded = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ArrayList<Thread> threads = new ArrayList<>(clients);
+        for (int c = 0; c < clients; c++) {
+            threads.add(Thread.ofVirtual().name("Client-" + c).start(() -> {
+                try (Socket socket = new Socket(host, port)) {
+                    socket.setTcpNoDelay(true);
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                    DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                    start.await();
+                    for (int r = 0; r < requestsPerClient; r++) {
+                        latencies[recorded.getAndIncrement()] = call(out, in, request);
+                    }
+                } catch (IOException | InterruptedException e) {
+                    requestFailures.incrementAndGet();
+                }
+            }));
+        }
+
+        long runStart = System.nanoTime();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double runSeconds = (System.nanoTime() - runStart) / 1_000_000_000.0;
+
+        long[] sorted = Arrays.copyOf(latencies, recorded.get());
+        Arrays.sort(sorted);
+        System.out.printf("%s: clients=%d, requests=%d, failures=%d, partial=%d%n",
+                header, clients, sorted.length, requestFailures.get(), partialResults.get());
+        System.out.printf("throughput=%.0f req/s, latency p50=%.2fms, p99=%.2fms, max=%.2fms%n",
+                sorted.length / runSeconds, percentile(sorted, 50), percentile(sorted, 99), percentile(sorted, 100));
+    }
+}
@@ -0,0 +1,148 @@
+package com.homerentals.benchmarks;
+
+import com.homerentals.backend.MapResult;
+import com.homerentals.backend.MessageCodec;
+import com.homerentals.backend.RentalSummary;
+import com.homerentals.domain.Booking;
+import com.homerentals.domain.Rental;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+
+/*
+Compares the Worker -> Reducer transport of map results:
+ - legacy: a new socket and ObjectOutputStream of the full rentals per result
+ - channel: one persistent, buffered socket with MAP_RESULT frames
+   of the projected rentals
+
+Usage: MapResultChannelBenchmark [results] [rentalsPerResult] [bookingsPerRental] [CATALOG|UPCOMING_BOOKINGS]
+ */
+public class MapResultChannelBenchmark {
+    private static ArrayList<Rental> createRentals(int rentals, int bookingsPerRental) {
+        String[] locations = {"Crete", "Athens", "Thessaloniki", "Paros", "Santorini", "Zante"};
+        ArrayList<Rental> result = new ArrayList<>();
+        for (int r = 0; r < rentals; r++) {
+            Rental rental = new Rental(null, "Rental " + r, locations[r % locations.length], 50 + r % 200, 1 + r % 6, r % 10, r % 40, "images/rental" + r + ".png", r);
+            rental.makeAvailable(LocalDate.of(2024, 1, 1), LocalDate.of(2025, 12, 31));
+            LocalDate day = LocalDate.of(2024, 1, 1);
+            for (int b = 0; b < bookingsPerRental; b++) {
+                LocalDate end = day.plusDays(3);
+                rental.addBooking(new Booking(r + "-" + b, r, "guest" + (b % 50) + "@example.com", day, end, rental.getNightlyRate()));
+                day = end.plusDays(2);
+            }
+            result.add(rental);
+        }
+        return result;
+    }
+
+    private static ArrayList<RentalSummary> project(ArrayList<Rental> rentals, RentalSummary.Projection projection) {
+        ArrayList<RentalSummary> result = new ArrayList<>();
+        for (Rental rental : rentals) {
+            result.add(RentalSummary.of(rental, projection));
+        }
+        return result;
+    }
+
+    private static long serializedSize(ArrayList<Rental> result) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(result);
+        }
+        return bytes.size();
+    }
+
+    private static double runLegacy(ArrayList<Rental> result, int count) throws Exception {
+        CountDownLatch received = new CountDownLatch(count);
+        try (ServerSocket reducer = new ServerSocket(0)) {
+            Thread receiver = new Thread(() -> {
+                try {
+                    for (int i = 0; i < count; i++) {
+                        try (Socket socket = reducer.accept();
+                             ObjectInputStream in = new ObjectInputStream(socket.getInputStream())) {
+                            in.readObject();
+                            received.countDown();
+                        }
+                    }
+                } catch (IOException | ClassNotFoundException e) {
+                    e.printStackTrace();
+                }
+            });
+            receiver.start();
+
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                try (Socket socket = new Socket("localhost", reducer.getLocalPort());
+                     ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream())) {
+                    out.writeObject(result);
+                    out.flush();
+                }
+            }
+            received.await();
+            return (System.nanoTime() - start) / 1_000_000_000.0;
+        }
+    }
+
+    private static double runChannel(MapResult result, int count) throws Exception {
+        CountDownLatch received = new CountDownLatch(count);
+        try (ServerSocket reducer = new ServerSocket(0)) {
+            Thread receiver = new Thread(() -> {
+                try (Socket socket = reducer.accept();
+                     DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024))) {
+                    for (int i = 0; i < count; i++) {
+                        MapResult.fromMessage(MessageCodec.read(in));
+                        received.countDown();
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+            receiver.start();
+
+            long start = System.nanoTime();
+            try (Socket socket = new Socket("localhost", reducer.getLocalPort());
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024))) {
+                socket.setTcpNoDelay(true);
+                for (int i = 0; i < count; i++) {
+                    out.write(MessageCodec.encode(result.toMessage()));
+                    out.flush();
+                }
+                received.await();
+            }
+            return (System.nanoTime() - start) / 1_000_000_000.0;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int results = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+        int rentals = (args.length > 1) ? Integer.parseInt(args[1]) : 50;
+        int bookings = (args.length > 2) ? Integer.parseInt(args[2]) : 20;
+        RentalSummary.Projection projection = (args.length > 3) ? RentalSummary.Projection.valueOf(args[3]) : RentalSummary.Projection.CATALOG;
+
+        ArrayList<Rental> fullRentals = createRentals(rentals, bookings);
+        MapResult result = new MapResult(1, project(fullRentals, projection), null);
+        long legacyBytes = serializedSize(fullRentals);
+        long channelBytes = MessageCodec.encode(result.toMessage()).length;
+
+        // Warm up both paths
+        runLegacy(fullRentals, Math.max(1, results / 10));
+        runChannel(result, Math.max(1, results / 10));
+
+        double legacySeconds = runLegacy(fullRentals, results);
+        double channelSeconds = runChannel(result, results);
+
+        System.out.printf("results=%d, rentalsPerResult=%d, bookingsPerRental=%d, projection=%s%n", results, rentals, bookings, projection);
+        System.out.printf("legacy:  %8.0f results/s, %8d bytes/result%n", results / legacySeconds, legacyBytes);
+        System.out.printf("channel: %8.0f results/s, %8d bytes/result%n", results / channelSeconds, channelBytes);
+    }
+}
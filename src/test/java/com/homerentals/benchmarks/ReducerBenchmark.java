@@ -0,0 +1,195 @@
+package com.homerentals.benchmarks;
+
+import com.homerentals.backend.BackendUtils;
+import com.homerentals.backend.MapResult;
+import com.homerentals.backend.MessageCodec;
+import com.homerentals.backend.Reducer;
+import com.homerentals.backend.RentalSummary;
+import com.homerentals.domain.Rental;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+Runs [reducers] Reducer processes against fake workers and a fake Server on this host.
+Like the Server, the benchmark broadcasts every mapId to all workers,
+keeping up to [inFlight] mapIds open at once. Each worker answers
+on its own thread, so partials of different mapIds interleave,
+and sends each partial to the Reducer that owns its mapId.
+Latency is measured from the last partial of a mapId
+until the Server receives its reduced result.
+
+Stop the backend first, the Reducers use the usual ports.
+
+Usage: ReducerBenchmark [workers] [mapIds] [inFlight] [rentalsPerPartial] [reducers]
+ */
+public class ReducerBenchmark {
+    private static final ConcurrentHashMap<Integer, Long> lastPartialSent = new ConcurrentHashMap<>();
+
+    private static ArrayList<RentalSummary> createPartial(int worker, int rentals) {
+        String[] locations = {"Crete", "Athens", "Thessaloniki", "Paros", "Santorini", "Zante"};
+        ArrayList<RentalSummary> result = new ArrayList<>();
+        for (int r = 0; r < rentals; r++) {
+            int id = worker * rentals + r;
+            Rental rental = new Rental(null, "Rental " + id, locations[id % locations.length], 50 + id % 200, 1 + id % 6, id % 10, id % 40, "images/rental" + id + ".png", id);
+            result.add(RentalSummary.of(rental, RentalSummary.Projection.CATALOG));
+        }
+        return result;
+    }
+
+    private static Socket connectToReducer(int reducerIndex) throws InterruptedException {
+        while (true) {
+            try {
+                return new Socket(BackendUtils.REDUCER_ADDRESS, BackendUtils.getReducerPort(reducerIndex));
+            } catch (IOException e) {
+                // Reducer is still starting
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    private static BlockingQueue<Integer> startWorker(int worker, int rentals, int reducers) {
+        BlockingQueue<Integer> mapIds = new LinkedBlockingQueue<>();
+        Thread thread = new Thread(() -> {
+            ArrayList<RentalSummary> partial = createPartial(worker, rentals);
+            ArrayList<Socket> sockets = new ArrayList<>();
+            try {
+                ArrayList<DataOutputStream> outs = new ArrayList<>();
+                for (int r = 0; r < reducers; r++) {
+                    Socket socket = connectToReducer(r);
+                    socket.setTcpNoDelay(true);
+                    sockets.add(socket);
+                    outs.add(new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024)));
+                }
+                while (true) {
+                    int mapId = mapIds.take();
+                    byte[] frame = MessageCodec.encode(new MapResult(mapId, partial, null).toMessage());
+                    DataOutputStream out = outs.get(BackendUtils.getReducerOf(mapId, reducers));
+                    lastPartialSent.merge(mapId, System.nanoTime(), Math::max);
+                    out.write(frame);
+                    out.flush();
+                }
+            } catch (IOException | InterruptedException e) {
+                // Benchmark is over
+            } finally {
+                for (Socket socket : sockets) {
+                    try {
+                        socket.close();
+                    } catch (IOException e) {
+                        // Benchmark is over
+                    }
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return mapIds;
+    }
+
+    private static Process startReducer(int workers, int reducerIndex) throws IOException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                Reducer.class.getName(), String.valueOf(workers), String.valueOf(reducerIndex));
+        // Silence the Reducer logs
+        builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        builder.redirectError(ProcessBuilder.Redirect.DISCARD);
+        return builder.start();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int workers = (args.length > 0) ? Integer.parseInt(args[0]) : 3;
+        int mapIds = (args.length > 1) ? Integer.parseInt(args[1]) : 5000;
+        int inFlight = (args.length > 2) ? Integer.parseInt(args[2]) : 256;
+        int rentals = (args.length > 3) ? Integer.parseInt(args[3]) : 20;
+        int reducers = (args.length > 4) ? Integer.parseInt(args[4]) : 1;
+
+        long[] latencies = new long[mapIds];
+        AtomicInteger received = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(mapIds);
+        Semaphore window = new Semaphore(inFlight);
+        ArrayList<Process> processes = new ArrayList<>();
+        ArrayList<Socket> reducerSockets = new ArrayList<>();
+        long start;
+        try (ServerSocket server = new ServerSocket(BackendUtils.SERVER_PORT)) {
+            for (int r = 0; r < reducers; r++) {
+                processes.add(startReducer(workers, r));
+            }
+
+            // Read the results of every Reducer, like the ReducerHandlers of the Server
+            for (int r = 0; r < reducers; r++) {
+                Socket reducerSocket = server.accept();
+                reducerSockets.add(reducerSocket);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(reducerSocket.getInputStream(), 64 * 1024));
+                // Registration
+                MessageCodec.read(in);
+                Thread reader = new Thread(() -> {
+                    try {
+                        while (true) {
+                            MapResult result = MapResult.fromMessage(MessageCodec.read(in));
+                            long now = System.nanoTime();
+                            latencies[received.getAndIncrement()] = now - lastPartialSent.get(result.getMapId());
+                            window.release();
+                            done.countDown();
+                        }
+                    } catch (IOException e) {
+                        // Benchmark is over
+                    }
+                });
+                reader.setDaemon(true);
+                reader.start();
+            }
+
+            ArrayList<BlockingQueue<Integer>> workerQueues = new ArrayList<>();
+            for (int w = 0; w < workers; w++) {
+                workerQueues.add(startWorker(w, rentals, reducers));
+            }
+
+            // Broadcast mapIds, at most inFlight at a time
+            start = System.nanoTime();
+            Thread dispatcher = new Thread(() -> {
+                try {
+                    for (int mapId = 0; mapId < mapIds; mapId++) {
+                        window.acquire();
+                        for (BlockingQueue<Integer> queue : workerQueues) {
+                            queue.add(mapId);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    // Benchmark is over
+                }
+            });
+            dispatcher.setDaemon(true);
+            dispatcher.start();
+            done.await();
+        } finally {
+            for (Socket socket : reducerSockets) {
+                socket.close();
+            }
+            for (Process process : processes) {
+                process.destroy();
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        Arrays.sort(latencies);
+        System.out.printf("workers=%d, mapIds=%d, inFlight=%d, rentalsPerPartial=%d, reducers=%d%n", workers, mapIds, inFlight, rentals, reducers);
+        System.out.printf("throughput: %.0f mapIds/s%n", mapIds / seconds);
+        System.out.printf("latency after last partial: p50=%.3fms, p99=%.3fms, max=%.3fms%n",
+                latencies[mapIds / 2] / 1_000_000.0, latencies[(int) (mapIds * 0.99)] / 1_000_000.0, latencies[mapIds - 1] / 1_000_000.0);
+        System.exit(0);
+    }
+}
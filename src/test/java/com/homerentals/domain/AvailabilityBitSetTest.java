@@ -0,0 +1,80 @@
+package com.homerentals.domain;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Random;
+
+public class AvailabilityBitSetTest {
+    @Test
+    public void same_days_as_one_flag_per_day() {
+        // Days around 1970 too, where epoch days become negative
+        long[] origins = {LocalDate.of(2024, 1, 1).toEpochDay(), -300};
+        for (long origin : origins) {
+            Random random = new Random(7);
+            AvailabilityBitSet bitSet = new AvailabilityBitSet();
+            boolean[] days = new boolean[1000];
+
+            for (int i = 0; i < 2000; i++) {
+                int from = random.nextInt(days.length);
+                int to = Math.min(days.length - 1, from + random.nextInt(200));
+                if (random.nextBoolean()) {
+                    bitSet.flip(origin + from, origin + to);
+                    for (int day = from; day <= to; day++) {
+                        days[day] = !days[day];
+                    }
+                } else if (random.nextInt(4) == 0) {
+                    bitSet.set(origin + from, origin + to);
+                    for (int day = from; day <= to; day++) {
+                        days[day] = true;
+                    }
+                }
+
+                from = random.nextInt(days.length);
+                to = Math.min(days.length - 1, from + random.nextInt(3) * random.nextInt(70));
+                boolean expected = true;
+                for (int day = from; day <= to; day++) {
+                    expected &= days[day];
+                }
+                Assert.assertEquals(from + "-" + to, expected, bitSet.allSet(origin + from, origin + to));
+            }
+            for (int day = 0; day < days.length; day++) {
+                Assert.assertEquals(days[day], bitSet.get(origin + day));
+            }
+        }
+    }
+
+    @Test
+    public void days_outside_the_set_are_unavailable() {
+        AvailabilityBitSet bitSet = new AvailabilityBitSet();
+        Assert.assertTrue(bitSet.isEmpty());
+        Assert.assertFalse(bitSet.allSet(100, 100));
+
+        bitSet.set(100, 200);
+        Assert.assertTrue(bitSet.allSet(100, 200));
+        Assert.assertFalse(bitSet.allSet(99, 200));
+        Assert.assertFalse(bitSet.allSet(100, 201));
+        Assert.assertFalse(bitSet.allSet(1000, 1001));
+        Assert.assertFalse(bitSet.get(-5));
+    }
+
+    @Test
+    public void availability_map_follows_the_rental() {
+        Rental rental = new Rental(null, "Rental", "Athens", 50.0, 2, 5, 20, "", 0);
+        HashMap<Integer, CalendarYear> years = rental.getAvailabilityMap();
+        Assert.assertTrue(years.isEmpty());
+
+        LocalDate start = LocalDate.of(2024, 12, 20);
+        LocalDate end = LocalDate.of(2025, 1, 10);
+        rental.makeAvailable(start, end);
+        Assert.assertTrue(years.containsKey(2024));
+        Assert.assertTrue(years.containsKey(2025));
+        Assert.assertEquals(years.size(), years.keySet().size());
+        for (LocalDate date = start.minusDays(5); date.isBefore(end.plusDays(5)); date = date.plusDays(1)) {
+            boolean expected = !date.isBefore(start) && !date.isAfter(end);
+            Assert.assertEquals(date.toString(), expected, years.get(date.getYear()).isAvailable(date));
+        }
+    }
+}
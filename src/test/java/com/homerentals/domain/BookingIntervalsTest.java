@@ -0,0 +1,77 @@
+package com.homerentals.domain;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Random;
+
+public class BookingIntervalsTest {
+    private static final LocalDate FIRST_DAY = LocalDate.of(2024, 1, 1);
+
+    private static int countWithin(ArrayList<Booking> bookings, LocalDate startDate, LocalDate endDate) {
+        int count = 0;
+        for (Booking booking : bookings) {
+            if (!booking.getStartDate().isBefore(startDate) && !booking.getEndDate().isAfter(endDate)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static boolean occursDuring(ArrayList<Booking> bookings, LocalDate startDate, LocalDate endDate) {
+        for (Booking booking : bookings) {
+            if (booking.occursDuring(startDate, endDate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void same_answers_as_every_booking() {
+        Random random = new Random(17);
+        // Bookings in random order, some of them overlapping
+        ArrayList<Booking> bookings = new ArrayList<>();
+        BookingIntervals intervals = new BookingIntervals();
+        for (int i = 0; i < 400; i++) {
+            LocalDate start = FIRST_DAY.plusDays(random.nextInt(700));
+            Booking booking = new Booking(String.valueOf(i), 0, "guest@example.com", start, start.plusDays(random.nextInt(15)), 50);
+            bookings.add(booking);
+            intervals.add(booking);
+
+            LocalDate startDate = FIRST_DAY.plusDays(random.nextInt(750) - 20);
+            LocalDate endDate = startDate.plusDays(random.nextInt(60));
+            long startDay = startDate.toEpochDay();
+            long endDay = endDate.toEpochDay();
+            Assert.assertEquals(occursDuring(bookings, startDate, endDate), intervals.overlaps(startDay, endDay));
+            Assert.assertEquals(countWithin(bookings, startDate, endDate), intervals.countWithin(startDay, endDay));
+        }
+        Assert.assertEquals(bookings.size(), intervals.size());
+    }
+
+    @Test
+    public void rental_checks_its_added_bookings() {
+        Rental rental = new Rental(null, "Rental", "Athens", 50.0, 2, 5, 20, "", 0);
+        LocalDate start = LocalDate.of(2024, 6, 1);
+        rental.addBooking(new Booking("0", 0, "guest@example.com", start, start.plusDays(4), 50));
+
+        Assert.assertFalse(rental.makeAvailable(start.plusDays(2), start.plusDays(10)));
+        Assert.assertTrue(rental.makeAvailable(start.plusDays(4), start.plusDays(10)));
+        Assert.assertEquals(1, rental.countBookingsWithin(start, start.plusDays(4)));
+        Assert.assertEquals(0, rental.countBookingsWithin(start.plusDays(1), start.plusDays(30)));
+
+        rental.addBooking(new Booking("1", 0, "guest@example.com", start.plusDays(5), start.plusDays(8), 50));
+        Assert.assertEquals(2, rental.countBookingsWithin(start, start.plusDays(8)));
+        Assert.assertFalse(rental.makeAvailable(start.plusDays(7), start.plusDays(7)));
+
+        // Bookings only change through addBooking()
+        try {
+            rental.getBookings().set(1, new Booking("2", 0, "guest@example.com", start.plusDays(20), start.plusDays(22), 50));
+            Assert.fail("Bookings should be read only");
+        } catch (UnsupportedOperationException e) {
+            Assert.assertEquals(2, rental.getBookings().size());
+        }
+    }
+}
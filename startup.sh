@@ -42,7 +42,28 @@ PORTS_FILE="$BACKEND_PACKAGE/$PORTS_FILE_NAME"
 # Define directory for log file
 LOG_FILE="../../../$LOG_DIR/startup.log"
 
-log "Starting application setup with $WORKERS workers."
+REDUCERS=${REDUCERS:-1}
+log "Starting application setup with $WORKERS workers and $REDUCERS reducers."
+
+# Handler thread mode, virtual threads require Java 21 or newer
+THREAD_MODE=${THREAD_MODE:-platform}
+JAVA_OPTS="-Dhomerentals.threads=$THREAD_MODE"
+log "Using $THREAD_MODE threads."
+
+# Hedged map requests, only read by the Server
+HEDGING=${HEDGING:-false}
+JAVA_OPTS="$JAVA_OPTS -Dhomerentals.hedging=$HEDGING"
+log "Hedging: $HEDGING."
+
+# Columnar scans of the rental fields, only read by the Workers
+COLUMNAR=${COLUMNAR:-false}
+JAVA_OPTS="$JAVA_OPTS -Dhomerentals.columnar=$COLUMNAR"
+log "Columnar scans: $COLUMNAR."
+
+# Booking index for reports, only read by the Workers
+BOOKING_INDEX=${BOOKING_INDEX:-true}
+JAVA_OPTS="$JAVA_OPTS -Dhomerentals.bookingIndex=$BOOKING_INDEX"
+log "Booking index: $BOOKING_INDEX."
 
 javac -cp $CLASSPATH com/homerentals/**/*.java
 
@@ -56,7 +77,7 @@ else
 fi
 
 # Start the server and keep terminal open
-gnome-terminal --title="Server" -- bash -c "java -cp $CLASSPATH $SERVER $WORKERS; bash;" &
+gnome-terminal --title="Server" -- bash -c "java $JAVA_OPTS -cp $CLASSPATH $SERVER $WORKERS $REDUCERS; bash;" &
 PID=$!
 if ! kill -0 $PID 2>/dev/null; then
     log "Failed to start server."
@@ -70,7 +91,7 @@ sleep 1
 # Start workers
 SUCCESS_COUNT=0
 while IFS= read -r port; do
-    gnome-terminal --title="Worker:$port" -- bash -c "java -cp $CLASSPATH $WORKER $port; bash;" &
+    gnome-terminal --title="Worker:$port" -- bash -c "java $JAVA_OPTS -cp $CLASSPATH $WORKER $port $REDUCERS; bash;" &
     PID=$!
     if ! kill -0 $PID 2>/dev/null; then
         log "Failed to start worker on port $port."
@@ -85,13 +106,15 @@ log "$SUCCESS_COUNT/$WORKERS workers started successfully."
 
 sleep 1
 
-# Start the reducer and keep terminal open
-gnome-terminal --title="Reducer" -- bash -c "java -cp $CLASSPATH $REDUCER $WORKERS; bash;" &
-PID=$!
-if ! kill -0 $PID 2>/dev/null; then
-    log "Failed to start reducer."
-else
-    log "Reducer started succesfully."
-fi
+# Start the reducers and keep terminals open
+for ((i = 0; i < REDUCERS; i++)); do
+    gnome-terminal --title="Reducer:$i" -- bash -c "java $JAVA_OPTS -cp $CLASSPATH $REDUCER $WORKERS $i; bash;" &
+    PID=$!
+    if ! kill -0 $PID 2>/dev/null; then
+        log "Failed to start reducer $i."
+    else
+        log "Reducer $i started succesfully."
+    fi
+done
 
 log "Startup complete."